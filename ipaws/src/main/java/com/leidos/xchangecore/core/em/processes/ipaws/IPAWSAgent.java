@@ -26,6 +26,16 @@ public class IPAWSAgent {
 
     private IPAWSCap ipawsCap;
     private IPAWSEdxl ipawsEdxl;
+    private IPAWSPollScheduler pollScheduler = new IPAWSPollScheduler();
+
+    private final IPAWSPollScheduler.Cycle pollCycle = new IPAWSPollScheduler.Cycle() {
+
+        @Override
+        public int run() {
+
+            return ipawsCap.pollCAPMessages() + ipawsEdxl.pollEdxlMessages();
+        }
+    };
 
     public void setIpawsCap(IPAWSCap cap) {
 
@@ -47,15 +57,53 @@ public class IPAWSAgent {
         return this.ipawsEdxl;
     }
 
+    public void setPollScheduler(IPAWSPollScheduler scheduler) {
+
+        this.pollScheduler = scheduler;
+    }
+
+    public IPAWSPollScheduler getPollScheduler() {
+
+        return this.pollScheduler;
+    }
+
     /**
      * method getCAPMessages
      * is fired by the spring framework at intervals that is set in the
-     * file applicationContext-processes.xml.
+     * file applicationContext-processes.xml. The cycle is skipped if the
+     * previous one is still running.
      */
     public void getMessages() {
 
-        ipawsCap.getCAPMessages();
-        ipawsEdxl.getEdxlMessages();
+        pollScheduler.runCycle(pollCycle);
+    }
+
+    /**
+     * method startPolling
+     * can be used as the spring init-method instead of scheduling
+     * startGettingMessages and getMessages. It starts getting the messages
+     * and then polls with the adaptive interval of the pollScheduler.
+     */
+    public void startPolling() {
+
+        pollScheduler.start(new Runnable() {
+
+            @Override
+            public void run() {
+
+                startGettingMessages();
+            }
+        }, pollCycle);
+    }
+
+    /**
+     * method stopPolling
+     * stops the polling started by startPolling, to be used as the spring
+     * destroy-method
+     */
+    public void stopPolling() {
+
+        pollScheduler.stop();
     }
 
     /**
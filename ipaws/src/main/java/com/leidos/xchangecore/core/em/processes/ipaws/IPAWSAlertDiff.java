@@ -0,0 +1,319 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * class IPAWSAlertDiff
+ * reconciles the alerts retrieved from IPAWS with the alerts in XchangeCore.
+ * Both sides are indexed by CAP identifier so each alert is looked at once,
+ * and the result is split in three: the IPAWS alerts to create in XchangeCore,
+ * the XchangeCore alerts to post to IPAWS and the alerts already in sync.
+ * The inputs are not modified.
+ */
+public class IPAWSAlertDiff {
+
+    /**
+     * inner class Result
+     * holds the three outcomes of the reconciliation
+     */
+    public static class Result<T> {
+
+        private final List<T> createInUICDS;
+        private final List<String> postToIPAWS;
+        private final List<String> inSync;
+
+        Result(List<T> createInUICDS, List<String> postToIPAWS, List<String> inSync) {
+
+            this.createInUICDS = Collections.unmodifiableList(createInUICDS);
+            this.postToIPAWS = Collections.unmodifiableList(postToIPAWS);
+            this.inSync = Collections.unmodifiableList(inSync);
+        }
+
+        /**
+         * @return the IPAWS alerts that are not in XchangeCore
+         */
+        public List<T> getCreateInUICDS() {
+
+            return createInUICDS;
+        }
+
+        /**
+         * @return the ids of the XchangeCore alerts that are not in IPAWS
+         */
+        public List<String> getPostToIPAWS() {
+
+            return postToIPAWS;
+        }
+
+        /**
+         * @return the ids of the IPAWS alerts that are already in XchangeCore
+         */
+        public List<String> getInSync() {
+
+            return inSync;
+        }
+
+        public String toString() {
+
+            StringBuffer buf = new StringBuffer("createInUICDS:");
+            buf.append(createInUICDS.size()).append(", postToIPAWS:").append(postToIPAWS.size());
+            buf.append(", inSync:").append(inSync.size());
+            return buf.toString();
+        }
+    }
+
+    /**
+     * inner class Accumulator
+     * computes the same reconciliation one IPAWS alert id at a time, so that the
+     * alerts of a streamed response do not have to be held until the end. Only
+     * the ids are kept.
+     */
+    public static class Accumulator {
+
+        private final Set<String> uicdsAlertIds;
+        private final IPAWSAlertIdSet inBothSet;
+        private final Set<String> ipawsAlertIds = new HashSet<String>();
+        private final List<String> inSync = new ArrayList<String>();
+
+        /**
+         * @param Set<String> uicdsAlertIds the CAP identifiers of the alerts in XchangeCore
+         * @param IPAWSAlertIdSet inBothSet the ids known from earlier cycles to be in both, may be
+         *        null
+         */
+        public Accumulator(Set<String> uicdsAlertIds, IPAWSAlertIdSet inBothSet) {
+
+            this.uicdsAlertIds = uicdsAlertIds;
+            this.inBothSet = inBothSet;
+        }
+
+        /**
+         * method add
+         * @param String alertId the CAP identifier of an alert retrieved from IPAWS
+         * @return boolean true if the alert is not in XchangeCore and has to be created there,
+         *         false if it is in sync or was already added
+         */
+        public boolean add(String alertId) {
+
+            if (!ipawsAlertIds.add(alertId)) {
+                return false;
+            }
+            if (uicdsAlertIds.contains(alertId)) {
+                inSync.add(alertId);
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return the ids of the IPAWS alerts added so far that are already in XchangeCore
+         */
+        public List<String> getInSync() {
+
+            return inSync;
+        }
+
+        /**
+         * method getPostToIPAWS
+         * @return List<String> the ids of the XchangeCore alerts that are neither in the IPAWS
+         *         alerts added nor in the inBoth set
+         */
+        public List<String> getPostToIPAWS() {
+
+            // the ipaws alerts are fetched only for the latest period, the ones
+            // seen in earlier cycles are found in the inBoth set
+            List<String> postToIPAWS = new ArrayList<String>();
+            for (String alertId : uicdsAlertIds) {
+                if (ipawsAlertIds.contains(alertId)) {
+                    continue;
+                }
+                if (inBothSet != null && inBothSet.contains(alertId)) {
+                    continue;
+                }
+                postToIPAWS.add(alertId);
+            }
+            return postToIPAWS;
+        }
+    }
+
+    /**
+     * inner class DigestResult
+     * holds the reconciliation of the message digests of a cog: the ids of the
+     * IPAWS alerts to retrieve and create in XchangeCore, the XchangeCore
+     * alerts to post to IPAWS, the alerts already in sync and the time to
+     * resume the time queries from
+     */
+    public static class DigestResult {
+
+        private final Calendar since;
+        private final Calendar latest;
+        private final int count;
+        // id -> sent time of the alerts to retrieve, null if the time is not known
+        private final Map<String, Calendar> missing;
+        private final List<String> postToIPAWS;
+        private final List<String> inSync;
+
+        DigestResult(Calendar since,
+                     Calendar latest,
+                     int count,
+                     Map<String, Calendar> missing,
+                     List<String> postToIPAWS,
+                     List<String> inSync) {
+
+            this.since = since;
+            this.latest = latest;
+            this.count = count;
+            this.missing = missing;
+            this.postToIPAWS = Collections.unmodifiableList(postToIPAWS);
+            this.inSync = Collections.unmodifiableList(inSync);
+        }
+
+        /**
+         * @return int the number of digests sent after the time
+         */
+        public int getCount() {
+
+            return count;
+        }
+
+        /**
+         * @return List<String> the ids of the IPAWS alerts to retrieve, not in XchangeCore nor in
+         *         the inBoth set
+         */
+        public List<String> getMissingIds() {
+
+            return new ArrayList<String>(missing.keySet());
+        }
+
+        /**
+         * @return the ids of the XchangeCore alerts that are not in IPAWS
+         */
+        public List<String> getPostToIPAWS() {
+
+            return postToIPAWS;
+        }
+
+        /**
+         * @return the ids of the IPAWS alerts that are already in XchangeCore
+         */
+        public List<String> getInSync() {
+
+            return inSync;
+        }
+
+        /**
+         * method getLastUpdate
+         * @param Collection<String> retrievedIds the ids of the missing alerts that were retrieved
+         * @return Calendar the latest sent time of the digests if every missing alert was
+         *         retrieved, else a second before the earliest one that was not, so that the time
+         *         queries that follow retrieve it, or the time the digests were filtered by if its
+         *         sent time is not known
+         */
+        public Calendar getLastUpdate(Collection<String> retrievedIds) {
+
+            Calendar lastUpdate = latest;
+            for (Map.Entry<String, Calendar> entry : missing.entrySet()) {
+                if (retrievedIds.contains(entry.getKey())) {
+                    continue;
+                }
+                if (entry.getValue() == null) {
+                    return since;
+                }
+                Calendar before = (Calendar) entry.getValue().clone();
+                before.add(Calendar.SECOND, -1);
+                if (lastUpdate == null || IPAWSTimestamp.isAfter(lastUpdate, before)) {
+                    lastUpdate = before;
+                }
+            }
+            return lastUpdate;
+        }
+    }
+
+    /**
+     * method diffDigests
+     * reconciles the message digests of IPAWS with the alerts in XchangeCore
+     * without retrieving the alerts. A CAP update carries a new identifier so a
+     * changed alert shows up as a missing id.
+     * @param List<IPAWSCapMessageDigest> digests the message digests of a cog
+     * @param Calendar since only the digests sent after it are reconciled, the
+     *        ones whose sent time cannot be read too, null for all of them
+     * @param Set<String> uicdsAlertIds the CAP identifiers of the alerts in XchangeCore
+     * @param IPAWSAlertIdSet inBothSet the ids known from earlier cycles to be in both, may be null
+     * @return DigestResult the alerts to retrieve, to post and already in sync
+     */
+    public static DigestResult diffDigests(List<IPAWSCapMessageDigest> digests,
+                                           Calendar since,
+                                           Set<String> uicdsAlertIds,
+                                           IPAWSAlertIdSet inBothSet) {
+
+        Accumulator accumulator = new Accumulator(uicdsAlertIds, inBothSet);
+        Map<String, Calendar> missing = new LinkedHashMap<String, Calendar>();
+        Calendar latest = since;
+        int count = 0;
+
+        for (IPAWSCapMessageDigest digest : digests) {
+            String msgId = digest.getMsgId();
+            if (msgId == null || msgId.length() == 0) {
+                continue;
+            }
+
+            Calendar sent = null;
+            try {
+                sent = IPAWSTimestamp.parse(digest.getSentTime());
+            } catch (IllegalArgumentException e) {
+                // reconciled anyway, a missing alert is only retrieved once
+            }
+            if (sent != null && since != null && !IPAWSTimestamp.isAfter(sent, since)) {
+                continue;
+            }
+
+            count++;
+            latest = IPAWSTimestamp.latest(latest, sent);
+            if (accumulator.add(msgId) && (inBothSet == null || !inBothSet.contains(msgId))) {
+                missing.put(msgId, sent);
+            }
+        }
+
+        return new DigestResult(since,
+            latest,
+            count,
+            missing,
+            accumulator.getPostToIPAWS(),
+            new ArrayList<String>(accumulator.getInSync()));
+    }
+
+    /**
+     * method diff
+     * @param Map<String, T> ipawsAlerts the alerts retrieved from IPAWS keyed by CAP identifier,
+     *        may be null if no alerts were retrieved
+     * @param Set<String> uicdsAlertIds the CAP identifiers of the alerts in XchangeCore
+     * @param IPAWSAlertIdSet inBothSet the ids known from earlier cycles to be in both, may be null
+     * @return Result the alerts to create, to post and already in sync
+     */
+    public static <T> Result<T> diff(Map<String, T> ipawsAlerts,
+                                     Set<String> uicdsAlertIds,
+                                     IPAWSAlertIdSet inBothSet) {
+
+        Accumulator accumulator = new Accumulator(uicdsAlertIds, inBothSet);
+        List<T> createInUICDS = new ArrayList<T>();
+
+        if (ipawsAlerts != null) {
+            for (Map.Entry<String, T> entry : ipawsAlerts.entrySet()) {
+                if (accumulator.add(entry.getKey())) {
+                    createInUICDS.add(entry.getValue());
+                }
+            }
+        }
+
+        return new Result<T>(createInUICDS,
+            accumulator.getPostToIPAWS(),
+            new ArrayList<String>(accumulator.getInSync()));
+    }
+}
@@ -0,0 +1,125 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSAlertFetcher
+ * retrieves a batch of messages from IPAWS by id on a bounded pool of
+ * threads. The messages that could not be retrieved are left out of the
+ * result, so the caller will ask for them again on the next cycle.
+ */
+public class IPAWSAlertFetcher<T> {
+
+    /**
+     * interface Retriever
+     * retrieves one message from IPAWS
+     */
+    public interface Retriever<T> {
+
+        /**
+         * @return T the message, or null if IPAWS does not have it
+         */
+        public T retrieve(String id);
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private int concurrency = 4;
+
+    private ThreadPoolExecutor executor;
+
+    public int getConcurrency() {
+
+        return concurrency;
+    }
+
+    /**
+     * set the number of messages retrieved at the same time
+     */
+    public synchronized void setConcurrency(int concurrency) {
+
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        this.concurrency = concurrency;
+        if (executor != null) {
+            IPAWSExecutors.resize(executor, concurrency);
+        }
+    }
+
+    /**
+     * method fetch
+     * retrieves the messages and waits until every one of them was retrieved or failed
+     * @param List<String> ids the ids of the messages
+     * @param Retriever<T> retriever retrieves one message
+     * @return Map<String, T> the messages retrieved keyed by id, in the order of the ids
+     */
+    public Map<String, T> fetch(List<String> ids, final Retriever<T> retriever) {
+
+        Map<String, T> messages = new LinkedHashMap<String, T>(ids.size() * 2);
+        if (ids.isEmpty()) {
+            return messages;
+        }
+
+        ExecutorService pool = getExecutor();
+        List<Future<T>> futures = new ArrayList<Future<T>>(ids.size());
+        for (final String id : ids) {
+            futures.add(pool.submit(new Callable<T>() {
+
+                @Override
+                public T call() {
+
+                    return retriever.retrieve(id);
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                T message = futures.get(i).get();
+                if (message != null) {
+                    messages.put(ids.get(i), message);
+                } else {
+                    log.error("IPAWS did not return message " + ids.get(i));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                log.error("Unable to retrieve message " + ids.get(i) + " from IPAWS: " +
+                          e.getCause());
+            }
+        }
+
+        return messages;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+
+        if (executor == null) {
+            executor = IPAWSExecutors.newBoundedPool(concurrency, "ipaws-fetch-");
+        }
+        return executor;
+    }
+
+    /**
+     * method shutdown
+     * stops the retrieving threads, to be used as the spring destroy-method
+     */
+    public synchronized void shutdown() {
+
+        IPAWSExecutors.shutdownNow(executor);
+        executor = null;
+    }
+}
@@ -0,0 +1,313 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * class IPAWSAlertIdSet
+ * is a thread safe set of alert identifiers bounded by size and by age. Ids
+ * are kept in a hash map for constant time lookups and in a queue in the
+ * order they were last added or found so that the ids unused the longest
+ * are evicted first once the set is full or the ids have not been used for
+ * the time to live. An id found by contains is refreshed like one added
+ * again, so the ids still seen at every poll never age out. It keeps hit,
+ * miss and eviction counters, and a modification count so that a copy of the
+ * ids kept elsewhere is only written again when they changed.
+ */
+public class IPAWSAlertIdSet {
+
+    /**
+     * inner class Entry
+     * to hold an id and the time it was last added or refreshed
+     */
+    private static class Entry {
+
+        final String id;
+        final long addedTime;
+
+        Entry(String id, long addedTime) {
+
+            this.id = id;
+            this.addedTime = addedTime;
+        }
+    }
+
+    public static final int DEFAULT_MAX_SIZE = 100000;
+    public static final long DEFAULT_TIME_TO_LIVE = 30L * 24L * 3600000L;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private final ConcurrentLinkedQueue<Entry> insertionOrder = new ConcurrentLinkedQueue<Entry>();
+    private final AtomicInteger queueLength = new AtomicInteger();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong modifications = new AtomicLong();
+
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+
+    public IPAWSAlertIdSet() {
+
+    }
+
+    public IPAWSAlertIdSet(int maxSize, long timeToLive) {
+
+        setMaxSize(maxSize);
+        setTimeToLive(timeToLive);
+    }
+
+    public int getMaxSize() {
+
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * get/set the time to live of the ids in milliseconds
+     */
+    public long getTimeToLive() {
+
+        return timeToLive;
+    }
+
+    public void setTimeToLive(long timeToLive) {
+
+        if (timeToLive <= 0) {
+            throw new IllegalArgumentException("timeToLive must be positive: " + timeToLive);
+        }
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * method add
+     * adds the id to the set or refreshes its age if it is already in the set
+     * @param String id the alert id
+     */
+    public void add(String id) {
+
+        if (id == null) {
+            return;
+        }
+
+        add(id, now());
+    }
+
+    private void add(String id, long addedTime) {
+
+        Entry entry = new Entry(id, addedTime);
+        if (entries.put(id, entry) == null) {
+            modifications.incrementAndGet();
+        }
+        insertionOrder.add(entry);
+        queueLength.incrementAndGet();
+
+        evict();
+    }
+
+    /**
+     * method getIds
+     * @return Map<String, Long> the ids that have not expired, with the time
+     *         they were last added or refreshed, the oldest first
+     */
+    public Map<String, Long> getIds() {
+
+        long now = now();
+        Map<String, Long> ids = new LinkedHashMap<String, Long>();
+        for (Entry entry : insertionOrder) {
+            if (entries.get(entry.id) == entry && !isExpired(entry, now)) {
+                ids.put(entry.id, Long.valueOf(entry.addedTime));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * method restore
+     * adds the ids returned by getIds, keeping the time they were added so
+     * that they expire as they would have
+     * @param Map<String, Long> ids the ids with the time they were added, the oldest first
+     */
+    public void restore(Map<String, Long> ids) {
+
+        long now = now();
+        for (Map.Entry<String, Long> id : ids.entrySet()) {
+            long addedTime = id.getValue() != null ? id.getValue().longValue() : now;
+            if (id.getKey() != null && now - addedTime <= timeToLive) {
+                add(id.getKey(), Math.min(addedTime, now));
+            }
+        }
+    }
+
+    /**
+     * method contains
+     * refreshes the age of the id if it is in the set. The entry is only
+     * renewed once it is older than a quarter of the time to live, so that a
+     * hot id does not queue an entry on every lookup.
+     * @param String id the alert id
+     * @return boolean true if the id is in the set and has not expired
+     */
+    public boolean contains(String id) {
+
+        if (id == null) {
+            return false;
+        }
+
+        long now = now();
+        Entry entry = entries.get(id);
+        if (entry != null && isExpired(entry, now)) {
+            if (entries.remove(id, entry)) {
+                evictions.incrementAndGet();
+                modifications.incrementAndGet();
+            }
+            entry = null;
+        }
+
+        if (entry == null) {
+            misses.incrementAndGet();
+            return false;
+        }
+        hits.incrementAndGet();
+        if (now - entry.addedTime > timeToLive / 4) {
+            Entry refreshed = new Entry(id, now);
+            if (entries.replace(id, entry, refreshed)) {
+                insertionOrder.add(refreshed);
+                queueLength.incrementAndGet();
+                evict();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * method peek
+     * unlike contains, leaves the id, its age and the counters as they are,
+     * so that looking up an id does not keep it from expiring
+     * @param String id the alert id
+     * @return boolean true if the id is in the set and has not expired
+     */
+    public boolean peek(String id) {
+
+        Entry entry = id != null ? entries.get(id) : null;
+        return entry != null && !isExpired(entry, now());
+    }
+
+    public boolean remove(String id) {
+
+        if (id != null && entries.remove(id) != null) {
+            modifications.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    public int size() {
+
+        return entries.size();
+    }
+
+    public void clear() {
+
+        entries.clear();
+        insertionOrder.clear();
+        queueLength.set(0);
+        modifications.incrementAndGet();
+    }
+
+    public long getHitCount() {
+
+        return hits.get();
+    }
+
+    public long getMissCount() {
+
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+
+        return evictions.get();
+    }
+
+    /**
+     * @return long a count that changes whenever an id is added, removed or evicted
+     */
+    public long getModificationCount() {
+
+        return modifications.get();
+    }
+
+    public String toString() {
+
+        StringBuffer buf = new StringBuffer("size:");
+        buf.append(size()).append(", hits:").append(getHitCount());
+        buf.append(", misses:").append(getMissCount());
+        buf.append(", evictions:").append(getEvictionCount());
+        return buf.toString();
+    }
+
+    protected long now() {
+
+        return System.currentTimeMillis();
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+
+        return now - entry.addedTime > timeToLive;
+    }
+
+    /**
+     * method evict
+     * removes the oldest ids while the set is over its size or the ids have
+     * expired. The queue entries of ids that were removed, added again or
+     * refreshed are stale and are dropped on the way, and all at once when
+     * they make up most of the queue.
+     */
+    private synchronized void evict() {
+
+        if (queueLength.get() > 2 * maxSize) {
+            dropStale();
+        }
+
+        long now = now();
+        Entry head;
+        while ((head = insertionOrder.peek()) != null) {
+            boolean stale = entries.get(head.id) != head;
+            boolean overSize = entries.size() > maxSize;
+            if (!stale && !overSize && !isExpired(head, now)) {
+                break;
+            }
+
+            insertionOrder.poll();
+            queueLength.decrementAndGet();
+            if (!stale && entries.remove(head.id, head)) {
+                evictions.incrementAndGet();
+                modifications.incrementAndGet();
+            }
+        }
+    }
+
+    private void dropStale() {
+
+        Iterator<Entry> it = insertionOrder.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entries.get(entry.id) != entry) {
+                it.remove();
+                queueLength.decrementAndGet();
+            }
+        }
+    }
+}
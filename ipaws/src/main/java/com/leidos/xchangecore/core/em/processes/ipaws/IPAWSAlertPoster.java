@@ -0,0 +1,239 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSAlertPoster
+ * posts a batch of alerts to IPAWS on a bounded pool of threads. An alert
+ * that failed on the way is retried up to maxAttempts times with a growing
+ * delay, one that IPAWS rejected is not since it would be rejected again, nor
+ * is one the client refused because of its rate limiter or its circuit
+ * breaker. The outcome of every alert is returned to the caller once the
+ * whole batch is done.
+ */
+public class IPAWSAlertPoster<T> {
+
+    /**
+     * enum Result
+     * what became of an alert: ACCEPTED and REJECTED are the answers of IPAWS,
+     * UNAVAILABLE and THROTTLED mean the client refused to send it and FAILED
+     * that it was not sent or not answered. Only an ACCEPTED alert is in
+     * IPAWS, and all but a REJECTED one may be posted again later.
+     */
+    public enum Result {
+        ACCEPTED, REJECTED, UNAVAILABLE, THROTTLED, FAILED
+    }
+
+    /**
+     * interface Sender
+     * sends one alert to IPAWS
+     */
+    public interface Sender<T> {
+
+        /**
+         * @return Result what became of the alert, a FAILED alert is retried.
+         *         A request the client refused is returned as UNAVAILABLE or
+         *         THROTTLED, not thrown.
+         * @throws RuntimeException if the alert could not be sent or IPAWS
+         *         did not answer, in which case it is retried
+         */
+        public Result post(T alert);
+    }
+
+    /**
+     * inner class Outcome
+     * holds the result of posting one alert
+     */
+    public static class Outcome<T> {
+
+        private final T alert;
+        private final Result result;
+        private final int attempts;
+
+        Outcome(T alert, Result result, int attempts) {
+
+            this.alert = alert;
+            this.result = result;
+            this.attempts = attempts;
+        }
+
+        public T getAlert() {
+
+            return alert;
+        }
+
+        public Result getResult() {
+
+            return result;
+        }
+
+        /**
+         * @return boolean true if IPAWS accepted the alert
+         */
+        public boolean isPosted() {
+
+            return result == Result.ACCEPTED;
+        }
+
+        public int getAttempts() {
+
+            return attempts;
+        }
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private int concurrency = 4;
+    private int maxAttempts = 3;
+    private long retryDelay = 1000L;
+
+    private ThreadPoolExecutor executor;
+
+    public int getConcurrency() {
+
+        return concurrency;
+    }
+
+    /**
+     * set the number of alerts posted at the same time, 1 posts them one after the other
+     */
+    public synchronized void setConcurrency(int concurrency) {
+
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException("concurrency must be positive: " + concurrency);
+        }
+        this.concurrency = concurrency;
+        if (executor != null) {
+            IPAWSExecutors.resize(executor, concurrency);
+        }
+    }
+
+    public int getMaxAttempts() {
+
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * get/set the delay in milliseconds before the first retry, the delay
+     * grows with each attempt
+     */
+    public long getRetryDelay() {
+
+        return retryDelay;
+    }
+
+    public void setRetryDelay(long retryDelay) {
+
+        this.retryDelay = retryDelay;
+    }
+
+    /**
+     * method postAlerts
+     * posts the alerts and waits until every alert was posted or ran out of attempts
+     * @param List<T> alerts the alerts to post
+     * @param Sender<T> sender posts one alert
+     * @return List<Outcome<T>> the outcome of each alert in the order of the alerts
+     */
+    public List<Outcome<T>> postAlerts(List<T> alerts, final Sender<T> sender) {
+
+        List<Outcome<T>> outcomes = new ArrayList<Outcome<T>>(alerts.size());
+        if (alerts.isEmpty()) {
+            return outcomes;
+        }
+
+        ExecutorService pool = getExecutor();
+        List<Future<Outcome<T>>> futures = new ArrayList<Future<Outcome<T>>>(alerts.size());
+        for (final T alert : alerts) {
+            futures.add(pool.submit(new Callable<Outcome<T>>() {
+
+                @Override
+                public Outcome<T> call() {
+
+                    return post(alert, sender);
+                }
+            }));
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                outcomes.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                outcomes.add(new Outcome<T>(alerts.get(i), Result.FAILED, 0));
+            } catch (ExecutionException e) {
+                log.error("Unable to post alert to IPAWS: " + e.getCause());
+                outcomes.add(new Outcome<T>(alerts.get(i), Result.FAILED, 0));
+            }
+        }
+
+        return outcomes;
+    }
+
+    private Outcome<T> post(T alert, Sender<T> sender) {
+
+        int attempt = 0;
+        while (attempt < maxAttempts && !Thread.currentThread().isInterrupted()) {
+            attempt++;
+            try {
+                Result result = sender.post(alert);
+                if (result != Result.FAILED) {
+                    // the limiter already waited as long as it could and the breaker
+                    // refuses until IPAWS is back, trying again would not help
+                    if (result != Result.ACCEPTED) {
+                        log.error("Posting alert to IPAWS " + result + " on attempt " + attempt +
+                                  ", not retrying it");
+                    }
+                    return new Outcome<T>(alert, result, attempt);
+                }
+                log.error("Posting alert to IPAWS failed on attempt " + attempt);
+            } catch (RuntimeException e) {
+                log.error("Posting alert to IPAWS failed on attempt " + attempt + ": " +
+                          e.getMessage());
+            }
+
+            if (attempt < maxAttempts && retryDelay > 0) {
+                try {
+                    Thread.sleep(retryDelay * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        return new Outcome<T>(alert, Result.FAILED, attempt);
+    }
+
+    private synchronized ExecutorService getExecutor() {
+
+        if (executor == null) {
+            executor = IPAWSExecutors.newBoundedPool(concurrency, "ipaws-post-");
+        }
+        return executor;
+    }
+
+    /**
+     * method shutdown
+     * stops the posting threads, to be used as the spring destroy-method
+     */
+    public synchronized void shutdown() {
+
+        IPAWSExecutors.shutdownNow(executor);
+        executor = null;
+    }
+}
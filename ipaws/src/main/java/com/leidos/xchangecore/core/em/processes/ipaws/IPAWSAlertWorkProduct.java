@@ -1,8 +1,11 @@
 package com.leidos.xchangecore.core.em.processes.ipaws;
 
-import java.util.Hashtable;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,10 +24,16 @@ import com.saic.precis.x2009.x06.base.NamespaceMapItemType;
 import com.saic.precis.x2009.x06.base.NamespaceMapType;
 
 /**
- * class IPAWSAlertWorkProduct accesses XchangeCore services for IPAWS
+ * class IPAWSAlertWorkProduct accesses XchangeCore services for IPAWS. It caches the alert work
+ * products by CAP identifier, so that the products already known are not parsed again. The cache
+ * is reconciled with the alert service when it is invalidated, which IPAWSCap does at the start of
+ * each poll cycle so that an alert created by a XchangeCore user is seen on the next cycle, or
+ * else every fullRefreshInterval. It is updated as alerts are closed and archived in between.
  */
 public class IPAWSAlertWorkProduct {
 
+    public static final long DEFAULT_FULL_REFRESH_INTERVAL = 300000L;
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
     @Autowired
     AlertService alertService;
@@ -32,16 +41,46 @@ public class IPAWSAlertWorkProduct {
     @Autowired
     WorkProductService productService;
 
-    private final Hashtable<String, WorkProduct> alertWpTable = new Hashtable<String, WorkProduct>();
+    // alert identifier -> alert work product
+    private final Map<String, WorkProduct> alertWpTable = new ConcurrentHashMap<String, WorkProduct>();
+    // work product id -> alert identifier, to avoid parsing known products again
+    private final Map<String, String> productIdTable = new ConcurrentHashMap<String, String>();
+
+    private long fullRefreshInterval = DEFAULT_FULL_REFRESH_INTERVAL;
+    private volatile long lastFullRefresh = 0;
+    private volatile boolean stale = true;
+
+    /**
+     * get/set the longest interval in milliseconds between two reconciliations of the cache with
+     * the alert service when it is not invalidated. 0 reconciles it on every call to
+     * getAlertWorkProduct.
+     */
+    public long getFullRefreshInterval() {
+
+        return fullRefreshInterval;
+    }
+
+    public void setFullRefreshInterval(long fullRefreshInterval) {
+
+        this.fullRefreshInterval = fullRefreshInterval;
+    }
+
+    /**
+     * method invalidate marks the cache as out of date so that the next call to
+     * getAlertWorkProduct reconciles it with the alert service
+     */
+    public void invalidate() {
+
+        stale = true;
+    }
 
     public void closeAllAlertWPs() {
 
-        Set<String> alertIdSet = alertWpTable.keySet();
-        if (alertIdSet.size() == 0) {
+        if (alertWpTable.size() == 0) {
             getAlertWorkProduct();
         }
 
-        Iterator<String> it = alertIdSet.iterator();
+        Iterator<String> it = alertWpTable.keySet().iterator();
         while (it.hasNext()) {
             String alertId = it.next();
             WorkProduct wp = alertWpTable.get(alertId);
@@ -50,6 +89,7 @@ public class IPAWSAlertWorkProduct {
 
             productService.closeProduct(identifier);
             productService.archiveProduct(identifier);
+            uncacheWorkProduct(alertId);
         }
     }
 
@@ -82,41 +122,102 @@ public class IPAWSAlertWorkProduct {
     }
 
     /**
-     * method getAlertWorkProduct retrieve all alert work products in XchangeCore
+     * method getAlertWorkProduct returns the ids of the alert work products in XchangeCore. The
+     * alert service is only queried if the cache is stale or due for a full reconciliation.
      *
-     * @return WorkProduct[] array of alert workproducts in XchangeCore
+     * @return Set<String> the read only set of alert identifiers in XchangeCore
      */
     public Set<String> getAlertWorkProduct() {
 
+        if (isDue()) {
+            refreshAlertWorkProducts();
+        }
+
+        return Collections.unmodifiableSet(alertWpTable.keySet());
+    }
+
+    private boolean isDue() {
+
+        return stale || System.currentTimeMillis() - lastFullRefresh >= fullRefreshInterval;
+    }
+
+    /**
+     * method refreshAlertWorkProducts reconciles the cache with all alert work products in
+     * XchangeCore. Work products already in the cache are not parsed again. The shards of IPAWSCap
+     * polled in parallel share one reconciliation, the ones waiting for it find it done.
+     */
+    private synchronized void refreshAlertWorkProducts() {
+
+        if (!isDue()) {
+            return;
+        }
+
         NamespaceMapType map = NamespaceMapType.Factory.newInstance();
         NamespaceMapItemType mapItem = map.addNewItem();
 
         try {
-            // clear the table
-            alertWpTable.clear();
+            Map<String, WorkProduct> alerts = new HashMap<String, WorkProduct>();
+            Map<String, String> productIds = new HashMap<String, String>();
 
             // get the alert wp
             WorkProduct[] products = alertService.getListOfAlerts("", map);
             if (products != null) {
                 for (WorkProduct wp : products) {
-                    String createdBy = wp.getCreatedBy();
-                    int pos = createdBy.indexOf("@");
-                    String user = createdBy.substring(0, pos);
+                    // keep the work products of the XchangeCore users only
+                    if (isCreatedByNullUser(wp)) {
+                        continue;
+                    }
 
-                    // filter for createdBy userid!=null these are created by IPAWS
-                    if (!user.equals("null")) {
+                    String alertId = productIdTable.get(wp.getProductID());
+                    if (alertId == null) {
                         AlertDocument alertDoc = (AlertDocument) wp.getProduct();
-
-                        // now save in the map
-                        alertWpTable.put(alertDoc.getAlert().getIdentifier(), wp);
+                        alertId = alertDoc.getAlert().getIdentifier();
                     }
+
+                    // now save in the map
+                    alerts.put(alertId, wp);
+                    productIds.put(wp.getProductID(), alertId);
                 }
             }
+
+            alertWpTable.keySet().retainAll(alerts.keySet());
+            alertWpTable.putAll(alerts);
+            productIdTable.keySet().retainAll(productIds.keySet());
+            productIdTable.putAll(productIds);
+
+            lastFullRefresh = System.currentTimeMillis();
+            stale = false;
         } catch (InvalidXpathException e) {
             e.printStackTrace();
         }
+    }
+
+    /**
+     * method isCreatedByNullUser tells the work products the alert service created with a null
+     * userid. updateAlertWorkProduct creates the work products of the IPAWS alerts that way, so
+     * these are left out of the alert wp table and are never posted back to IPAWS.
+     *
+     * @param WorkProduct wp the alert work product
+     * @return boolean true if the userid of createdBy is null, false if the work product was
+     *         created by a XchangeCore user
+     */
+    private static boolean isCreatedByNullUser(WorkProduct wp) {
 
-        return alertWpTable.keySet();
+        String createdBy = wp.getCreatedBy();
+        if (createdBy == null) {
+            return true;
+        }
+        int pos = createdBy.indexOf("@");
+        String user = pos < 0 ? createdBy : createdBy.substring(0, pos);
+        return user.equals("null");
+    }
+
+    private void uncacheWorkProduct(String alertId) {
+
+        WorkProduct wp = alertWpTable.remove(alertId);
+        if (wp != null) {
+            productIdTable.remove(wp.getProductID());
+        }
     }
 
     /**
@@ -126,8 +227,9 @@ public class IPAWSAlertWorkProduct {
      *
      * @param String alertID the alert identifier
      * @pram Alert alert the Alert object to be created in XchangeCore
+     * @return boolean false if the alert could not be processed
      */
-    public void updateAlertWorkProduct(String alertID, Alert alert) {
+    public boolean updateAlertWorkProduct(String alertID, Alert alert) {
 
         //alertID="TESTINGIPAWS";
         // find the alert wp
@@ -141,6 +243,7 @@ public class IPAWSAlertWorkProduct {
                 if (alert.getMsgType().equals(Alert.MsgType.CANCEL)) {
                     productService.closeProduct(identifier);
                     productService.archiveProduct(identifier);
+                    uncacheWorkProduct(alertID);
                 }
 
             } else {
@@ -148,6 +251,8 @@ public class IPAWSAlertWorkProduct {
                 ProductPublicationStatus status = alertService.createAlert(null, alert);
 
                 if (status.getStatus().equals(ProductPublicationStatus.SuccessStatus)) {
+                    // created with a null userid, it is left out of the cache like the other
+                    // IPAWS alerts
                     StringBuffer sb = new StringBuffer();
                     sb.append("Created alert work product ");
                     sb.append(status.getProduct().getProductID());
@@ -175,7 +280,9 @@ public class IPAWSAlertWorkProduct {
             e.printStackTrace(print);
             log.error(writer.toString());
              */
-            IPAWSCap.notProcessedList.add(alertID);
+            invalidate();
+            return false;
         }
+        return true;
     }
 }
@@ -0,0 +1,90 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.Random;
+
+/**
+ * class IPAWSBackoff
+ * computes how long to wait before the next attempt at a message that
+ * failed: initialDelay before the first retry, doubled with each further
+ * attempt up to maxDelay, with some jitter so that a burst of failures is not
+ * retried all at once. It is shared by IPAWSRetryQueue and IPAWSOutbox.
+ */
+public class IPAWSBackoff {
+
+    private long initialDelay;
+    private long maxDelay;
+    private double jitter;
+
+    private final Random random = new Random();
+
+    /**
+     * @param long initialDelay the delay in milliseconds before the first retry
+     * @param long maxDelay the longest delay in milliseconds
+     * @param double jitter the part of the delay that is random
+     */
+    public IPAWSBackoff(long initialDelay, long maxDelay, double jitter) {
+
+        setInitialDelay(initialDelay);
+        setMaxDelay(maxDelay);
+        setJitter(jitter);
+    }
+
+    public long getInitialDelay() {
+
+        return initialDelay;
+    }
+
+    public void setInitialDelay(long initialDelay) {
+
+        this.initialDelay = initialDelay;
+    }
+
+    public long getMaxDelay() {
+
+        return maxDelay;
+    }
+
+    public void setMaxDelay(long maxDelay) {
+
+        this.maxDelay = maxDelay;
+    }
+
+    public double getJitter() {
+
+        return jitter;
+    }
+
+    /**
+     * set the part of the delay that is random, 0.2 spreads the retries over
+     * plus or minus 20% of the delay
+     */
+    public void setJitter(double jitter) {
+
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("jitter must be in [0, 1): " + jitter);
+        }
+        this.jitter = jitter;
+    }
+
+    /**
+     * method delay
+     * @param int attempt the attempt to come, 1 for the first retry
+     * @return long the delay in milliseconds before the attempt, with jitter
+     */
+    public long delay(int attempt) {
+
+        int exponent = Math.min(Math.max(attempt - 1, 0), 30);
+        long delay = Math.min(maxDelay, initialDelay << exponent);
+        if (delay < 0) {
+            delay = maxDelay;
+        }
+        if (jitter > 0) {
+            double factor;
+            synchronized (random) {
+                factor = 1.0 + jitter * (2 * random.nextDouble() - 1);
+            }
+            delay = (long) (delay * factor);
+        }
+        return delay;
+    }
+}
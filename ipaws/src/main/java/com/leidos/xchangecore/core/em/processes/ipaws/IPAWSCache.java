@@ -0,0 +1,146 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * class IPAWSCache
+ * is a read-through cache for values that rarely change, such as the COG
+ * list of IPAWS or the endpoint address of a COG. A value is loaded on the
+ * first get and kept for timeToLive milliseconds, or until it is invalidated.
+ * A null value is not cached, so a failed load is tried again on the next
+ * get. Loads of the same key are not merged: two threads missing at the same
+ * time both load it.
+ */
+public class IPAWSCache<K, V> {
+
+    /**
+     * interface Loader
+     * loads a value missing from the cache
+     */
+    public interface Loader<K, V> {
+
+        /**
+         * @return V the value, or null if it could not be loaded
+         */
+        public V load(K key);
+    }
+
+    private static class Entry<V> {
+
+        private final V value;
+        private final long expires;
+
+        Entry(V value, long expires) {
+
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+
+    private long timeToLive = 3600000L;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadFailureCount = new AtomicLong();
+
+    public long getTimeToLive() {
+
+        return timeToLive;
+    }
+
+    /**
+     * get/set how long in milliseconds a value is kept, 0 to not cache
+     */
+    public void setTimeToLive(long timeToLive) {
+
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * method get
+     * @param K key the key of the value
+     * @param Loader<K, V> loader loads the value if it is not cached or has expired
+     * @return V the value, or null if it could not be loaded
+     */
+    public V get(K key, Loader<K, V> loader) {
+
+        long now = System.currentTimeMillis();
+        Entry<V> entry = entries.get(key);
+        if (entry != null && now < entry.expires) {
+            hitCount.incrementAndGet();
+            return entry.value;
+        }
+
+        missCount.incrementAndGet();
+        V value = loader.load(key);
+        if (value == null) {
+            loadFailureCount.incrementAndGet();
+            return null;
+        }
+        if (timeToLive > 0) {
+            entries.put(key, new Entry<V>(value, System.currentTimeMillis() + timeToLive));
+        }
+        return value;
+    }
+
+    /**
+     * method invalidate
+     * removes the value so that the next get loads it again
+     */
+    public void invalidate(K key) {
+
+        entries.remove(key);
+    }
+
+    /**
+     * method invalidateAll
+     * removes all the values
+     */
+    public void invalidateAll() {
+
+        entries.clear();
+    }
+
+    public int size() {
+
+        return entries.size();
+    }
+
+    /**
+     * @return long the number of gets answered from the cache
+     */
+    public long getHitCount() {
+
+        return hitCount.get();
+    }
+
+    /**
+     * @return long the number of gets that had to load the value
+     */
+    public long getMissCount() {
+
+        return missCount.get();
+    }
+
+    /**
+     * @return long the number of loads that returned no value
+     */
+    public long getLoadFailureCount() {
+
+        return loadFailureCount.get();
+    }
+
+    public String toString() {
+
+        StringBuffer buf = new StringBuffer("size:");
+        buf.append(size());
+        buf.append(", hits:").append(getHitCount());
+        buf.append(", misses:").append(getMissCount());
+        buf.append(", failures:").append(getLoadFailureCount());
+        return buf.toString();
+    }
+}
@@ -1,25 +1,34 @@
 package com.leidos.xchangecore.core.em.processes.ipaws;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import services.dmopen.fema.gov.caprequest.ParameterListItem;
-import services.dmopen.fema.gov.caprequest.RequestParameterList;
 import services.dmopen.fema.gov.dmopenCAPService.GetMessageTypeDefDocument;
 import services.dmopen.fema.gov.dmopenCAPService.GetRequestTypeDefDocument;
 import services.dmopen.fema.gov.dmopenCAPService.PostCAPRequestTypeDefDocument;
 import services.dmopen.fema.gov.dmopenCAPService.PostCAPRequestTypeDefDocument.PostCAPRequestTypeDef;
 import x0.oasisNamesTcEmergencyEDXLDE1.EDXLDistributionDocument.EDXLDistribution;
+import x1.oasisNamesTcEmergencyCap1.AlertDocument;
 import x1.oasisNamesTcEmergencyCap1.AlertDocument.Alert;
 
 /**
@@ -32,6 +41,10 @@ import x1.oasisNamesTcEmergencyCap1.AlertDocument.Alert;
  */
 public class IPAWSCap {
 
+    /**
+     * @deprecated the timestamps are formatted with IPAWSTimestamp
+     */
+    @Deprecated
     public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ssZ";
     public static final String REQUEST_API = "REQUEST1";
     public static final String CAP_API = "CAP11";
@@ -40,21 +53,94 @@ public class IPAWSCap {
     public static final String GET_MESSAGE_LIST_ALL_OP = "getMessageListAll";
     public static final String GET_MESSAGE_OP = "getMessage";
     public static final String NO_MESSAGE_FOUND = "NO MESSAGE FOUND";
+    public static final String CHECKPOINT_KEY = "cap.lastUpdate";
+    public static final String IN_BOTH_KEY = "cap.inBoth";
+    public static final long DEFAULT_REJECTED_TIME_TO_LIVE = 24L * 3600000L;
+
+    // the requests are built once, only their parameter values change from one call to the next
+    private static final IPAWSRequestTemplate<GetRequestTypeDefDocument> ACK_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetRequestTypeDefDocument.Factory.newInstance(),
+        REQUEST_API,
+        GET_ACK_OP,
+        "ping",
+        null);
+    private static final IPAWSRequestTemplate<GetRequestTypeDefDocument> COG_LIST_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetRequestTypeDefDocument.Factory.newInstance(),
+        REQUEST_API,
+        GET_COG_OP,
+        "ALL",
+        null);
+    private static final IPAWSRequestTemplate<GetRequestTypeDefDocument> DIGEST_LIST_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetRequestTypeDefDocument.Factory.newInstance(),
+        REQUEST_API,
+        GET_MESSAGE_LIST_ALL_OP,
+        "cogid",
+        "equalto");
+    private static final IPAWSRequestTemplate<GetMessageTypeDefDocument> MESSAGE_BY_ID_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetMessageTypeDefDocument.Factory.newInstance(),
+        REQUEST_API,
+        GET_MESSAGE_OP,
+        "identifier",
+        "equalto");
+    private static final IPAWSRequestTemplate<GetMessageTypeDefDocument> MESSAGES_BY_COG_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetMessageTypeDefDocument.Factory.newInstance(),
+        CAP_API,
+        GET_MESSAGE_OP,
+        "cogid",
+        "equalto");
+    private static final IPAWSRequestTemplate<GetMessageTypeDefDocument> MESSAGES_AFTER_TIME_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetMessageTypeDefDocument.Factory.newInstance(),
+        CAP_API,
+        GET_MESSAGE_OP,
+        "sent",
+        "greaterthan");
+    private static final IPAWSRequestTemplate<GetMessageTypeDefDocument> MESSAGES_AFTER_TIME_BY_COG_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetMessageTypeDefDocument.Factory.newInstance(),
+        CAP_API,
+        GET_MESSAGE_OP,
+        "sent",
+        "greaterthan",
+        "cogid",
+        "equalto");
 
     private Logger log = LoggerFactory.getLogger(this.getClass());
     IPAWSSpringClient webServiceClient;
     IPAWSAlertWorkProduct alertWorkProduct;
-    Calendar lastUpdate = null;
+    IPAWSCheckpointStore checkpointStore;
+    IPAWSAlertPoster<Alert> alertPoster = new IPAWSAlertPoster<Alert>();
+    IPAWSHealthCheck healthCheck = null;
+    IPAWSCache<String, List<IPAWSCog>> cogCache = new IPAWSCache<String, List<IPAWSCog>>();
+    IPAWSAlertFetcher<Alert> alertFetcher = new IPAWSAlertFetcher<Alert>();
+    IPAWSRetryQueue<Alert> retryQueue = null;
     String cogs = "120018";
     String postToCogs = "120018";
     String firstRetrievePeriod = "30";
-
-    public static List<String> inBothList = Collections.synchronizedList(new ArrayList<String>());
-    public static List<String> notProcessedList = Collections.synchronizedList(new ArrayList<String>());
+    boolean streamingResponse = false;
+    boolean digestSync = false;
+    long shardTimeout = 60000L;
+
+    // one shard per cog, built from cogs on first use
+    List<IPAWSCapShard> shards = null;
+    ExecutorService shardExecutor = null;
+
+    // ids of the alerts known to be in both IPAWS and XchangeCore
+    IPAWSAlertIdSet inBothSet = new IPAWSAlertIdSet();
+    // whether inBothSet was restored from the checkpoint store, and its
+    // modification count when it was last committed
+    private boolean inBothRestored = false;
+    private long inBothCommitted = -1;
+    // ids of the IPAWS alerts that could not be created in XchangeCore
+    IPAWSAlertIdSet notProcessedSet = new IPAWSAlertIdSet();
+    // ids of the XchangeCore alerts IPAWS rejected. They are looked up without being refreshed
+    // so that each of them is posted again once it expires, in case the cause of the rejection
+    // was fixed. Only a rejection keeps an alert from being posted on the next cycle; one that
+    // was not answered or not sent is not marked in both.
+    IPAWSAlertIdSet rejectedSet = new IPAWSAlertIdSet(IPAWSAlertIdSet.DEFAULT_MAX_SIZE,
+        DEFAULT_REJECTED_TIME_TO_LIVE);
+
+    // serialize the creation of an alert in XchangeCore between the poll, the
+    // EDXL-DE and the retry threads, one lock per stripe of alert ids
+    private final Object[] alertLocks = newAlertLocks(64);
 
     public void setWebServiceClient(IPAWSSpringClient webServiceClient) {
 
         this.webServiceClient = webServiceClient;
+        if (this.healthCheck != null) {
+            webServiceClient.setHealthCheck(this.healthCheck);
+        }
     }
 
     public IPAWSSpringClient getWebServiceClient() {
@@ -72,14 +158,147 @@ public class IPAWSCap {
         return this.alertWorkProduct;
     }
 
+    public void setCheckpointStore(IPAWSCheckpointStore checkpointStore) {
+
+        this.checkpointStore = checkpointStore;
+    }
+
+    public IPAWSCheckpointStore getCheckpointStore() {
+
+        return this.checkpointStore;
+    }
+
+    public void setAlertPoster(IPAWSAlertPoster<Alert> alertPoster) {
+
+        this.alertPoster = alertPoster;
+    }
+
+    public IPAWSAlertPoster<Alert> getAlertPoster() {
+
+        return this.alertPoster;
+    }
+
+    public void setAlertFetcher(IPAWSAlertFetcher<Alert> alertFetcher) {
+
+        this.alertFetcher = alertFetcher;
+    }
+
+    public IPAWSAlertFetcher<Alert> getAlertFetcher() {
+
+        return this.alertFetcher;
+    }
+
+    /**
+     * get/set the health check, by default the one of the webServiceClient which reports the
+     * outcome of each request to it
+     */
+    public void setHealthCheck(IPAWSHealthCheck healthCheck) {
+
+        this.healthCheck = healthCheck;
+        if (this.webServiceClient != null) {
+            this.webServiceClient.setHealthCheck(healthCheck);
+        }
+    }
+
+    public IPAWSHealthCheck getHealthCheck() {
+
+        if (this.healthCheck == null) {
+            this.healthCheck = this.webServiceClient.getHealthCheck();
+        }
+        return this.healthCheck;
+    }
+
+    /**
+     * get/set the cache of the COG lists of IPAWS, shared with IPAWSEdxl
+     */
+    public void setCogCache(IPAWSCache<String, List<IPAWSCog>> cogCache) {
+
+        this.cogCache = cogCache;
+    }
+
+    public IPAWSCache<String, List<IPAWSCog>> getCogCache() {
+
+        return this.cogCache;
+    }
+
+    public IPAWSAlertIdSet getInBothSet() {
+
+        return this.inBothSet;
+    }
+
+    public void setInBothSet(IPAWSAlertIdSet inBothSet) {
+
+        this.inBothSet = inBothSet;
+    }
+
+    public IPAWSAlertIdSet getNotProcessedSet() {
+
+        return this.notProcessedSet;
+    }
+
+    public void setNotProcessedSet(IPAWSAlertIdSet notProcessedSet) {
+
+        this.notProcessedSet = notProcessedSet;
+    }
+
+    public IPAWSAlertIdSet getRejectedSet() {
+
+        return this.rejectedSet;
+    }
+
+    public void setRejectedSet(IPAWSAlertIdSet rejectedSet) {
+
+        this.rejectedSet = rejectedSet;
+    }
+
+    public IPAWSRetryQueue<Alert> getRetryQueue() {
+
+        return this.retryQueue;
+    }
+
+    /**
+     * set the queue in which the alerts that could not be created in XchangeCore are kept and
+     * retried, null to only record their ids in the notProcessed set
+     */
+    public void setRetryQueue(IPAWSRetryQueue<Alert> retryQueue) {
+
+        this.retryQueue = retryQueue;
+        if (retryQueue != null) {
+            retryQueue.setCodec(ALERT_CODEC);
+            retryQueue.setHandler(new IPAWSRetryQueue.Handler<Alert>() {
+
+                @Override
+                public boolean process(String id, Alert alert) {
+
+                    synchronized (getAlertLock(id)) {
+                        // a poll created it while it waited
+                        if (!IPAWSCap.this.retryQueue.contains(id)) {
+                            return true;
+                        }
+                        if (!IPAWSCap.this.alertWorkProduct.updateAlertWorkProduct(id, alert)) {
+                            return false;
+                        }
+                        IPAWSCap.this.notProcessedSet.remove(id);
+                        return true;
+                    }
+                }
+            });
+        }
+    }
+
     public String getCogs() {
 
         return this.cogs;
     }
 
-    public void setCogs(String cogs) {
+    /**
+     * set the cogs to poll, separated by white space. Each cog is polled as its own shard with its
+     * own lastUpdate.
+     */
+    public synchronized void setCogs(String cogs) {
 
         this.cogs = cogs;
+        this.shards = null;
     }
 
     public String getPostToCogs() {
@@ -87,9 +306,60 @@ public class IPAWSCap {
         return this.postToCogs;
     }
 
-    public void setPostToCogs(String cogs) {
+    public synchronized void setPostToCogs(String cogs) {
 
         this.postToCogs = cogs;
+        this.shards = null;
+    }
+
+    public long getShardTimeout() {
+
+        return this.shardTimeout;
+    }
+
+    /**
+     * set how long in milliseconds a poll waits for the shards of several cogs before it returns
+     * and leaves the slow ones running
+     */
+    public void setShardTimeout(long shardTimeout) {
+
+        this.shardTimeout = shardTimeout;
+    }
+
+    public boolean isStreamingResponse() {
+
+        return this.streamingResponse;
+    }
+
+    /**
+     * set streamingResponse to true to read the CAP alerts of each poll off the response one at a
+     * time instead of parsing the whole response at once. The heap used is only bounded by one
+     * alert with a message factory that streams the payload. With the SAAJ message factory, the
+     * only one IPAWSHeaderInterceptor adds the credentials to, the response is read into a DOM
+     * before it is handed over, so there is no heap benefit: the peak heap still grows with the
+     * size of the response, and only the XmlBeans copy of the whole response is avoided.
+     */
+    public void setStreamingResponse(boolean streamingResponse) {
+
+        this.streamingResponse = streamingResponse;
+    }
+
+    public boolean isDigestSync() {
+
+        return this.digestSync;
+    }
+
+    /**
+     * set digestSync to true to start a shard without a checkpoint from the message digest list of
+     * its cog, retrieving only the CAP alerts of the firstRetrievePeriod that are not in
+     * XchangeCore yet instead of all of them. The digest lists the whole history of the cog, so
+     * the cycles that follow use the time query, which returns less. The digest is not used when
+     * the first messages are retrieved for all the cogs, as with a single cog and a numeric
+     * firstRetrievePeriod, since it would not cover the same alerts.
+     */
+    public void setDigestSync(boolean digestSync) {
+
+        this.digestSync = digestSync;
     }
 
     public String getFirstRetrievePeriod() {
@@ -108,36 +378,311 @@ public class IPAWSCap {
      */
     public void getCAPMessages() {
 
-        boolean ret = getCAPACK();
-        if (ret) {
-            Alert[] alerts = null;
+        pollCAPMessages();
+    }
+
+    /**
+     * method pollCAPMessages does what getCAPMessages does and returns the number of CAP messages
+     * retrieved, for the IPAWSPollScheduler to adapt the poll interval. With several cogs each
+     * shard is polled on its own thread; a shard still busy after shardTimeout is left running
+     * and skipped by the next cycles until it is done, so it does not hold back the others. The
+     * XchangeCore alerts missing from IPAWS are posted once all the shards are done, since an
+     * alert only looks missing until the shard of its cog has seen it. A cycle in which a shard
+     * did not finish posts nothing and leaves the alerts to the next one.
+     * 
+     * @return int the number of CAP messages retrieved from IPAWS
+     */
+    public int pollCAPMessages() {
 
+        boolean ret = isIPAWSAvailable();
+        if (!ret) {
+            return 0;
+        }
+
+        // see the alerts created by the XchangeCore users since the previous cycle
+        this.alertWorkProduct.invalidate();
+
+        List<IPAWSCapShard> shards = getShards();
+        if (shards.size() == 1) {
+            int count = pollShard(shards.get(0));
+            postAlertsToIPAWS(shards.get(0));
+            return count;
+        }
+
+        ExecutorService pool = getShardExecutor();
+        List<IPAWSCapShard> polled = new ArrayList<IPAWSCapShard>(shards.size());
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(shards.size());
+        boolean complete = true;
+        for (final IPAWSCapShard shard : shards) {
+            if (shard.isRunning()) {
+                log.info("Skipping CAP shard " + shard.getCogId() +
+                         ", the previous cycle is still running");
+                complete = false;
+                continue;
+            }
+            polled.add(shard);
+            futures.add(pool.submit(new Callable<Integer>() {
+
+                @Override
+                public Integer call() {
+
+                    return pollShard(shard);
+                }
+            }));
+        }
+
+        int count = 0;
+        long deadline = System.currentTimeMillis() + this.shardTimeout;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                long timeout = Math.max(0, deadline - System.currentTimeMillis());
+                count += futures.get(i).get(timeout, TimeUnit.MILLISECONDS).intValue();
+            } catch (TimeoutException e) {
+                log.info("CAP shard " + polled.get(i).getCogId() +
+                         " is still running, not waiting for it");
+                complete = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return count;
+            } catch (ExecutionException e) {
+                log.error("CAP shard " + polled.get(i).getCogId() + " failed: " + e.getCause());
+                complete = false;
+            }
+        }
+
+        for (IPAWSCapShard shard : shards) {
+            if (shard.isPostingToIPAWS()) {
+                if (complete) {
+                    postAlertsToIPAWS(shard);
+                } else {
+                    shard.takePostToIPAWS();
+                    log.info("Not posting XchangeCore alerts to IPAWS, not every CAP shard " +
+                             "finished the cycle");
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * method pollShard runs one cycle for the shard unless it is still busy with the previous one
+     * 
+     * @param IPAWSCapShard shard the shard to poll
+     * @return int the number of CAP messages retrieved from IPAWS
+     */
+    private int pollShard(IPAWSCapShard shard) {
+
+        if (!shard.begin()) {
+            return 0;
+        }
+        shard.setPostToIPAWS(null);
+
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try {
             // if starting getting messages failed the first time,
-            // this.lastUpdate is not set, to start getting the messages again
-            if (this.lastUpdate == null) {
-                startGettingMessages();
+            // lastUpdate is not set, to start getting the messages again
+            if (shard.getLastUpdate() == null) {
+                count = retrieveFirstMessages(shard);
             } else {
-                alerts = getCAPMessagesAfterTime(this.lastUpdate);
-                if (alerts != null) {
-                    log.info("Retrieved " + alerts.length + " CAP messages from IPAWS sent after " +
-                             this.lastUpdate);
-
-                    // update the time
-                    Calendar latest = this.lastUpdate;
-                    for (Alert alert : alerts) {
-                        Calendar cal = alert.getSent();
-                        if (cal.after(latest)) {
-                            latest = cal;
-                        }
+                count = getCAPMessagesAfterLastUpdate(shard);
+            }
+        } finally {
+            shard.end(System.currentTimeMillis() - start, count);
+        }
+        return count;
+    }
+
+    /**
+     * method getCAPMessagesAfterLastUpdate retrieves the CAP messages sent after lastUpdate,
+     * synchronizes them with XchangeCore and commits the new lastUpdate to the checkpoint store.
+     */
+    private int getCAPMessagesAfterLastUpdate(IPAWSCapShard shard) {
+
+        if (this.streamingResponse) {
+            return streamCAPMessagesAfterLastUpdate(shard);
+        }
+
+        Calendar lastUpdate = shard.getLastUpdate();
+        Alert[] alerts = getCAPMessagesAfterTime(shard.getQueryCogId(), lastUpdate);
+        if (alerts != null) {
+            log.info("Retrieved " + alerts.length + " CAP messages from IPAWS sent after " +
+                     lastUpdate + " for cog " + shard.getCogId());
+
+            // update the time
+            Calendar latest = lastUpdate;
+            for (Alert alert : alerts) {
+                latest = IPAWSTimestamp.latest(latest, alert.getSent());
+            }
+            // update the lastUpdate sent time
+            shard.setLastUpdate(latest);
+        }
+
+        // synchronize the alerts between ipaws and XchangeCore
+        synchronizeAlertsWithUICDS(alerts, shard);
+
+        commitCheckpoint(shard);
+
+        return alerts == null ? 0 : alerts.length;
+    }
+
+    /**
+     * method streamCAPMessagesAfterLastUpdate does the same as getCAPMessagesAfterLastUpdate but
+     * reads the alerts off the response one at a time. Each alert is reconciled as soon as it is
+     * read and only its id is kept, so no XmlBeans copy of the whole response is made. The
+     * response itself is only streamed with a streaming message factory, see setStreamingResponse.
+     */
+    private int streamCAPMessagesAfterLastUpdate(IPAWSCapShard shard) {
+
+        final IPAWSAlertDiff.Accumulator diff = new IPAWSAlertDiff.Accumulator(this.alertWorkProduct.getAlertWorkProduct(),
+            this.inBothSet);
+        final Calendar[] latest = new Calendar[] {
+            shard.getLastUpdate()
+        };
+
+        Integer count = streamCAPMessagesAfterTime(shard.getQueryCogId(),
+            shard.getLastUpdate(),
+            new IPAWSMessageReader.MessageHandler<Alert>() {
+
+                @Override
+                public void handleMessage(Alert alert) {
+
+                    if (NO_MESSAGE_FOUND.equals(alert.getIdentifier())) {
+                        return;
+                    }
+
+                    latest[0] = IPAWSTimestamp.latest(latest[0], alert.getSent());
+
+                    if (diff.add(alert.getIdentifier())) {
+                        createAlertInUICDS(alert);
                     }
-                    // update the lastUpdate sent time
-                    this.lastUpdate = latest;
                 }
+            });
+
+        if (count != null) {
+            log.info("Streamed " + count + " CAP messages from IPAWS sent after " +
+                     shard.getLastUpdate() + " for cog " + shard.getCogId());
+            shard.setLastUpdate(latest[0]);
+        }
+
+        for (String alertId : diff.getInSync()) {
+            this.inBothSet.add(alertId);
+        }
+        if (shard.isPostingToIPAWS()) {
+            shard.setPostToIPAWS(diff.getPostToIPAWS());
+        }
+
+        commitCheckpoint(shard);
+
+        return count == null ? 0 : count.intValue();
+    }
+
+    /**
+     * method syncCAPMessagesByDigest retrieves the message digest list of the cog, diffs the ids of
+     * the messages sent after the time against the alerts in XchangeCore and retrieves only the
+     * missing alerts by id, in parallel. The lastUpdate is moved to the latest sent time of the
+     * digests, or to before the earliest missing alert that could not be retrieved, so that the
+     * time query of the next cycle retrieves it.
+     * 
+     * @param Calendar since the start of the firstRetrievePeriod, null for all the messages
+     * @return Integer the number of alerts retrieved, or null if no digest was returned, in which
+     *         case the first messages are retrieved as usual
+     */
+    private Integer syncCAPMessagesByDigest(IPAWSCapShard shard, Calendar since) {
+
+        List<IPAWSCapMessageDigest> digests = getMessageDigestListByCogID(shard.getCogId());
+        if (digests == null || digests.isEmpty()) {
+            // an empty list cannot be told from a failed request, and taking it
+            // as such would post every XchangeCore alert to IPAWS
+            log.info("No CAP message digest returned by IPAWS for cog " + shard.getCogId() +
+                     ", retrieving the CAP messages as usual");
+            return null;
+        }
+
+        IPAWSAlertDiff.DigestResult diff = IPAWSAlertDiff.diffDigests(digests,
+            since,
+            this.alertWorkProduct.getAlertWorkProduct(),
+            this.inBothSet);
+        List<String> missingIds = diff.getMissingIds();
+
+        log.info("Retrieving " + missingIds.size() + " of " + diff.getCount() +
+                 " CAP messages in the digest of cog " + shard.getCogId() + " from IPAWS");
+
+        Map<String, Alert> alerts = this.alertFetcher.fetch(missingIds,
+            new IPAWSAlertFetcher.Retriever<Alert>() {
+
+                @Override
+                public Alert retrieve(String id) {
+
+                    return getCapMessageById(id);
+                }
+            });
+        for (Alert alert : alerts.values()) {
+            createAlertInUICDS(alert);
+        }
+
+        for (String alertId : diff.getInSync()) {
+            this.inBothSet.add(alertId);
+        }
+        if (shard.isPostingToIPAWS()) {
+            shard.setPostToIPAWS(diff.getPostToIPAWS());
+        }
 
-                // synchronize the alerts between ipaws and XchangeCore
-                synchronizeAlertsWithUICDS(alerts);
+        shard.setLastUpdate(diff.getLastUpdate(alerts.keySet()));
+        commitCheckpoint(shard);
+
+        return alerts.size();
+    }
+
+    /**
+     * method commitCheckpoint saves the lastUpdate of the shard so that a restart resumes from it.
+     * The inBoth ids are saved first, since resuming past alerts that are missing from inBoth
+     * would post them to IPAWS again.
+     */
+    private void commitCheckpoint(IPAWSCapShard shard) {
+
+        if (this.checkpointStore != null && shard.getLastUpdate() != null && commitInBothSet()) {
+            this.checkpointStore.commit(shard.getCheckpointKey(), shard.getLastUpdate());
+        }
+    }
+
+    /**
+     * method commitInBothSet saves the inBoth ids in the checkpoint store if they changed since
+     * they were last saved
+     * 
+     * @return boolean false if they could not be saved
+     */
+    private synchronized boolean commitInBothSet() {
+
+        long modifications = this.inBothSet.getModificationCount();
+        if (modifications == this.inBothCommitted) {
+            return true;
+        }
+        if (!this.checkpointStore.commitIds(IN_BOTH_KEY, this.inBothSet.getIds())) {
+            return false;
+        }
+        this.inBothCommitted = modifications;
+        return true;
+    }
+
+    /**
+     * method restoreInBothSet loads the inBoth ids saved with the checkpoint, once for all the
+     * shards
+     * 
+     * @return boolean false if no ids were saved, by a version that did not save them
+     */
+    private synchronized boolean restoreInBothSet() {
+
+        if (!this.inBothRestored) {
+            Map<String, Long> ids = this.checkpointStore.getIds(IN_BOTH_KEY);
+            if (ids == null) {
+                return false;
             }
+            this.inBothSet.restore(ids);
+            this.inBothRestored = true;
+            log.info("Restored " + this.inBothSet.size() + " inBoth ids from the IPAWS checkpoint");
         }
+        return true;
     }
 
     /**
@@ -151,58 +696,241 @@ public class IPAWSCap {
         // Only use this during testing
         // cleanUpUICDS();
 
-        // Get ack from IPAWS to check connectivity and credentials
-        boolean ret = getCAPACK();
+        // retry the alerts left in the retry queue by the previous run
+        if (this.retryQueue != null) {
+            this.retryQueue.start();
+        }
 
-        if (ret) {
-            Alert[] alerts = null;
-            try {
-                // IPAWS tries to parse the firstRetrievePeriod. To start,
-                // IPAWS retrieve the messages created during this period.
-                // if it cannot parse this then it gets all messages in IPAWS.
-                // setting the last update to current - firstRetrievePeriod
-                long period = Long.parseLong(firstRetrievePeriod);
-                this.lastUpdate = Calendar.getInstance();
-                long timeToRetrieve = this.lastUpdate.getTimeInMillis() - period * 24L * 3600000L;
-                this.lastUpdate.setTimeInMillis(timeToRetrieve);
-
-                SimpleDateFormat df = new SimpleDateFormat(DATE_FORMAT);
-                log.info("Retrieving CAP message from IPAWS since " +
-                         formatCalendarStringToRfc3339(df.format(this.lastUpdate.getTime())));
-
-                // retrieve the cap message from IPAWS
-                alerts = getCAPMessagesAfterTime(this.lastUpdate);
-            } catch (NumberFormatException e) {
-                if (this.firstRetrievePeriod.equals("ALL")) {
-                    log.info("Retrieving all messages from IPAWS");
-                } else {
-                    log.error("Unable to parse firstRetrievePeriod.  Retrieving all messages from IPAWS");
+        // the shards have no lastUpdate yet so each of them retrieves its first messages
+        pollCAPMessages();
+    }
+
+    /**
+     * method retrieveFirstMessages retrieves the first CAP messages of the shard, from its
+     * checkpoint if one was committed or else for the firstRetrievePeriod
+     * 
+     * @return int the number of CAP messages retrieved from IPAWS
+     */
+    private int retrieveFirstMessages(IPAWSCapShard shard) {
+
+        // if a checkpoint was committed before the restart, resume from it
+        // instead of retrieving the whole firstRetrievePeriod again
+        if (this.checkpointStore != null) {
+            Calendar checkpoint = this.checkpointStore.getCheckpoint(shard.getCheckpointKey());
+            if (checkpoint != null) {
+                log.info("Resuming CAP messages for cog " + shard.getCogId() +
+                         " from IPAWS checkpoint " + checkpoint.getTime());
+                if (!restoreInBothSet()) {
+                    rebuildInBothSet(shard);
+                }
+                shard.setLastUpdate(checkpoint);
+                return getCAPMessagesAfterLastUpdate(shard);
+            }
+        }
+
+        Calendar lastUpdate = getFirstRetrieveTime();
+        if (this.digestSync) {
+            if (lastUpdate != null && shard.getQueryCogId() == null) {
+                log.info("Not using the CAP message digest of cog " + shard.getCogId() +
+                         ", the first messages are retrieved for all the cogs");
+            } else {
+                Integer count = syncCAPMessagesByDigest(shard, lastUpdate);
+                if (count != null) {
+                    return count.intValue();
                 }
+            }
+        }
+
+        Alert[] alerts = retrieveFirstRetrievePeriod(shard, lastUpdate);
 
-                // if cannot get the messages in the period, then get all cap messages
-                alerts = getCapMessagesByCogID(this.cogs);
+        // synchronize the alerts between ipaws and XchangeCore
+        if (alerts != null) {
+            log.info("Retrieved " + alerts.length + " original CAP messages from IPAWS for cog " +
+                     shard.getCogId());
+
+            // update the time
+            Calendar latest = alerts[0].getSent();
+            for (Alert alert : alerts) {
+                latest = IPAWSTimestamp.latest(latest, alert.getSent());
             }
 
-            // synchronize the alerts between ipaws and XchangeCore
-            if (alerts != null) {
-                log.info("Retrieved " + alerts.length + " original CAP messages from IPAWS");
+            lastUpdate = latest;
+        }
+        shard.setLastUpdate(lastUpdate);
+        synchronizeAlertsWithUICDS(alerts, shard);
 
-                // update the time
-                Calendar latest = alerts[0].getSent();
-                for (Alert alert : alerts) {
-                    Calendar cal = alert.getSent();
-                    if (cal.after(latest)) {
-                        latest = cal;
-                    }
+        commitCheckpoint(shard);
+
+        return alerts == null ? 0 : alerts.length;
+    }
+
+    /**
+     * method rebuildInBothSet refills the inBoth set after a restart that resumes from a
+     * checkpoint saved without the inBoth ids. The cycles after the checkpoint only see the alerts
+     * sent since, so without it every XchangeCore alert of the firstRetrievePeriod would look
+     * missing from IPAWS and be posted again. The alerts of the period are retrieved once and
+     * those already in XchangeCore are marked in both, before anything is posted.
+     */
+    private void rebuildInBothSet(IPAWSCapShard shard) {
+
+        Alert[] alerts = retrieveFirstRetrievePeriod(shard, getFirstRetrieveTime());
+        if (alerts == null) {
+            return;
+        }
+
+        Set<String> uicdsAlertIds = this.alertWorkProduct.getAlertWorkProduct();
+        int count = 0;
+        for (Alert alert : alerts) {
+            if (uicdsAlertIds.contains(alert.getIdentifier())) {
+                this.inBothSet.add(alert.getIdentifier());
+                count++;
+            }
+        }
+        log.info("Rebuilt inBoth with " + count + " of " + alerts.length +
+                 " CAP messages from IPAWS for cog " + shard.getCogId());
+    }
+
+    /**
+     * method getFirstRetrieveTime
+     * 
+     * @return Calendar the current time less the firstRetrievePeriod in days, or null if the
+     *         period is not a number, in which case all the messages of the cog are retrieved
+     */
+    private Calendar getFirstRetrieveTime() {
+
+        try {
+            // IPAWS tries to parse the firstRetrievePeriod. To start,
+            // IPAWS retrieve the messages created during this period.
+            // if it cannot parse this then it gets all messages in IPAWS.
+            // setting the last update to current - firstRetrievePeriod
+            long period = Long.parseLong(this.firstRetrievePeriod);
+            Calendar lastUpdate = Calendar.getInstance();
+            long timeToRetrieve = lastUpdate.getTimeInMillis() - period * 24L * 3600000L;
+            lastUpdate.setTimeInMillis(timeToRetrieve);
+            return lastUpdate;
+        } catch (NumberFormatException e) {
+            if (this.firstRetrievePeriod.equals("ALL")) {
+                log.info("Retrieving all messages from IPAWS");
+            } else {
+                log.error("Unable to parse firstRetrievePeriod.  Retrieving all messages from IPAWS");
+            }
+            return null;
+        }
+    }
+
+    /**
+     * method retrieveFirstRetrievePeriod retrieves the CAP messages of the shard sent after the
+     * time, or all the messages of its cog if the time is null
+     * 
+     * @return Alert[] the alerts, or null if no message is found
+     */
+    private Alert[] retrieveFirstRetrievePeriod(IPAWSCapShard shard, Calendar since) {
+
+        if (since == null) {
+            // if cannot get the messages in the period, then get all cap messages
+            return getCapMessagesByCogID(shard.getCogId());
+        }
+
+        log.info("Retrieving CAP message for cog " + shard.getCogId() + " from IPAWS since " +
+                 IPAWSTimestamp.format(since));
+
+        // retrieve the cap message from IPAWS
+        return getCAPMessagesAfterTime(shard.getQueryCogId(), since);
+    }
+
+    /**
+     * method getShards returns the shards for the cogs, one per cog in the cogs string. The shard
+     * of the first of the postToCogs, or else of the first cog, posts the XchangeCore alerts to
+     * IPAWS, so that they are posted once per cycle.
+     * 
+     * @return List<IPAWSCapShard> the shards in the order of the cogs
+     */
+    public synchronized List<IPAWSCapShard> getShards() {
+
+        if (this.shards == null) {
+            Set<String> cogIds = new LinkedHashSet<String>();
+            for (String cogId : this.cogs.trim().split("\\s+")) {
+                if (cogId.length() > 0) {
+                    cogIds.add(cogId);
                 }
+            }
+            if (cogIds.isEmpty()) {
+                cogIds.add(this.cogs);
+            }
 
-                this.lastUpdate = latest;
+            String postingCogId = this.postToCogs.trim().split("\\s+")[0];
+            if (!cogIds.contains(postingCogId)) {
+                postingCogId = cogIds.iterator().next();
             }
-            synchronizeAlertsWithUICDS(alerts);
+
+            boolean sharded = cogIds.size() > 1;
+            List<IPAWSCapShard> shardList = new ArrayList<IPAWSCapShard>(cogIds.size());
+            for (String cogId : cogIds) {
+                // a single cog keeps the checkpoint key it had before sharding
+                shardList.add(new IPAWSCapShard(cogId,
+                    sharded ? CHECKPOINT_KEY + "." + cogId : CHECKPOINT_KEY,
+                    sharded,
+                    cogId.equals(postingCogId)));
+            }
+            this.shards = Collections.unmodifiableList(shardList);
+        }
+        return this.shards;
+    }
+
+    private synchronized ExecutorService getShardExecutor() {
+
+        if (this.shardExecutor == null) {
+            this.shardExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+
+                    Thread thread = new Thread(r, "ipaws-cap-shard-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.shardExecutor;
+    }
+
+    /**
+     * method shutdown stops the shard, posting and fetching threads, to be used as the spring
+     * destroy-method
+     */
+    public synchronized void shutdown() {
+
+        if (this.shardExecutor != null) {
+            this.shardExecutor.shutdownNow();
+            this.shardExecutor = null;
         }
+        this.alertPoster.shutdown();
+        this.alertFetcher.shutdown();
+        if (this.retryQueue != null) {
+            this.retryQueue.stop();
+        }
+    }
+
+    /**
+     * method isIPAWSAvailable checks the availability of IPAWS with the health check, which only
+     * sends a getACK if IPAWS was not seen available recently.
+     */
+    private boolean isIPAWSAvailable() {
 
+        return getHealthCheck().isAvailable(this.ackProbe);
     }
 
+    private final IPAWSHealthCheck.Probe ackProbe = new IPAWSHealthCheck.Probe() {
+
+        @Override
+        public boolean ping() {
+
+            return getCAPACK();
+        }
+    };
+
     /**
      * method getACK get the aknowledgement from IPAWS mainly to test the security credentials and
      * the availability of the IPAWS server.
@@ -210,14 +938,7 @@ public class IPAWSCap {
     public boolean getCAPACK() {
 
         // create the request message
-        GetRequestTypeDefDocument request = GetRequestTypeDefDocument.Factory.newInstance();
-
-        RequestParameterList reqParamList = request.addNewGetRequestTypeDef();
-        reqParamList.setRequestAPI(REQUEST_API);
-        reqParamList.setRequestOperation(GET_ACK_OP);
-
-        ParameterListItem listItem = reqParamList.addNewParameters();
-        listItem.setParameterName("ping");
+        GetRequestTypeDefDocument request = ACK_REQUEST.newRequest();
 
         // log.info("IPAWSCap 1:"+request.toString());
 
@@ -230,21 +951,32 @@ public class IPAWSCap {
     }
 
     /**
-     * method getCogList retrieves the list of cogname, cogid from IPAWS.
+     * method getCogList retrieves the list of cogname, cogid from IPAWS, or from the cog cache if
+     * it was retrieved recently.
      * 
      * @return the List of IPAWSCog.
      */
     public List<IPAWSCog> getCogList() {
 
-        // create the request message
-        GetRequestTypeDefDocument request = GetRequestTypeDefDocument.Factory.newInstance();
+        List<IPAWSCog> cogList = this.cogCache.get("cap", this.cogListLoader);
+        return cogList != null ? cogList : Collections.<IPAWSCog> emptyList();
+    }
 
-        RequestParameterList paramList = request.addNewGetRequestTypeDef();
-        paramList.setRequestAPI(REQUEST_API);
-        paramList.setRequestOperation(GET_COG_OP);
+    private final IPAWSCache.Loader<String, List<IPAWSCog>> cogListLoader = new IPAWSCache.Loader<String, List<IPAWSCog>>() {
 
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("ALL");
+        @Override
+        public List<IPAWSCog> load(String key) {
+
+            List<IPAWSCog> cogList = retrieveCogList();
+            // an empty list is a failed request, it is not cached
+            return cogList.isEmpty() ? null : Collections.unmodifiableList(cogList);
+        }
+    };
+
+    private List<IPAWSCog> retrieveCogList() {
+
+        // create the request message
+        GetRequestTypeDefDocument request = COG_LIST_REQUEST.newRequest();
 
         // log.info("IPAWSCap 3:"+request.toString());
 
@@ -266,16 +998,7 @@ public class IPAWSCap {
     public List<IPAWSCapMessageDigest> getMessageDigestListByCogID(String cogid) {
 
         // create the request message
-        GetRequestTypeDefDocument request = GetRequestTypeDefDocument.Factory.newInstance();
-
-        RequestParameterList paramList = request.addNewGetRequestTypeDef();
-        paramList.setRequestAPI(REQUEST_API);
-        paramList.setRequestOperation(GET_MESSAGE_LIST_ALL_OP);
-
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("cogid");
-        listItem.setComparisonOp("equalto");
-        listItem.addParameterValue(cogid);
+        GetRequestTypeDefDocument request = DIGEST_LIST_REQUEST.newRequest(cogid);
 
         // log.info("IPAWSCap 4:"+request.toString());
 
@@ -295,16 +1018,7 @@ public class IPAWSCap {
     public Alert getCapMessageById(String msgId) {
 
         // create the request message
-        GetMessageTypeDefDocument requestDoc = GetMessageTypeDefDocument.Factory.newInstance();
-
-        RequestParameterList paramList = requestDoc.addNewGetMessageTypeDef();
-        paramList.setRequestAPI(REQUEST_API);
-        paramList.setRequestOperation(GET_MESSAGE_OP);
-
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("identifier");
-        listItem.setComparisonOp("equalto");
-        listItem.addParameterValue(msgId);
+        GetMessageTypeDefDocument requestDoc = MESSAGE_BY_ID_REQUEST.newRequest(msgId);
 
         // log.info("IPAWSCap 6: "+requestDoc.toString());
 
@@ -330,16 +1044,7 @@ public class IPAWSCap {
     public Alert[] getCapMessagesByCogID(String cogId) {
 
         // create the request message
-        GetMessageTypeDefDocument requestDoc = GetMessageTypeDefDocument.Factory.newInstance();
-
-        RequestParameterList paramList = requestDoc.addNewGetMessageTypeDef();
-        paramList.setRequestAPI(CAP_API);
-        paramList.setRequestOperation(GET_MESSAGE_OP);
-
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("cogid");
-        listItem.setComparisonOp("equalto");
-        listItem.addParameterValue(cogId);
+        GetMessageTypeDefDocument requestDoc = MESSAGES_BY_COG_REQUEST.newRequest(cogId);
 
         //log.info("IPAWSCap 8:"+requestDoc.toString());
 
@@ -348,7 +1053,7 @@ public class IPAWSCap {
 
         //  log.info(response.xmlText()+": response string :"+response.toString());
 
-        log.debug("IPAWSCap 9:" + response.toString());
+        log.debug("IPAWSCap 9:" + response);
 
         Alert[] alerts = IPAWSCapServiceResponse.getCapMessagesFromResponse(response);
 
@@ -361,21 +1066,19 @@ public class IPAWSCap {
 
     public Alert[] getCAPMessagesAfterTime(Calendar cal) {
 
-        // create the request message
-        GetMessageTypeDefDocument requestDoc = GetMessageTypeDefDocument.Factory.newInstance();
-
-        RequestParameterList paramList = requestDoc.addNewGetMessageTypeDef();
-        paramList.setRequestAPI(CAP_API);
-        paramList.setRequestOperation(GET_MESSAGE_OP);
+        return getCAPMessagesAfterTime(null, cal);
+    }
 
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("sent");
-        listItem.setComparisonOp("greaterthan");
+    /**
+     * method getCAPMessagesAfterTime retrieves the CAP messages of the cog sent after the time
+     * 
+     * @param String cogId the id of the COG, or null for the messages of all the cogs
+     * @param Calendar cal the time after which the messages were sent
+     * @return Alert[] the alerts, or null if no message is found
+     */
+    public Alert[] getCAPMessagesAfterTime(String cogId, Calendar cal) {
 
-        // now change the date time format to yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
-        SimpleDateFormat df = new SimpleDateFormat(DATE_FORMAT);
-        String dateStr = df.format(cal.getTime());
-        listItem.addParameterValue(formatCalendarStringToRfc3339(dateStr));
+        GetMessageTypeDefDocument requestDoc = newMessagesAfterTimeRequest(cogId, cal);
 
         // log.info("IPAWSCap 10:"+requestDoc.toString());
 
@@ -386,19 +1089,65 @@ public class IPAWSCap {
         Alert[] alerts = IPAWSCapServiceResponse.getCapMessagesFromResponse(response);
 
         // if no message is found, return null
-        if (alerts == null || alerts[0].getIdentifier().equals(GET_MESSAGE_OP)) {
+        if (alerts == null || alerts[0].getIdentifier().equals(NO_MESSAGE_FOUND)) {
             return null;
         }
         return alerts;
     }
 
+    /**
+     * method streamCAPMessagesAfterTime retrieves the CAP messages sent after the time and hands
+     * them to the handler one at a time as they are read off the response
+     * 
+     * @param Calendar cal the time after which the messages were sent
+     * @param MessageHandler<Alert> handler receives each alert
+     * @return Integer the number of alerts read, or null if the request could not be sent
+     */
+    public Integer streamCAPMessagesAfterTime(Calendar cal,
+                                              IPAWSMessageReader.MessageHandler<Alert> handler) {
+
+        return streamCAPMessagesAfterTime(null, cal, handler);
+    }
+
+    /**
+     * method streamCAPMessagesAfterTime does the same for the messages of the cog
+     * 
+     * @param String cogId the id of the COG, or null for the messages of all the cogs
+     */
+    public Integer streamCAPMessagesAfterTime(String cogId,
+                                              Calendar cal,
+                                              IPAWSMessageReader.MessageHandler<Alert> handler) {
+
+        GetMessageTypeDefDocument requestDoc = newMessagesAfterTimeRequest(cogId, cal);
+
+        // send the request and read the alerts as they arrive
+        return this.webServiceClient.sendRequest(requestDoc,
+            IPAWSCapServiceResponse.newCapMessageReader(handler));
+    }
+
+    /**
+     * method newMessagesAfterTimeRequest creates the getMessage request for the CAP messages sent
+     * after the time, restricted to the cog if one is given
+     */
+    private static GetMessageTypeDefDocument newMessagesAfterTimeRequest(String cogId, Calendar cal) {
+
+        // the time in format yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
+        String sent = IPAWSTimestamp.format(cal);
+
+        if (cogId != null) {
+            return MESSAGES_AFTER_TIME_BY_COG_REQUEST.newRequest(sent, cogId);
+        }
+        return MESSAGES_AFTER_TIME_REQUEST.newRequest(sent);
+    }
+
     /**
      * method postAlert posts a CAP alert message to IPAWS
      * 
      * @param Alert alert: the alert message to be sent
-     * @return boolean: true is success, false if post CAP failed
+     * @return Result: ACCEPTED or REJECTED as answered by IPAWS, UNAVAILABLE or THROTTLED if the
+     *         client refused to send it, FAILED if it was not sent
      */
-    public boolean postAlert(Alert alert) {
+    public IPAWSAlertPoster.Result postAlert(Alert alert) {
 
         PostCAPRequestTypeDefDocument postRequestDoc = PostCAPRequestTypeDefDocument.Factory.newInstance();
         PostCAPRequestTypeDef postRequest = postRequestDoc.addNewPostCAPRequestTypeDef();
@@ -406,93 +1155,246 @@ public class IPAWSCap {
 
         log.debug("postAlert request:" + postRequestDoc.toString());
 
-        XmlObject response = this.webServiceClient.sendRequest(postRequestDoc);
+        XmlObject response;
+        try {
+            response = this.webServiceClient.sendRequest(postRequestDoc);
+        } catch (IPAWSUnavailableException e) {
+            log.error("postAlert: " + e.getMessage());
+            return IPAWSAlertPoster.Result.UNAVAILABLE;
+        } catch (IPAWSThrottledException e) {
+            log.error("postAlert: " + e.getMessage());
+            return IPAWSAlertPoster.Result.THROTTLED;
+        }
         //log.info("postAlert Response:" +response.toString());
 
-        return IPAWSCapServiceResponse.getPostCapResultFromResponse(response);
+        if (response == null) {
+            return IPAWSAlertPoster.Result.FAILED;
+        }
+        return IPAWSCapServiceResponse.getPostCapResultFromResponse(response) ? IPAWSAlertPoster.Result.ACCEPTED
+                                                                             : IPAWSAlertPoster.Result.REJECTED;
     }
 
+    /**
+     * method synchronizeAlertsWithUICDS creates the IPAWS alerts that are not in XchangeCore and
+     * posts the XchangeCore alerts that are not in IPAWS. The difference is computed by
+     * IPAWSAlertDiff.
+     * 
+     * @param Alert[] ipawsAlerts the alerts retrieved from IPAWS, may be null
+     */
     public void synchronizeAlertsWithUICDS(Alert[] ipawsAlerts) {
 
-        // to start, this list is empty
-        ArrayList<String> inIPAWSnotUICDSList = new ArrayList<String>();
-
-        // to start, this set contains all alerts in XchangeCore
-        Set<String> inUICDSnotIPAWSSet = this.alertWorkProduct.getAlertWorkProduct();
-        // log.info("inUICDSnotIPAWSSet size:"+inUICDSnotIPAWSSet.size());
-        // go through the array of ipaws alert
-        if (ipawsAlerts != null) {
-            for (Alert alert : ipawsAlerts) {
-                String alertId = alert.getIdentifier();
-                if (this.alertWorkProduct.findAlertInUICDS(alertId)) {
-                    // this alert is in both ipaws and uicds,
-                    // then remove from the inUICDSnotIPAWS set
-                    inUICDSnotIPAWSSet.remove(alertId);
-                    IPAWSCap.inBothList.add(alertId);
-                } else {
-                    // if cannot find in the uicds alert table, then
-                    // add to the inIPAWSnotUICDS list
-                    inIPAWSnotUICDSList.add(alertId);
-                }
-            }
-        }
+        synchronizeAlertsWithUICDS(ipawsAlerts, null);
+    }
+
+    /**
+     * method synchronizeAlertsWithUICDS does the same for the alerts retrieved by the shard. The
+     * XchangeCore alerts to post are left to the shard posting to IPAWS, which posts them at the
+     * end of the cycle, and the other shards do not post.
+     * 
+     * @param IPAWSCapShard shard the shard that retrieved the alerts, null to post right away
+     */
+    private void synchronizeAlertsWithUICDS(Alert[] ipawsAlerts, IPAWSCapShard shard) {
+
+        // this set contains all alerts in XchangeCore
+        Set<String> uicdsAlertIds = this.alertWorkProduct.getAlertWorkProduct();
+
+        IPAWSAlertDiff.Result<Alert> diff = IPAWSAlertDiff.diff(indexByIdentifier(ipawsAlerts),
+            uicdsAlertIds,
+            this.inBothSet);
 
-        // now since the ipawsAlerts are fetched only for the latest alerts,
-        // we need to remove the ones that were added earlier
-        int bothSize = inBothList.size();
-        for (int i = 0; i < bothSize; i++) {
-            inUICDSnotIPAWSSet.remove(IPAWSCap.inBothList.get(i));
+        for (String alertId : diff.getInSync()) {
+            this.inBothSet.add(alertId);
         }
 
-        log.info("There are " + IPAWSCap.inBothList.size() + " in inBoth");
-        log.info("There are " + inIPAWSnotUICDSList.size() + " in inIPAWSnotUICDSList");
-        log.info("There are " + inUICDSnotIPAWSSet.size() + " in inUICDSnotIPAWSSet");
-        log.info("There are " + IPAWSCap.notProcessedList.size() + " in notProcessedList");
+        log.info("There are " + this.inBothSet.size() + " in inBoth (" + this.inBothSet + ")");
+        log.info("There are " + diff.getCreateInUICDS().size() + " in inIPAWSnotUICDSList");
+        log.info("There are " + diff.getPostToIPAWS().size() + " in inUICDSnotIPAWSSet");
+        log.info("There are " + this.notProcessedSet.size() + " in notProcessed");
 
-        // in the end, we have a list of difference
         // create the alerts wp in uicds from the inIPAWSnotUICDS list
-        int size = inIPAWSnotUICDSList.size();
-        for (int i = 0; i < size; i++) {
-
-            String alertId = inIPAWSnotUICDSList.get(i);
-            for (Alert alert : ipawsAlerts) {
-                if (alertId.equals(alert.getIdentifier())) {
-                    this.alertWorkProduct.updateAlertWorkProduct(alert.getIdentifier(), alert);
-                    IPAWSCap.inBothList.add(alert.getIdentifier());
-                    continue;
+        for (Alert alert : diff.getCreateInUICDS()) {
+            createAlertInUICDS(alert);
+        }
+
+        // create the alerts in ipaws from the inUICDSnotIPAWS set
+        if (shard == null) {
+            postAlertsToIPAWS(diff.getPostToIPAWS());
+        } else if (shard.isPostingToIPAWS()) {
+            shard.setPostToIPAWS(diff.getPostToIPAWS());
+        }
+    }
+
+    /**
+     * method createAlertInUICDS creates the alert wp for an IPAWS alert that is not in XchangeCore
+     * 
+     * @param Alert alert the IPAWS alert
+     */
+    private void createAlertInUICDS(Alert alert) {
+
+        // added to inBoth first so that the shard posting to IPAWS never sees
+        // the new wp before it is known to come from IPAWS
+        this.inBothSet.add(alert.getIdentifier());
+        updateAlertWorkProduct(alert);
+    }
+
+    /**
+     * method updateAlertWorkProduct creates or updates the alert wp of the IPAWS alert, and
+     * queues the alert for retry if that failed. An alert is only handled by one thread at a
+     * time, so a retry never runs alongside a poll creating the same alert, and an alert the poll
+     * created is taken out of the retry queue.
+     * 
+     * @param Alert alert the IPAWS alert
+     */
+    private void updateAlertWorkProduct(Alert alert) {
+
+        String alertId = alert.getIdentifier();
+        synchronized (getAlertLock(alertId)) {
+            if (this.alertWorkProduct.updateAlertWorkProduct(alertId, alert)) {
+                if (this.retryQueue != null) {
+                    this.retryQueue.remove(alertId);
                 }
+                this.notProcessedSet.remove(alertId);
+            } else {
+                notProcessed(alert);
             }
         }
+    }
 
-        // create the alerts in ipaws from the inUICDSnotIPAWS set
-        Iterator<String> it = inUICDSnotIPAWSSet.iterator();
-        while (it.hasNext()) {
-            String alertId = it.next();
+    private Object getAlertLock(String alertId) {
+
+        int hash = alertId == null ? 0 : alertId.hashCode();
+        return this.alertLocks[(hash & Integer.MAX_VALUE) % this.alertLocks.length];
+    }
+
+    private static Object[] newAlertLocks(int count) {
+
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    /**
+     * method notProcessed records the alert that could not be created in XchangeCore and queues it
+     * for retry
+     * 
+     * @param Alert alert the IPAWS alert
+     */
+    private void notProcessed(Alert alert) {
+
+        this.notProcessedSet.add(alert.getIdentifier());
+        if (this.retryQueue != null) {
+            this.retryQueue.add(alert.getIdentifier(), alert);
+        }
+    }
+
+    private static final IPAWSRetryQueue.Codec<Alert> ALERT_CODEC = new IPAWSRetryQueue.Codec<Alert>() {
+
+        @Override
+        public String encode(Alert alert) {
+
+            AlertDocument alertDoc = AlertDocument.Factory.newInstance();
+            alertDoc.setAlert(alert);
+            return alertDoc.xmlText();
+        }
+
+        @Override
+        public Alert decode(String text) throws Exception {
+
+            return AlertDocument.Factory.parse(text).getAlert();
+        }
+    };
+
+    /**
+     * method postAlertsToIPAWS posts the XchangeCore alerts the posting shard found missing from
+     * IPAWS in the cycle, less those another shard has since seen in IPAWS and those IPAWS
+     * rejected
+     * 
+     * @param IPAWSCapShard shard the posting shard
+     */
+    private void postAlertsToIPAWS(IPAWSCapShard shard) {
+
+        List<String> alertIds = shard.takePostToIPAWS();
+        if (alertIds != null) {
+            postAlertsToIPAWS(alertIds);
+        }
+    }
+
+    /**
+     * method postAlertsToIPAWS posts the XchangeCore alerts that are not in IPAWS, less those
+     * since found in both and those IPAWS rejected that did not expire in the rejected set
+     * 
+     * @param List<String> alertIds the identifiers of the alerts in the alert wp table
+     */
+    private void postAlertsToIPAWS(List<String> alertIds) {
+
+        List<Alert> alertsToPost = new ArrayList<Alert>(alertIds.size());
+        for (String alertId : alertIds) {
+            // posted by another shard, or rejected and not expired yet
+            if (this.inBothSet.contains(alertId) || this.rejectedSet.peek(alertId)) {
+                continue;
+            }
             Alert alert = this.alertWorkProduct.getAlertFromWP(alertId);
             if (alert != null) {
                 alert.setAddresses(this.postToCogs);
+                alertsToPost.add(alert);
+            } else {
+                log.error("Cannot find alert " + alertId + " in the alert wp table.");
+            }
+        }
 
-                // now post the alert
-                // if the alert cannot be posted one way or the other
-                // add to the both list so that it would not be posted
-                // again
+        // now post the alerts
+        // an alert IPAWS accepted is in both, one it rejected is not posted
+        // again until it expires in the rejected set, one it never saw or did
+        // not answer is left for the next cycle
+        List<IPAWSAlertPoster.Outcome<Alert>> outcomes = this.alertPoster.postAlerts(alertsToPost,
+            new IPAWSAlertPoster.Sender<Alert>() {
 
-                if (postAlert(alert) == false) {
-                    IPAWSCap.inBothList.add(alert.getIdentifier());
-                } else {
-                    StringBuffer sb = new StringBuffer();
-                    sb.append("Posting alert work product ");
-                    sb.append(alertId);
-                    sb.append(" with alert identifier ");
-                    sb.append(alert.getIdentifier());
-                    sb.append(" to IPAWS");
-                    // log.info("IPAWSCap 11:"+sb.toString());
+                @Override
+                public IPAWSAlertPoster.Result post(Alert alert) {
+
+                    return postAlert(alert);
                 }
+            });
+        for (IPAWSAlertPoster.Outcome<Alert> outcome : outcomes) {
+            String alertId = outcome.getAlert().getIdentifier();
+            switch (outcome.getResult()) {
+            case ACCEPTED:
+                this.inBothSet.add(alertId);
+                break;
+            case REJECTED:
+                log.error("IPAWS rejected alert " + alertId);
+                this.rejectedSet.add(alertId);
+                break;
+            default:
+                log.error("Unable to post alert " + alertId + " to IPAWS after " +
+                          outcome.getAttempts() + " attempts (" + outcome.getResult() +
+                          "), posting it again next cycle");
+            }
+        }
+    }
 
-            } else {
-                log.error("Cannot find alert " + alertId + " in the alert wp table.");
+    /**
+     * method indexByIdentifier indexes the alerts by CAP identifier in the order they were
+     * retrieved. If an identifier is repeated the first alert is kept.
+     * 
+     * @param Alert[] alerts the alerts, may be null
+     * @return Map<String, Alert> the alerts keyed by identifier, or null if alerts is null
+     */
+    private static Map<String, Alert> indexByIdentifier(Alert[] alerts) {
+
+        if (alerts == null) {
+            return null;
+        }
+
+        Map<String, Alert> alertMap = new LinkedHashMap<String, Alert>(alerts.length * 2);
+        for (Alert alert : alerts) {
+            if (!alertMap.containsKey(alert.getIdentifier())) {
+                alertMap.put(alert.getIdentifier(), alert);
             }
         }
+        return alertMap;
     }
 
     public void createAlertFromEdxl(EDXLDistribution edxl) {
@@ -504,7 +1406,7 @@ public class IPAWSCap {
 
         try {
             Alert alert = (Alert) c.getObject();
-            this.alertWorkProduct.updateAlertWorkProduct(alert.getIdentifier(), alert);
+            updateAlertWorkProduct(alert);
         } catch (ClassCastException e) {
             log.error("IPAWSCap 12:" + e.getMessage());
         }
@@ -517,23 +1419,18 @@ public class IPAWSCap {
      * 
      * @parameter String dateStr in format yyyy-MM-dd'T'HH:mm:ssZ
      * @return String in format yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
+     * @deprecated format the Calendar with IPAWSTimestamp.format instead
      */
+    @Deprecated
     public static String formatCalendarStringToRfc3339(String dateStr) {
 
-        int index = dateStr.lastIndexOf('-');
-        if (index == -1) {
-            index = dateStr.lastIndexOf('+');
-        }
-
-        if (index != -1) {
-            String dateTimeStr = dateStr.substring(0, index);
-            String offset = dateStr.substring(index, dateStr.length());
-
-            if (offset.length() == 5) {
-                StringBuffer dateStrBuf = new StringBuffer(dateTimeStr).append(offset.substring(0,
-                    3)).append(":").append(offset.substring(3, 5));
-
-                return dateStrBuf.toString();
+        int length = dateStr.length();
+        if (length > 5) {
+            char sign = dateStr.charAt(length - 5);
+            if (sign == '+' || sign == '-') {
+                return new StringBuffer(length + 1).append(dateStr, 0, length - 2).append(':').append(dateStr,
+                    length - 2,
+                    length).toString();
             }
         }
         return dateStr;
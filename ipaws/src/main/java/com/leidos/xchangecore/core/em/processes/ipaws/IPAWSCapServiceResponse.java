@@ -6,14 +6,17 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPath;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
+import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
+import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 
 import services.dmopen.fema.gov.capresponse.ParameterListItem;
@@ -23,6 +26,7 @@ import services.dmopen.fema.gov.dmopenCAPService.GetResponseTypeDefDocument;
 import services.dmopen.fema.gov.dmopenCAPService.MessageResponseTypeDefDocument;
 import services.dmopen.fema.gov.dmopenCAPService.MessageResponseTypeDefDocument.MessageResponseTypeDef;
 import services.dmopen.fema.gov.dmopenCAPService.PostCAPResponseTypeDefDocument;
+import x1.oasisNamesTcEmergencyCap1.AlertDocument;
 import x1.oasisNamesTcEmergencyCap1.AlertDocument.Alert;
 
 import com.leidos.xchangecore.core.infrastructure.exceptions.InvalidXpathException;
@@ -74,6 +78,11 @@ public class IPAWSCapServiceResponse {
 
         ArrayList<IPAWSCapMessageDigest> messageList = new ArrayList<IPAWSCapMessageDigest>();
 
+        // no response, the request was not sent
+        if (xmlObjresponse == null) {
+            return messageList;
+        }
+
         try {
             GetResponseTypeDefDocument responseDoc = (GetResponseTypeDefDocument) xmlObjresponse;
 
@@ -140,6 +149,11 @@ public class IPAWSCapServiceResponse {
      */
     public static Alert[] getCapMessagesFromResponse(XmlObject xmlObjResponse) {
 
+        // no response, the request was not sent
+        if (xmlObjResponse == null) {
+            return null;
+        }
+
         try {
             MessageResponseTypeDefDocument responseDoc = (MessageResponseTypeDefDocument) xmlObjResponse;
 
@@ -153,6 +167,20 @@ public class IPAWSCapServiceResponse {
         return null;
     }
 
+    /**
+     * method newCapMessageReader creates a reader that hands the CAP alerts of a getMessage
+     * response to the handler one at a time instead of parsing the whole response.
+     *
+     * @param MessageHandler<Alert> handler receives each alert as it is read
+     * @return IPAWSMessageReader<Alert> the reader to pass to IPAWSSpringClient.sendRequest
+     */
+    public static IPAWSMessageReader<Alert> newCapMessageReader(IPAWSMessageReader.MessageHandler<Alert> handler) {
+
+        return new IPAWSMessageReader<Alert>(AlertDocument.type.getDocumentElementName(),
+            ALERT_PARSER,
+            handler);
+    }
+
     /**
      * method getCogListFromResponse parses the response and returns a list of IPAWSCog
      *
@@ -163,6 +191,11 @@ public class IPAWSCapServiceResponse {
 
         ArrayList<IPAWSCog> cogList = new ArrayList<IPAWSCog>();
 
+        // no response, the request was not sent
+        if (xmlObjResponse == null) {
+            return cogList;
+        }
+
         try {
             GetResponseTypeDefDocument responseDoc = (GetResponseTypeDefDocument) xmlObjResponse;
             ResponseParameterList responseParamList = responseDoc.getGetResponseTypeDef();
@@ -197,6 +230,11 @@ public class IPAWSCapServiceResponse {
      */
     public static boolean getPostCapResultFromResponse(XmlObject xmlObjResponse) {
 
+        // no response, the request was not sent
+        if (xmlObjResponse == null) {
+            return false;
+        }
+
         try {
             if (!(xmlObjResponse instanceof PostCAPResponseTypeDefDocument)) {
                 printFault(xmlObjResponse);
@@ -263,6 +301,21 @@ public class IPAWSCapServiceResponse {
 
     private static Logger log = LoggerFactory.getLogger(IPAWSCapServiceResponse.class);
 
+    private static final IPAWSMessageReader.MessageParser<Alert> ALERT_PARSER = new IPAWSMessageReader.MessageParser<Alert>() {
+
+        @Override
+        public Alert parse(XMLStreamReader reader) throws XmlException {
+
+            return AlertDocument.Factory.parse(reader).getAlert();
+        }
+
+        @Override
+        public Alert parse(Node node) throws XmlException {
+
+            return AlertDocument.Factory.parse(node).getAlert();
+        }
+    };
+
     private static final String SUCCESS = "SUCCESS";
 
 }
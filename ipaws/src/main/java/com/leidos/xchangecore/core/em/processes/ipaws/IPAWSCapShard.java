@@ -0,0 +1,144 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * class IPAWSCapShard
+ * holds the poll state of one COG polled by IPAWSCap: its own high-water mark
+ * and checkpoint key, and a guard so that a shard that is still busy with a
+ * slow cycle is skipped while the other shards keep polling.
+ */
+public class IPAWSCapShard {
+
+    private final String cogId;
+    private final String checkpointKey;
+    private final boolean filterByCog;
+    private final boolean postingToIPAWS;
+
+    private volatile Calendar lastUpdate = null;
+    private volatile long lastCycleTime = 0;
+    private volatile int lastMessageCount = 0;
+    private volatile List<String> postToIPAWS = null;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * @param String cogId the id of the COG
+     * @param String checkpointKey the key of the high-water mark in the checkpoint store
+     * @param boolean filterByCog true to restrict the queries to the COG, false when it is the
+     *        only COG polled
+     * @param boolean postingToIPAWS true if this shard posts the XchangeCore alerts to IPAWS
+     */
+    public IPAWSCapShard(String cogId,
+                         String checkpointKey,
+                         boolean filterByCog,
+                         boolean postingToIPAWS) {
+
+        this.cogId = cogId;
+        this.checkpointKey = checkpointKey;
+        this.filterByCog = filterByCog;
+        this.postingToIPAWS = postingToIPAWS;
+    }
+
+    public String getCogId() {
+
+        return cogId;
+    }
+
+    public String getCheckpointKey() {
+
+        return checkpointKey;
+    }
+
+    /**
+     * @return String the cog id to restrict the queries to, or null to not restrict them
+     */
+    public String getQueryCogId() {
+
+        return filterByCog ? cogId : null;
+    }
+
+    public boolean isPostingToIPAWS() {
+
+        return postingToIPAWS;
+    }
+
+    public Calendar getLastUpdate() {
+
+        return lastUpdate;
+    }
+
+    public void setLastUpdate(Calendar lastUpdate) {
+
+        this.lastUpdate = lastUpdate;
+    }
+
+    /**
+     * method setPostToIPAWS
+     * keeps the XchangeCore alerts found missing from IPAWS by the cycle of
+     * the posting shard, posted once every shard is done with the cycle
+     * @param List<String> alertIds the ids of the alerts, null for none
+     */
+    public void setPostToIPAWS(List<String> alertIds) {
+
+        this.postToIPAWS = alertIds;
+    }
+
+    /**
+     * method takePostToIPAWS
+     * @return List<String> the ids of the alerts to post, or null if the last
+     *         cycle found none or did not finish
+     */
+    public List<String> takePostToIPAWS() {
+
+        List<String> alertIds = postToIPAWS;
+        postToIPAWS = null;
+        return alertIds;
+    }
+
+    public long getLastCycleTime() {
+
+        return lastCycleTime;
+    }
+
+    public int getLastMessageCount() {
+
+        return lastMessageCount;
+    }
+
+    public boolean isRunning() {
+
+        return running.get();
+    }
+
+    /**
+     * method begin
+     * @return boolean true if the shard was idle and is now running, false if it is still busy
+     */
+    boolean begin() {
+
+        return running.compareAndSet(false, true);
+    }
+
+    /**
+     * method end
+     * marks the shard idle again and records the outcome of the cycle
+     */
+    void end(long cycleTime, int messageCount) {
+
+        this.lastCycleTime = cycleTime;
+        this.lastMessageCount = messageCount;
+        running.set(false);
+    }
+
+    public String toString() {
+
+        StringBuffer buf = new StringBuffer("cog:");
+        buf.append(cogId).append(", lastUpdate:");
+        buf.append(lastUpdate == null ? "none" : IPAWSTimestamp.format(lastUpdate));
+        buf.append(", running:").append(running.get());
+        return buf.toString();
+    }
+}
@@ -0,0 +1,255 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSCheckpointStore
+ * keeps the poll high-water mark of the IPAWS pollers in a small local
+ * file so that a restart resumes from the last successful cycle instead of
+ * retrieving the whole firstRetrievePeriod again. Each commit writes a
+ * temporary file, syncs it to disk and renames it over the checkpoint file,
+ * so a crash leaves either the old or the new checkpoint, never a partial one.
+ * One instance is meant to be shared by IPAWSCap and IPAWSEdxl, each poller
+ * using its own key. The ids a poller must remember across a restart are
+ * kept the same way, in a file next to the checkpoint file named after their
+ * key, one "time id" line per id.
+ */
+public class IPAWSCheckpointStore {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private String checkpointFile = "ipaws-checkpoint.properties";
+    private final Properties checkpoints = new Properties();
+    private boolean loaded = false;
+
+    public String getCheckpointFile() {
+
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(String checkpointFile) {
+
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * method getCheckpoint
+     * returns the last committed high-water mark for the poller
+     * @param String key the key of the poller
+     * @return Calendar the committed time or null on a cold start
+     */
+    public synchronized Calendar getCheckpoint(String key) {
+
+        load();
+
+        String value = checkpoints.getProperty(key);
+        if (value == null) {
+            return null;
+        }
+
+        try {
+            Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(Long.parseLong(value));
+            return cal;
+        } catch (NumberFormatException e) {
+            log.error("Ignoring invalid checkpoint " + key + "=" + value);
+        }
+        return null;
+    }
+
+    /**
+     * method commit
+     * durably records the high-water mark for the poller. Nothing is written
+     * if the value did not change since the last commit.
+     * @param String key the key of the poller
+     * @param Calendar cal the time of the latest message processed
+     */
+    public synchronized void commit(String key, Calendar cal) {
+
+        if (cal == null) {
+            return;
+        }
+
+        load();
+
+        String value = Long.toString(cal.getTimeInMillis());
+        if (value.equals(checkpoints.getProperty(key))) {
+            return;
+        }
+
+        String previous = (String) checkpoints.setProperty(key, value);
+        try {
+            write();
+        } catch (IOException e) {
+            log.error("Unable to write IPAWS checkpoint " + checkpointFile + ": " + e.getMessage());
+            // keep memory in line with what is on disk
+            if (previous == null) {
+                checkpoints.remove(key);
+            } else {
+                checkpoints.setProperty(key, previous);
+            }
+        }
+    }
+
+    /**
+     * method clear
+     * removes the checkpoint of the poller so that the next start is a cold start
+     * @param String key the key of the poller
+     */
+    public synchronized void clear(String key) {
+
+        load();
+
+        if (checkpoints.remove(key) != null) {
+            try {
+                write();
+            } catch (IOException e) {
+                log.error("Unable to write IPAWS checkpoint " + checkpointFile + ": " +
+                          e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * method getIds
+     * returns the ids last committed under the key
+     * @param String key the key of the ids
+     * @return Map<String, Long> the ids with their time, in the order they were
+     *         committed, or null if none were committed or they cannot be read
+     */
+    public synchronized Map<String, Long> getIds(String key) {
+
+        File file = getIdsFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        Map<String, Long> ids = new LinkedHashMap<String, Long>();
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                int space = line.indexOf(' ');
+                try {
+                    ids.put(line.substring(space + 1), Long.valueOf(line.substring(0, space)));
+                } catch (RuntimeException e) {
+                    log.error("Ignoring invalid line " + lineNumber + " of " + file.getPath());
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to read IPAWS checkpoint " + file.getPath() + ": " + e.getMessage());
+            return null;
+        } finally {
+            IPAWSFiles.closeQuietly(in);
+        }
+        return ids;
+    }
+
+    /**
+     * method commitIds
+     * durably replaces the ids kept under the key
+     * @param String key the key of the ids
+     * @param Map<String, Long> ids the ids with their time
+     * @return boolean false if they could not be written
+     */
+    public synchronized boolean commitIds(String key, Map<String, Long> ids) {
+
+        File file = getIdsFile(key);
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+        try {
+            mkdirs(file);
+            FileOutputStream out = new FileOutputStream(tmpFile);
+            try {
+                Writer writer = new OutputStreamWriter(out, UTF8);
+                for (Map.Entry<String, Long> id : ids.entrySet()) {
+                    writer.write(id.getValue() + " " + id.getKey() + "\n");
+                }
+                writer.flush();
+                out.getFD().sync();
+            } finally {
+                IPAWSFiles.closeQuietly(out);
+            }
+            IPAWSFiles.replace(tmpFile, file);
+            return true;
+        } catch (IOException e) {
+            log.error("Unable to write IPAWS checkpoint " + file.getPath() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private File getIdsFile(String key) {
+
+        return new File(checkpointFile + "." + key);
+    }
+
+    private static void mkdirs(File file) {
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+    }
+
+    private void load() {
+
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        File file = new File(checkpointFile);
+        if (!file.exists()) {
+            log.info("No IPAWS checkpoint found at " + file.getAbsolutePath());
+            return;
+        }
+
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            checkpoints.load(in);
+            log.info("Loaded IPAWS checkpoint from " + file.getAbsolutePath());
+        } catch (IOException e) {
+            log.error("Unable to read IPAWS checkpoint " + checkpointFile + ": " + e.getMessage());
+        } finally {
+            IPAWSFiles.closeQuietly(in);
+        }
+    }
+
+    private void write() throws IOException {
+
+        File file = new File(checkpointFile);
+        mkdirs(file);
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            checkpoints.store(out, "IPAWS poll checkpoints");
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            IPAWSFiles.closeQuietly(out);
+        }
+
+        IPAWSFiles.replace(tmpFile, file);
+    }
+}
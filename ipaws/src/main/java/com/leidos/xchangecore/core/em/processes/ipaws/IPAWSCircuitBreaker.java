@@ -0,0 +1,170 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSCircuitBreaker
+ * stops the requests to IPAWS while it is down. The circuit is closed while
+ * the requests succeed. After failureThreshold consecutive failures it opens
+ * and every request is refused at once for openTimeout milliseconds. Then it
+ * is half open: a single trial request is let through, which closes the
+ * circuit if it succeeds and opens it again if it fails.
+ */
+public class IPAWSCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private int failureThreshold = 5;
+    private long openTimeout = 60000L;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private boolean trialRunning = false;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong openedCount = new AtomicLong();
+
+    public int getFailureThreshold() {
+
+        return failureThreshold;
+    }
+
+    /**
+     * get/set the number of consecutive failures that opens the circuit
+     */
+    public void setFailureThreshold(int failureThreshold) {
+
+        if (failureThreshold <= 0) {
+            throw new IllegalArgumentException("failureThreshold must be positive: " +
+                                               failureThreshold);
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getOpenTimeout() {
+
+        return openTimeout;
+    }
+
+    /**
+     * get/set how long in milliseconds the circuit stays open before a trial
+     * request is let through
+     */
+    public void setOpenTimeout(long openTimeout) {
+
+        this.openTimeout = openTimeout;
+    }
+
+    /**
+     * method allowRequest
+     * @return boolean true if the request may be sent, false if it must fail at once
+     */
+    public boolean allowRequest() {
+
+        return allowRequest(System.currentTimeMillis());
+    }
+
+    synchronized boolean allowRequest(long now) {
+
+        switch (state) {
+        case CLOSED:
+            return true;
+        case OPEN:
+            if (now - openedAt < openTimeout) {
+                break;
+            }
+            log.info("IPAWS circuit half open, sending a trial request");
+            state = State.HALF_OPEN;
+            trialRunning = true;
+            return true;
+        case HALF_OPEN:
+            if (!trialRunning) {
+                trialRunning = true;
+                return true;
+            }
+            break;
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * method release
+     * gives back a request allowed but not sent, so that it has no outcome
+     */
+    public synchronized void release() {
+
+        trialRunning = false;
+    }
+
+    /**
+     * method recordSuccess
+     * records a request IPAWS answered
+     */
+    public synchronized void recordSuccess() {
+
+        if (state != State.CLOSED) {
+            log.info("IPAWS circuit closed after " + consecutiveFailures + " failures");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        trialRunning = false;
+    }
+
+    /**
+     * method recordFailure
+     * records a request IPAWS did not answer
+     */
+    public void recordFailure() {
+
+        recordFailure(System.currentTimeMillis());
+    }
+
+    synchronized void recordFailure(long now) {
+
+        consecutiveFailures++;
+        trialRunning = false;
+        if (state == State.HALF_OPEN ||
+            (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            state = State.OPEN;
+            openedAt = now;
+            openedCount.incrementAndGet();
+            log.error("IPAWS circuit open after " + consecutiveFailures +
+                      " failures, refusing the requests for " + openTimeout + " ms");
+        }
+    }
+
+    public synchronized State getState() {
+
+        return state;
+    }
+
+    public synchronized int getConsecutiveFailures() {
+
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return long the number of requests refused while the circuit was open
+     */
+    public long getRejectedCount() {
+
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return long the number of times the circuit opened
+     */
+    public long getOpenedCount() {
+
+        return openedCount.get();
+    }
+}
@@ -0,0 +1,175 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xmlbeans.XmlCursor;
+
+import x0.oasisNamesTcEmergencyEDXLDE1.ContentObjectType;
+import x0.oasisNamesTcEmergencyEDXLDE1.EDXLDistributionDocument.EDXLDistribution;
+
+/**
+ * class IPAWSEchoCache
+ * remembers the EDXL-DE messages forwarded from one side, XchangeCore or
+ * IPAWS, to the other, so that the same message coming back is not forwarded
+ * again. A message is known by its distributionID and a fingerprint of its
+ * content objects, the text they hold without the whitespace, since
+ * the envelope may be rewritten on the way but the content is not. The
+ * messages that never come back are evicted by age and by size, so the
+ * memory stays flat whatever the uptime.
+ */
+public class IPAWSEchoCache {
+
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    public static final long DEFAULT_TIME_TO_LIVE = 7L * 24L * 3600000L;
+
+    private final IPAWSAlertIdSet keys = new IPAWSAlertIdSet(DEFAULT_MAX_SIZE,
+        DEFAULT_TIME_TO_LIVE);
+
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    public int getMaxSize() {
+
+        return keys.getMaxSize();
+    }
+
+    /**
+     * get/set the number of messages remembered
+     */
+    public void setMaxSize(int maxSize) {
+
+        keys.setMaxSize(maxSize);
+    }
+
+    public long getTimeToLive() {
+
+        return keys.getTimeToLive();
+    }
+
+    /**
+     * get/set how long in milliseconds a message is remembered
+     */
+    public void setTimeToLive(long timeToLive) {
+
+        keys.setTimeToLive(timeToLive);
+    }
+
+    /**
+     * method expect
+     * remembers a message forwarded to the other side
+     * @param EDXLDistribution edxl the message forwarded
+     */
+    public void expect(EDXLDistribution edxl) {
+
+        expect(keyOf(edxl));
+    }
+
+    void expect(String key) {
+
+        keys.add(key);
+    }
+
+    /**
+     * method suppress
+     * checks whether the message is the echo of one forwarded, and forgets
+     * it if it is
+     * @param EDXLDistribution edxl the message received
+     * @return boolean true if the message is an echo and must not be forwarded
+     */
+    public boolean suppress(EDXLDistribution edxl) {
+
+        return suppress(keyOf(edxl));
+    }
+
+    boolean suppress(String key) {
+
+        if (keys.contains(key) && keys.remove(key)) {
+            suppressedCount.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    static String keyOf(EDXLDistribution edxl) {
+
+        ContentObjectType[] contentObjects = edxl.getContentObjectArray();
+        String[] contents = new String[contentObjects.length];
+        for (int i = 0; i < contentObjects.length; i++) {
+            XmlCursor c = contentObjects[i].newCursor();
+            try {
+                contents[i] = c.getTextValue();
+            } finally {
+                c.dispose();
+            }
+        }
+        return keyOf(edxl.getDistributionID(), contents);
+    }
+
+    /**
+     * method keyOf
+     * @param String distributionID the id of the message, may be null
+     * @param String[] contents the text of each content object, may be null, a null one counts
+     *        as empty
+     * @return String the distributionID and the SHA-256 of the contents
+     */
+    static String keyOf(String distributionID, String... contents) {
+
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+        if (contents != null) {
+            for (String content : contents) {
+                if (content != null) {
+                    // a pretty printer adds whitespace between the elements, so none is kept
+                    String text = content.replaceAll("\\s+", "");
+                    digest.update(text.getBytes(StandardCharsets.UTF_8));
+                }
+                // keeps the boundaries, so that moving text between contents changes the key
+                digest.update((byte) 0);
+            }
+        }
+
+        StringBuilder key = new StringBuilder(distributionID == null ? "" : distributionID);
+        key.append('|');
+        for (byte b : digest.digest()) {
+            key.append(Character.forDigit((b >> 4) & 0xf, 16));
+            key.append(Character.forDigit(b & 0xf, 16));
+        }
+        return key.toString();
+    }
+
+    public int size() {
+
+        return keys.size();
+    }
+
+    /**
+     * @return long the number of echoes not forwarded
+     */
+    public long getSuppressedCount() {
+
+        return suppressedCount.get();
+    }
+
+    /**
+     * @return long the number of messages forgotten without their echo
+     */
+    public long getEvictionCount() {
+
+        return keys.getEvictionCount();
+    }
+
+    public String toString() {
+
+        StringBuffer buf = new StringBuffer("size:");
+        buf.append(size()).append(", suppressed:").append(getSuppressedCount());
+        buf.append(", evictions:").append(getEvictionCount());
+        return buf.toString();
+    }
+}
@@ -1,10 +1,13 @@
 package com.leidos.xchangecore.core.em.processes.ipaws;
 
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.xml.namespace.QName;
 
 import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlObject;
@@ -15,10 +18,12 @@ import services.dmopen.fema.gov.dmopenEDXLDEService.GetMessageTypeDefDocument;
 import services.dmopen.fema.gov.dmopenEDXLDEService.GetRequestTypeDefDocument;
 import services.dmopen.fema.gov.dmopenEDXLDEService.PostEdxlRequestTypeDefDocument;
 import services.dmopen.fema.gov.dmopenEDXLDEService.PostEdxlRequestTypeDefDocument.PostEdxlRequestTypeDef;
-import services.dmopen.fema.gov.edxlrequest.ParameterListItem;
-import services.dmopen.fema.gov.edxlrequest.RequestParameterList;
+
+import x0.oasisNamesTcEmergencyEDXLDE1.EDXLDistributionDocument;
 import x0.oasisNamesTcEmergencyEDXLDE1.EDXLDistributionDocument.EDXLDistribution;
 
+import com.leidos.xchangecore.core.em.service.impl.ResourceManagementServiceImpl;
+
 /**
  * Class IPAWSEdxl connects to IPAWS server and retrieves EDXL messages.
  * It uses the spring framework to fires the method getMessages at
@@ -29,6 +34,30 @@ import x0.oasisNamesTcEmergencyEDXLDE1.EDXLDistributionDocument.EDXLDistribution
  */
 public class IPAWSEdxl {
 
+    public static final String CHECKPOINT_KEY = "edxl.lastUpdate";
+
+    // the requests are built once, only the time or the cog id changes
+    private static final IPAWSRequestTemplate<GetRequestTypeDefDocument> ACK_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetRequestTypeDefDocument.Factory.newInstance(),
+        IPAWSCap.REQUEST_API,
+        IPAWSCap.GET_ACK_OP,
+        "ping",
+        null);
+    private static final IPAWSRequestTemplate<GetRequestTypeDefDocument> COG_LIST_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetRequestTypeDefDocument.Factory.newInstance(),
+        IPAWSCap.REQUEST_API,
+        IPAWSCap.GET_COG_OP,
+        "ALL",
+        null);
+    private static final IPAWSRequestTemplate<GetMessageTypeDefDocument> MESSAGES_AFTER_TIME_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetMessageTypeDefDocument.Factory.newInstance(),
+        IPAWSCap.REQUEST_API,
+        IPAWSCap.GET_MESSAGE_OP,
+        "dateTimeSent",
+        "greaterthan");
+    private static final IPAWSRequestTemplate<GetMessageTypeDefDocument> MESSAGES_BY_COG_REQUEST = IPAWSRequestTemplate.newParameterTemplate(GetMessageTypeDefDocument.Factory.newInstance(),
+        IPAWSCap.REQUEST_API,
+        IPAWSCap.GET_MESSAGE_OP,
+        "cogid",
+        "equalto");
+
     /**
      * inner class Cog
      * to hold cog information
@@ -49,72 +78,159 @@ public class IPAWSEdxl {
     IPAWSEdxlBroadcast ipawsBroadcast;
 
     IPAWSCap ipawsCap;
+    IPAWSCheckpointStore checkpointStore;
+    IPAWSHealthCheck healthCheck;
+    IPAWSCache<String, List<IPAWSCog>> cogCache;
     Calendar lastUpdate = null;
     //Replace XXXXXX with your own COGS Id
     String cogs = "XXXXXX";
     String postToCogs = "XXXXXX";
 
     String firstRetrievePeriod = "30";
-    HashSet<String> uicdsSet = new HashSet<String>();
-    HashSet<String> ipawsSet = new HashSet<String>();
-
-    ArrayList<Cog> cogList = new ArrayList<Cog>();
+    boolean streamingResponse = false;
+    // the messages of XchangeCore posted to IPAWS
+    IPAWSEchoCache uicdsSet = new IPAWSEchoCache();
+    // the messages of IPAWS broadcast in XchangeCore
+    IPAWSEchoCache ipawsSet = new IPAWSEchoCache();
+
+    // read by the drain threads while setupCogs replaces it
+    volatile List<Cog> cogList = new CopyOnWriteArrayList<Cog>();
+
+    // how long in milliseconds a poll keeps draining the notifications
+    long drainTimeBudget = 10000L;
+    IPAWSNotificationDrainer drainer = new IPAWSNotificationDrainer();
+    IPAWSEdxlClassifier classifier = null;
+    IPAWSPipeline<EDXLDistribution> pipeline = null;
+    long pipelineTimeout = 60000L;
+    IPAWSOutbox<EDXLDistribution> outbox = null;
 
     /**
      * method getMessagesForCogs()
-     * retrieves message notifications for cogs registered
+     * drains the message notifications of the cogs registered, the cogs in
+     * parallel, each in batches until its queue is empty or drainTimeBudget
+     * is spent. The notifications of a batch left when it is spent are
+     * forwarded on the next poll.
+     * @return int the number of notifications forwarded
      */
-    private void getBroadcastMessagesForCogs() {
+    private int getBroadcastMessagesForCogs() {
 
+        List<String> cogIds = new ArrayList<String>(cogList.size());
         for (Cog cog : cogList) {
-            XmlObject[] xmlDocs = ipawsBroadcast.getMessages(cog.cogId);
-            if (xmlDocs != null) {
-                for (XmlObject doc : xmlDocs) {
-                    try {
-                        XmlCursor c = doc.newCursor();
-                        c.toFirstChild();
-
-                        // check if the message originated from ipaws
-                        EDXLDistribution edxlde = (EDXLDistribution) c.getObject();
-
-                        // if it does then ignore it
-                        if (ipawsSet.contains(edxlde.getDistributionID())) {
-                            ipawsSet.remove(edxlde.getDistributionID());
-                            continue;
-                        }
-
-                        // if the payload is an alert, create an alert wp
-                        if (IPAWSEdxlBroadcast.findEDXLType(edxlde) == ipawsBroadcast.ALERT_TYPE) {
-
-                            ipawsCap.createAlertFromEdxl(edxlde);
-                        }
-                        // send to ipaws
-                        postEDXL(edxlde);
-                        uicdsSet.add(edxlde.getDistributionID());
-                    } catch (ClassCastException e) {
-                        log.info("the message is not an edxl message.");
-                    }
+            cogIds.add(cog.cogId);
+        }
+        return drainer.drain(cogIds,
+            System.currentTimeMillis() + drainTimeBudget,
+            new IPAWSNotificationDrainer.Source() {
+
+                @Override
+                public XmlObject[] getMessages(String cogId, int count) {
+
+                    return ipawsBroadcast.getMessages(cogId, count);
                 }
+            },
+            new IPAWSNotificationDrainer.Forwarder() {
+
+                @Override
+                public void forward(XmlObject notification) {
+
+                    forwardNotification(notification);
+                }
+            });
+    }
+
+    /**
+     * method forwardNotification
+     * posts to IPAWS the EDXL-DE message of a notification, unless it is the
+     * echo of a message of IPAWS, and creates an alert if its payload is one
+     */
+    private void forwardNotification(XmlObject doc) {
+
+        try {
+            XmlCursor c = doc.newCursor();
+            c.toFirstChild();
+
+            // check if the message originated from ipaws
+            EDXLDistribution edxlde = (EDXLDistribution) c.getObject();
+
+            // if it does then ignore it
+            if (ipawsSet.suppress(edxlde)) {
+                return;
             }
+
+            // send to ipaws, through the outbox if there is one so that the
+            // message is not lost when IPAWS does not take it. The notification
+            // service does not give a message back once drained, so a crash
+            // before the append returns loses it: the outbox is written first
+            // to keep that window to the parsing above.
+            if (outbox != null && outbox.append(edxlde.getDistributionID(), edxlde)) {
+                uicdsSet.expect(edxlde);
+            } else if (postEDXL(edxlde)) {
+                uicdsSet.expect(edxlde);
+            }
+
+            // if the payload is an alert, create an alert wp
+            if (IPAWSEdxlBroadcast.ALERT_QNAME.equals(IPAWSEdxlClassifier.getContentName(edxlde))) {
+
+                ipawsCap.createAlertFromEdxl(edxlde);
+            }
+        } catch (ClassCastException e) {
+            log.info("the message is not an edxl message.");
+        }
+    }
+
+    /**
+     * method getBacklog
+     * @return Map<String, Integer> per cog id, 0 if its notification queue was
+     *         emptied by the last drain, else an estimate of the notifications
+     *         left when the drain time budget ran out
+     */
+    public Map<String, Integer> getBacklog() {
+
+        return drainer.getBacklog();
+    }
+
+    /**
+     * method shutdown
+     * stops the drain, pipeline and outbox threads, to be used as the spring destroy-method
+     */
+    public synchronized void shutdown() {
+
+        drainer.shutdown();
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        if (outbox != null) {
+            outbox.stop();
         }
     }
 
     /**
      * method getCogList
-     * retrieves the list of cogname, cogid from IPAWS.
+     * retrieves the list of cogname, cogid from IPAWS, or from the cog cache
+     * if it was retrieved recently.
      * @return the List of IPAWSCog.
      */
     public List<IPAWSCog> getCogList() {
 
-        // create the request message
-        GetRequestTypeDefDocument request = GetRequestTypeDefDocument.Factory.newInstance();
+        List<IPAWSCog> cogs = getCogCache().get("edxl", cogListLoader);
+        return cogs != null ? cogs : Collections.<IPAWSCog> emptyList();
+    }
+
+    private final IPAWSCache.Loader<String, List<IPAWSCog>> cogListLoader = new IPAWSCache.Loader<String, List<IPAWSCog>>() {
 
-        RequestParameterList paramList = request.addNewGetRequestTypeDef();
-        paramList.setRequestAPI(IPAWSCap.REQUEST_API);
-        paramList.setRequestOperation(IPAWSCap.GET_COG_OP);
+        @Override
+        public List<IPAWSCog> load(String key) {
 
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("ALL");
+            List<IPAWSCog> cogs = retrieveCogList();
+            // an empty list is a failed request, it is not cached
+            return cogs.isEmpty() ? null : Collections.unmodifiableList(cogs);
+        }
+    };
+
+    private List<IPAWSCog> retrieveCogList() {
+
+        // create the request message
+        GetRequestTypeDefDocument request = COG_LIST_REQUEST.newRequest();
 
         log.debug("IPAWSEdxl 2:" + request.toString());
 
@@ -131,6 +247,25 @@ public class IPAWSEdxl {
         return cogs;
     }
 
+    /**
+     * method isIPAWSAvailable
+     * checks the availability of IPAWS with the health check, which only
+     * sends a getACK if IPAWS was not seen available recently.
+     */
+    private boolean isIPAWSAvailable() {
+
+        return getHealthCheck().isAvailable(ackProbe);
+    }
+
+    private final IPAWSHealthCheck.Probe ackProbe = new IPAWSHealthCheck.Probe() {
+
+        @Override
+        public boolean ping() {
+
+            return getEDXLACK();
+        }
+    };
+
     /**
      * method getEDXLACK
      * get the aknowledgement from IPAWS
@@ -140,20 +275,13 @@ public class IPAWSEdxl {
     public boolean getEDXLACK() {
 
         // create the request message
-        GetRequestTypeDefDocument request = GetRequestTypeDefDocument.Factory.newInstance();
-
-        RequestParameterList reqParamList = request.addNewGetRequestTypeDef();
-        reqParamList.setRequestAPI(IPAWSCap.REQUEST_API);
-        reqParamList.setRequestOperation(IPAWSCap.GET_ACK_OP);
-
-        ParameterListItem listItem = reqParamList.addNewParameters();
-        listItem.setParameterName("ping");
+        GetRequestTypeDefDocument request = ACK_REQUEST.newRequest();
 
         log.info("IPAWSEdxl:" + request.toString());
 
         // send the request and get the response
         XmlObject response = webServiceClient.sendRequest(request);
-        log.debug("response from server: " + response.toString());
+        log.debug("response from server: " + response);
 
         return IPAWSEdxlServiceResponse.getAckFromResponse(response);
 
@@ -166,66 +294,137 @@ public class IPAWSEdxl {
      */
     public void getEdxlMessages() {
 
-        boolean ret = getEDXLACK();
+        pollEdxlMessages();
+    }
+
+    /**
+     * method pollEdxlMessages
+     * does what getEdxlMessages does and returns the number of messages
+     * exchanged, for the IPAWSPollScheduler to adapt the poll interval.
+     * @return int the number of EDXL messages sent to and retrieved from IPAWS
+     */
+    public int pollEdxlMessages() {
+
+        boolean ret = isIPAWSAvailable();
         if (ret) {
 
             // get the broadcast messages from uicds and send then to ipaws
-            getBroadcastMessagesForCogs();
+            int count = getBroadcastMessagesForCogs();
 
-            EDXLDistribution[] edxls = null;
             // get the edxl-de messages from ipaws
             if (lastUpdate == null) {
-                startGettingMessages();
+                return count + retrieveFirstMessages();
             } else {
+                return count + getEdxlMessagesAfterLastUpdate();
+            }
+        }
+        return 0;
+    }
 
-                edxls = getEdxlMessagesAfterTime(lastUpdate);
-                // EDXLDistribution[] edxls = getEdxlMessagesAfterTime(lastUpdate);
-                if (edxls != null) {
-                    log.info("Retrieved " + edxls.length +
-                             " EDXL distribution messages from IPAWS sent after " + lastUpdate);
-
-                    // update the time
-                    Calendar latest = lastUpdate;
-                    for (EDXLDistribution edxl : edxls) {
-                        Calendar cal = edxl.getDateTimeSent();
-                        if (cal.after(latest)) {
-                            latest = cal;
-                        }
-                    }
-                    // update the lastUpdate sent time
-                    lastUpdate = latest;
-                }
+    /**
+     * method getEdxlMessagesAfterLastUpdate
+     * retrieves the EDXL messages sent after lastUpdate, broadcasts them to
+     * XchangeCore and commits the new lastUpdate to the checkpoint store.
+     */
+    private int getEdxlMessagesAfterLastUpdate() {
 
-                // broadcast to uicds
-                processEDXL(edxls);
+        if (streamingResponse) {
+            return streamEdxlMessagesAfterLastUpdate();
+        }
+
+        EDXLDistribution[] edxls = getEdxlMessagesAfterTime(lastUpdate);
+        if (edxls != null) {
+            log.info("Retrieved " + edxls.length +
+                     " EDXL distribution messages from IPAWS sent after " + lastUpdate);
 
+            // update the time
+            Calendar latest = lastUpdate;
+            for (EDXLDistribution edxl : edxls) {
+                latest = IPAWSTimestamp.latest(latest, edxl.getDateTimeSent());
             }
+            // update the lastUpdate sent time
+            lastUpdate = latest;
         }
+
+        // broadcast to uicds
+        processEDXL(edxls);
+
+        commitCheckpoint();
+
+        return edxls == null ? 0 : edxls.length;
     }
 
-    public EDXLDistribution[] getEdxlMessagesAfterTime(Calendar cal) {
+    /**
+     * method streamEdxlMessagesAfterLastUpdate
+     * does the same as getEdxlMessagesAfterLastUpdate but reads the EDXL
+     * messages off the response one at a time and processes each of them as
+     * soon as it is read.
+     */
+    private int streamEdxlMessagesAfterLastUpdate() {
 
-        // create the request message
-        GetMessageTypeDefDocument requestDoc = GetMessageTypeDefDocument.Factory.newInstance();
+        final Calendar[] latest = new Calendar[] {
+            lastUpdate
+        };
+
+        Integer count = streamEdxlMessagesAfterTime(lastUpdate,
+            new IPAWSMessageReader.MessageHandler<EDXLDistribution>() {
+
+                @Override
+                public void handleMessage(EDXLDistribution edxl) {
+
+                    if (IPAWSCap.NO_MESSAGE_FOUND.equals(edxl.getDistributionID())) {
+                        return;
+                    }
+
+                    latest[0] = IPAWSTimestamp.latest(latest[0], edxl.getDateTimeSent());
+
+                    // broadcast to uicds
+                    processEDXL(edxl);
+                }
+            });
 
-        RequestParameterList paramList = requestDoc.addNewGetMessageTypeDef();
-        paramList.setRequestAPI(IPAWSCap.REQUEST_API);
-        paramList.setRequestOperation(IPAWSCap.NO_MESSAGE_FOUND);
+        if (count != null) {
+            log.info("Streamed " + count + " EDXL distribution messages from IPAWS sent after " +
+                     lastUpdate);
+            lastUpdate = latest[0];
+        }
 
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("dateTimeSent");
-        listItem.setComparisonOp("greaterthan");
+        commitCheckpoint();
 
-        // now change the date time format to yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
-        SimpleDateFormat df = new SimpleDateFormat(IPAWSCap.DATE_FORMAT);
-        String dateStr = df.format(cal.getTime());
-        listItem.addParameterValue(IPAWSCap.formatCalendarStringToRfc3339(dateStr));
+        return count == null ? 0 : count.intValue();
+    }
+
+    /**
+     * method commitCheckpoint
+     * saves lastUpdate so that a restart resumes from it
+     */
+    private void commitCheckpoint() {
+
+        if (checkpointStore != null && lastUpdate != null) {
+            // the messages up to lastUpdate must be processed before it is saved
+            try {
+                if (!getPipeline().awaitIdle(pipelineTimeout)) {
+                    log.info("EDXL-DE messages still in the pipeline, checkpoint not committed");
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            checkpointStore.commit(CHECKPOINT_KEY, lastUpdate);
+        }
+    }
+
+    public EDXLDistribution[] getEdxlMessagesAfterTime(Calendar cal) {
+
+        // create the request message, the time in format yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
+        GetMessageTypeDefDocument requestDoc = MESSAGES_AFTER_TIME_REQUEST.newRequest(IPAWSTimestamp.format(cal));
 
         log.info("IPAWSEdxl 5:" + requestDoc.toString());
 
         // send the request and get the response
         XmlObject response = webServiceClient.sendRequest(requestDoc);
-        log.info("IPAWSEdxl response of interest: " + response.toString());
+        log.info("IPAWSEdxl response of interest: " + response);
 
         EDXLDistribution[] edxls = IPAWSEdxlServiceResponse.getEdxlMessagesFromResponse(response);
 
@@ -237,6 +436,25 @@ public class IPAWSEdxl {
         return edxls;
     }
 
+    /**
+     * method streamEdxlMessagesAfterTime
+     * retrieves the EDXL messages sent after the time and hands them to the
+     * handler one at a time as they are read off the response
+     * @param Calendar cal the time after which the messages were sent
+     * @param MessageHandler<EDXLDistribution> handler receives each message
+     * @return Integer the number of messages read, or null if the request could not be sent
+     */
+    public Integer streamEdxlMessagesAfterTime(Calendar cal,
+                                               IPAWSMessageReader.MessageHandler<EDXLDistribution> handler) {
+
+        // create the request message, the time in format yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
+        GetMessageTypeDefDocument requestDoc = MESSAGES_AFTER_TIME_REQUEST.newRequest(IPAWSTimestamp.format(cal));
+
+        // send the request and read the messages as they arrive
+        return webServiceClient.sendRequest(requestDoc,
+            IPAWSEdxlServiceResponse.newEdxlMessageReader(handler));
+    }
+
     /**
      * method getEdxlMessagesByCogID
      * retrieve the list of EDXL message for the cog
@@ -247,22 +465,13 @@ public class IPAWSEdxl {
     public EDXLDistribution[] getEdxlMessagesByCogID(String cogId) {
 
         // create the request message
-        GetMessageTypeDefDocument requestDoc = GetMessageTypeDefDocument.Factory.newInstance();
-
-        RequestParameterList paramList = requestDoc.addNewGetMessageTypeDef();
-        paramList.setRequestAPI(IPAWSCap.REQUEST_API);
-        paramList.setRequestOperation(IPAWSCap.GET_MESSAGE_OP);
-
-        ParameterListItem listItem = paramList.addNewParameters();
-        listItem.setParameterName("cogid");
-        listItem.setComparisonOp("equalto");
-        listItem.addParameterValue(cogId);
+        GetMessageTypeDefDocument requestDoc = MESSAGES_BY_COG_REQUEST.newRequest(cogId);
 
         log.info("IPAWSEdxl 3:" + requestDoc.toString());
 
         // send the request and get the response
         XmlObject response = webServiceClient.sendRequest(requestDoc);
-        log.debug("IPAWSEdxl 4:" + response.toString());
+        log.debug("IPAWSEdxl 4:" + response);
 
         EDXLDistribution[] edxls = IPAWSEdxlServiceResponse.getEdxlMessagesFromResponse(response);
 
@@ -274,11 +483,73 @@ public class IPAWSEdxl {
         return edxls;
     }
 
+    public IPAWSCheckpointStore getCheckpointStore() {
+
+        return checkpointStore;
+    }
+
     public String getFirstRetrievePeriod() {
 
         return firstRetrievePeriod;
     }
 
+    /**
+     * get/set the health check, by default the one of the webServiceClient
+     * which reports the outcome of each request to it. With the client of
+     * ipawsCap both pollers share what they know of IPAWS.
+     */
+    public IPAWSHealthCheck getHealthCheck() {
+
+        if (healthCheck == null) {
+            healthCheck = webServiceClient.getHealthCheck();
+        }
+        return healthCheck;
+    }
+
+    /**
+     * get/set the cache of the COG lists of IPAWS, by default the one of
+     * ipawsCap
+     */
+    public IPAWSCache<String, List<IPAWSCog>> getCogCache() {
+
+        if (cogCache == null) {
+            cogCache = ipawsCap != null ? ipawsCap.getCogCache()
+                                        : new IPAWSCache<String, List<IPAWSCog>>();
+        }
+        return cogCache;
+    }
+
+    public void setCogCache(IPAWSCache<String, List<IPAWSCog>> cogCache) {
+
+        this.cogCache = cogCache;
+    }
+
+    /**
+     * get/set the echo cache of the messages of XchangeCore posted to IPAWS
+     */
+    public IPAWSEchoCache getUicdsSet() {
+
+        return uicdsSet;
+    }
+
+    public void setUicdsSet(IPAWSEchoCache uicdsSet) {
+
+        this.uicdsSet = uicdsSet;
+    }
+
+    /**
+     * get/set the echo cache of the messages of IPAWS broadcast in XchangeCore
+     */
+    public IPAWSEchoCache getIpawsSet() {
+
+        return ipawsSet;
+    }
+
+    public void setIpawsSet(IPAWSEchoCache ipawsSet) {
+
+        this.ipawsSet = ipawsSet;
+    }
+
     public IPAWSEdxlBroadcast getIpawsBroadcast() {
 
         return ipawsBroadcast;
@@ -335,6 +606,48 @@ public class IPAWSEdxl {
         return IPAWSEdxlServiceResponse.getPostEdxlResultFromResponse(response);
     }
 
+    public IPAWSOutbox<EDXLDistribution> getOutbox() {
+
+        return outbox;
+    }
+
+    /**
+     * set the outbox in which the messages of XchangeCore are kept until
+     * IPAWS accepts them, null to post each of them once
+     */
+    public void setOutbox(IPAWSOutbox<EDXLDistribution> outbox) {
+
+        this.outbox = outbox;
+        if (outbox != null) {
+            outbox.setCodec(EDXL_CODEC);
+            outbox.setSender(new IPAWSOutbox.Sender<EDXLDistribution>() {
+
+                @Override
+                public boolean send(String id, EDXLDistribution edxl) {
+
+                    return postEDXL(edxl);
+                }
+            });
+        }
+    }
+
+    private static final IPAWSRetryQueue.Codec<EDXLDistribution> EDXL_CODEC = new IPAWSRetryQueue.Codec<EDXLDistribution>() {
+
+        @Override
+        public String encode(EDXLDistribution edxl) {
+
+            EDXLDistributionDocument edxlDoc = EDXLDistributionDocument.Factory.newInstance();
+            edxlDoc.setEDXLDistribution(edxl);
+            return edxlDoc.xmlText();
+        }
+
+        @Override
+        public EDXLDistribution decode(String text) throws Exception {
+
+            return EDXLDistributionDocument.Factory.parse(text).getEDXLDistribution();
+        }
+    };
+
     /**
      * method processEDXL
      * find which type of content is in the EDXL and depending on the type
@@ -345,46 +658,193 @@ public class IPAWSEdxl {
 
         if (edxls != null) {
             for (EDXLDistribution edxl : edxls) {
+                processEDXL(edxl);
+            }
+        }
+    }
+
+    /**
+     * method processEDXL
+     * classifies one EDXL-DE message and queues it in the pipeline stage of
+     * its payload, the messages with the same distributionID are processed
+     * in order
+     * @parameter EDXLDistribution edxl the EDXL-DE message
+     */
+    private void processEDXL(EDXLDistribution edxl) {
+
+        // check if the message originated from XchangeCore
+        if (uicdsSet.suppress(edxl)) {
+            return;
+        }
+
+        QName name = IPAWSEdxlClassifier.getContentName(edxl);
+        final IPAWSEdxlClassifier.Handler handler = getClassifier().getHandler(name);
+        if (handler == null) {
+            log.info("Unable to process document in edxl-de: " + name);
+            return;
+        }
+
+        try {
+            getPipeline().submit(name.getLocalPart(),
+                edxl.getDistributionID(),
+                edxl,
+                new IPAWSPipeline.Worker<EDXLDistribution>() {
+
+                    @Override
+                    public void process(EDXLDistribution item) {
+
+                        handler.handle(item);
+                    }
+                });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted, EDXL-DE message " + edxl.getDistributionID() +
+                      " not processed");
+        }
+    }
+
+    /**
+     * get/set the pipeline that processes the EDXL-DE messages of IPAWS, with
+     * a stage per kind of payload
+     */
+    public synchronized IPAWSPipeline<EDXLDistribution> getPipeline() {
+
+        if (pipeline == null) {
+            pipeline = new IPAWSPipeline<EDXLDistribution>();
+        }
+        return pipeline;
+    }
+
+    public synchronized void setPipeline(IPAWSPipeline<EDXLDistribution> pipeline) {
+
+        this.pipeline = pipeline;
+    }
+
+    public long getPipelineTimeout() {
+
+        return pipelineTimeout;
+    }
+
+    /**
+     * get/set how long in milliseconds a poll waits for the pipeline to
+     * process its messages before committing the checkpoint
+     */
+    public void setPipelineTimeout(long pipelineTimeout) {
+
+        this.pipelineTimeout = pipelineTimeout;
+    }
+
+    /**
+     * get/set the classifier that dispatches the EDXL-DE messages of IPAWS by
+     * payload, by default with the handlers of the resource management
+     * requests, the CAP alerts, the HAVE messages and the work products
+     */
+    public synchronized IPAWSEdxlClassifier getClassifier() {
+
+        if (classifier == null) {
+            classifier = newClassifier();
+        }
+        return classifier;
+    }
+
+    public synchronized void setClassifier(IPAWSEdxlClassifier classifier) {
+
+        this.classifier = classifier;
+    }
+
+    private IPAWSEdxlClassifier newClassifier() {
+
+        IPAWSEdxlClassifier classifier = new IPAWSEdxlClassifier();
+        classifier.register(ResourceManagementServiceImpl.REQUEST_RESOURCE_QNAME,
+            new IPAWSEdxlClassifier.Handler() {
+
+                @Override
+                public void handle(EDXLDistribution edxl) {
 
-                // check if the message originated from XchangeCore
-                if (uicdsSet.contains(edxl.getDistributionID())) {
-                    uicdsSet.remove(edxl.getDistributionID());
-                    continue;
-                }
-                int type = IPAWSEdxlBroadcast.findEDXLType(edxl);
-                log.info("edxl-de TYPE: " + type);
-                switch (type) {
-                case IPAWSEdxlBroadcast.RM_TYPE:
                     log.info("Processing RM request");
                     ipawsBroadcast.broadcastRm(edxl);
-                    ipawsSet.add(edxl.getDistributionID());
-                    break;
+                    ipawsSet.expect(edxl);
+                }
+            });
+        classifier.register(IPAWSEdxlBroadcast.ALERT_QNAME, new IPAWSEdxlClassifier.Handler() {
 
-                case IPAWSEdxlBroadcast.ALERT_TYPE:
-                    log.info("Processing CAP Alert request");
-                    ipawsCap.createAlertFromEdxl(edxl);
+            @Override
+            public void handle(EDXLDistribution edxl) {
 
-                    break;
+                log.info("Processing CAP Alert request");
+                ipawsCap.createAlertFromEdxl(edxl);
+            }
+        });
+        classifier.register(IPAWSEdxlBroadcast.HAVE_QNAME, new IPAWSEdxlClassifier.Handler() {
 
-                case IPAWSEdxlBroadcast.HAVE_TYPE:
-                    log.info("Processing HAVE request");
-                    ipawsBroadcast.broadcastDe(edxl);
-                    ipawsSet.add(edxl.getDistributionID());
-                    break;
+            @Override
+            public void handle(EDXLDistribution edxl) {
+
+                log.info("Processing HAVE request");
+                ipawsBroadcast.broadcastDe(edxl);
+                ipawsSet.expect(edxl);
+            }
+        });
+        classifier.register(IPAWSEdxlBroadcast.WORKPRODUCT_QNAME,
+            new IPAWSEdxlClassifier.Handler() {
+
+                @Override
+                public void handle(EDXLDistribution edxl) {
 
-                case IPAWSEdxlBroadcast.UICDS_TYPE:
                     log.info("Processing UICDS WP request");
                     log.info("Currently UICDS WP is not supported");
                     // this is deferred to later releases
                     // ipawsBroadcast.broadcastDe(edxl);
-                    // ipawsSet.add(edxl.getDistributionID());
-                    break;
-
-                default:
-                    log.info("Unable to process document in edxl-de: UNKOWN_TYPE");
+                    // ipawsSet.expect(edxl);
                 }
-            }
-        }
+            });
+        return classifier;
+    }
+
+    public int getBatchSize() {
+
+        return drainer.getBatchSize();
+    }
+
+    /**
+     * get/set the number of notifications requested in the first batch of a
+     * cog, and the least the batches shrink to
+     */
+    public void setBatchSize(int batchSize) {
+
+        drainer.setBatchSize(batchSize);
+    }
+
+    public int getMaxBatchSize() {
+
+        return drainer.getMaxBatchSize();
+    }
+
+    /**
+     * get/set the most notifications requested in a batch
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+
+        drainer.setMaxBatchSize(maxBatchSize);
+    }
+
+    public long getDrainTimeBudget() {
+
+        return drainTimeBudget;
+    }
+
+    /**
+     * get/set how long in milliseconds a poll keeps draining the
+     * notifications before leaving the rest to the next poll
+     */
+    public void setDrainTimeBudget(long drainTimeBudget) {
+
+        this.drainTimeBudget = drainTimeBudget;
+    }
+
+    public void setCheckpointStore(IPAWSCheckpointStore checkpointStore) {
+
+        this.checkpointStore = checkpointStore;
     }
 
     public void setCogs(String cogs) {
@@ -397,6 +857,14 @@ public class IPAWSEdxl {
         firstRetrievePeriod = days;
     }
 
+    public void setHealthCheck(IPAWSHealthCheck healthCheck) {
+
+        this.healthCheck = healthCheck;
+        if (webServiceClient != null) {
+            webServiceClient.setHealthCheck(healthCheck);
+        }
+    }
+
     public void setIpawsBroadcast(IPAWSEdxlBroadcast broadcast) {
 
         ipawsBroadcast = broadcast;
@@ -422,17 +890,36 @@ public class IPAWSEdxl {
     private void setupCogs() {
 
         // create the resource instance for the destination cogs
+        List<Cog> cogs = new ArrayList<Cog>();
         String[] destCogs = postToCogs.split("\\s");
         for (String cogId : destCogs) {
-            String address = ipawsBroadcast.CreateResourceInstanceForCog(cogId);
+            String address = ipawsBroadcast.getCogAddress(cogId);
             Cog cog = new Cog(cogId, address);
-            cogList.add(cog);
+            cogs.add(cog);
         }
+        cogList = new CopyOnWriteArrayList<Cog>(cogs);
+    }
+
+    /**
+     * set streamingResponse to true to read the EDXL messages of each poll off
+     * the response one at a time instead of parsing the whole response at once
+     */
+    public void setStreamingResponse(boolean streamingResponse) {
+
+        this.streamingResponse = streamingResponse;
+    }
+
+    public boolean isStreamingResponse() {
+
+        return streamingResponse;
     }
 
     public void setWebServiceClient(IPAWSSpringClient webServiceClient) {
 
         this.webServiceClient = webServiceClient;
+        if (healthCheck != null) {
+            webServiceClient.setHealthCheck(healthCheck);
+        }
     }
 
     /**
@@ -445,13 +932,39 @@ public class IPAWSEdxl {
      */
     public void startGettingMessages() {
 
+        // send the messages left in the outbox by the previous run
+        if (outbox != null) {
+            outbox.start();
+        }
+
+        retrieveFirstMessages();
+    }
+
+    /**
+     * method retrieveFirstMessages
+     * does what startGettingMessages does
+     * @return int the number of EDXL messages sent to and retrieved from IPAWS
+     */
+    private int retrieveFirstMessages() {
+
         setupCogs();
 
-        boolean ret = getEDXLACK();
+        boolean ret = isIPAWSAvailable();
         if (ret) {
 
             // get the broadcast messages in XchangeCore and send them to ipaws
-            getBroadcastMessagesForCogs();
+            int count = getBroadcastMessagesForCogs();
+
+            // if a checkpoint was committed before the restart, resume from it
+            // instead of retrieving the whole firstRetrievePeriod again
+            if (checkpointStore != null) {
+                Calendar checkpoint = checkpointStore.getCheckpoint(CHECKPOINT_KEY);
+                if (checkpoint != null) {
+                    log.info("Resuming EDXL messages from IPAWS checkpoint " + checkpoint.getTime());
+                    lastUpdate = checkpoint;
+                    return count + getEdxlMessagesAfterLastUpdate();
+                }
+            }
 
             // get the messages from ipaws
             EDXLDistribution[] edxls = null;
@@ -465,9 +978,8 @@ public class IPAWSEdxl {
                 long timeToRetrieve = lastUpdate.getTimeInMillis() - period * 24L * 3600000L;
                 lastUpdate.setTimeInMillis(timeToRetrieve);
 
-                SimpleDateFormat df = new SimpleDateFormat(IPAWSCap.DATE_FORMAT);
                 log.info("Retrieving EDXL distribution message from IPAWS since " +
-                         IPAWSCap.formatCalendarStringToRfc3339(df.format(lastUpdate.getTime())));
+                         IPAWSTimestamp.format(lastUpdate));
 
                 // retrieve the edxl message from IPAWS
                 edxls = getEdxlMessagesAfterTime(lastUpdate);
@@ -490,10 +1002,7 @@ public class IPAWSEdxl {
                 // update the time
                 Calendar latest = edxls[0].getDateTimeSent();
                 for (EDXLDistribution edxl : edxls) {
-                    Calendar cal = edxl.getDateTimeSent();
-                    if (cal.after(latest)) {
-                        latest = cal;
-                    }
+                    latest = IPAWSTimestamp.latest(latest, edxl.getDateTimeSent());
                 }
 
                 lastUpdate = latest;
@@ -501,8 +1010,12 @@ public class IPAWSEdxl {
 
             // broadcast to XchangeCore
             processEDXL(edxls);
-        }
 
+            commitCheckpoint();
+
+            return count + (edxls == null ? 0 : edxls.length);
+        }
+        return 0;
     }
 
 }
@@ -2,7 +2,6 @@ package com.leidos.xchangecore.core.em.processes.ipaws;
 
 import javax.xml.namespace.QName;
 
-import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlObject;
 import org.oasisOpen.docs.wsn.b2.NotificationMessageHolderType;
 import org.slf4j.Logger;
@@ -24,7 +23,6 @@ import x1.oasisNamesTcEmergencyCap1.AlertDocument;
 
 import com.leidos.xchangecore.core.em.service.BroadcastService;
 import com.leidos.xchangecore.core.em.service.ResourceManagementService;
-import com.leidos.xchangecore.core.em.service.impl.ResourceManagementServiceImpl;
 import com.leidos.xchangecore.core.infrastructure.exceptions.ResourceProfileDoesNotExist;
 import com.leidos.xchangecore.core.infrastructure.model.ResourceInstanceModel;
 import com.leidos.xchangecore.core.infrastructure.model.ResourceProfileModel;
@@ -45,38 +43,7 @@ public class IPAWSEdxlBroadcast {
      */
     public static int findEDXLType(EDXLDistribution edxl) {
 
-        if (edxl.sizeOfContentObjectArray() > 0 &&
-            edxl.getContentObjectArray(0).getXmlContent() != null &&
-            edxl.getContentObjectArray(0).getXmlContent().sizeOfEmbeddedXMLContentArray() > 0) {
-
-            // Determine what type of EDXL message is in the embedded xml content
-            XmlCursor c = edxl.getContentObjectArray(0).getXmlContent().getEmbeddedXMLContentArray(0).newCursor();
-            if (c.toFirstChild()) {
-                // try to get the schema type of the embeddedXMLContent
-                try {
-                    log.info("type getDocumentElementName:" +
-                             c.getObject().schemaType().getOuterType().getDocumentElementName());
-                    if (c.getObject().schemaType().getOuterType().getDocumentElementName() == ResourceManagementServiceImpl.REQUEST_RESOURCE_QNAME) {
-                        return RM_TYPE;
-                    } else if (c.getObject().schemaType().getOuterType().getDocumentElementName() == ALERT_QNAME) {
-                        return ALERT_TYPE;
-                    } else if (c.getObject().schemaType().getOuterType().getDocumentElementName() == HAVE_QNAME) {
-                        return HAVE_TYPE;
-                    } else if (c.getObject().schemaType().getOuterType().getDocumentElementName() == WORKPRODUCT_QNAME) {
-                        return UICDS_TYPE;
-                    }
-
-                    log.info("type not processed:" +
-                             c.getObject().schemaType().getOuterType().getDocumentElementName());
-                } catch (Exception e) {
-                    log.info("IPAWSEdxlBroadcast 1:" + e.getMessage() + "class" + e.getClass() +
-                             "String" + e.toString());
-                    log.info("IPAWSEdxlBroadcast 2:" + c.getObject().toString());
-                }
-            }
-        }
-
-        return UNKNOWN_TYPE;
+        return IPAWSEdxlClassifier.getType(edxl);
     }
 
     private static Logger log = LoggerFactory.getLogger(IPAWSEdxlBroadcast.class);
@@ -101,6 +68,8 @@ public class IPAWSEdxlBroadcast {
 
     @Autowired
     NotificationService notificationService;
+
+    IPAWSCache<String, String> addressCache = new IPAWSCache<String, String>();
     public static final int UNKNOWN_TYPE = -1;
     public static final int RM_TYPE = 0;
     public static final int ALERT_TYPE = 1;
@@ -141,6 +110,45 @@ public class IPAWSEdxlBroadcast {
         }
     }
 
+    /**
+     * get/set the cache of the endpoint addresses of the cogs
+     */
+    public IPAWSCache<String, String> getAddressCache() {
+
+        return addressCache;
+    }
+
+    public void setAddressCache(IPAWSCache<String, String> addressCache) {
+
+        this.addressCache = addressCache;
+    }
+
+    /**
+     * method getCogAddress
+     * returns the endpoint address of the resource instance of the cog,
+     * creating the resource instance on the first call. The address is then
+     * kept in the address cache, so the resource services are not asked
+     * again on every setup of the cogs.
+     * @param String cogId: the cog id
+     * @return String the endpoint address, empty if it is not known
+     */
+    public String getCogAddress(String cogId) {
+
+        String address = addressCache.get(cogId, addressLoader);
+        return address != null ? address : "";
+    }
+
+    private final IPAWSCache.Loader<String, String> addressLoader = new IPAWSCache.Loader<String, String>() {
+
+        @Override
+        public String load(String cogId) {
+
+            String address = CreateResourceInstanceForCog(cogId);
+            // without an endpoint the cog is looked up again next time
+            return address == null || address.length() == 0 ? null : address;
+        }
+    };
+
     /**
      * method CreateResourceInstanceForCog
      * creates the resource instance for the cog using the ipawsCogs resource
@@ -241,10 +249,22 @@ public class IPAWSEdxlBroadcast {
      */
     public XmlObject[] getMessages(String entity) {
 
-        log.info("getMessages() for entity " + entity);
+        return getMessages(entity, 1);
+    }
+
+    /**
+     * method getMessages
+     * uses the Notification Service to retrieve a batch of messages from UICDS
+     * @param String entity the entity to get messages for
+     * @param int count the maximum number of messages to retrieve
+     * @return XmlObject[] the messages, fewer than count if the queue was emptied
+     */
+    public XmlObject[] getMessages(String entity, int count) {
+
+        log.info("getMessages() for entity " + entity + ", count " + count);
 
         NotificationMessageHolderType[] notificationMessageArray = notificationService.getMessages(entity,
-            1);
+            count);
 
         if (notificationMessageArray != null) {
             log.info("There are " + notificationMessageArray.length + " messages for " + entity);
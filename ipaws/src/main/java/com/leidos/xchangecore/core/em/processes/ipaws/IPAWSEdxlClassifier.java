@@ -0,0 +1,143 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.xml.namespace.QName;
+
+import org.apache.xmlbeans.XmlCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import x0.oasisNamesTcEmergencyEDXLDE1.ContentObjectType.XmlContent;
+import x0.oasisNamesTcEmergencyEDXLDE1.EDXLDistributionDocument.EDXLDistribution;
+
+import com.leidos.xchangecore.core.em.service.impl.ResourceManagementServiceImpl;
+
+/**
+ * class IPAWSEdxlClassifier
+ * finds the handler of the payload of the EDXL-DE messages. The
+ * payload is known by the name of the element embedded in the first content
+ * object, which is read once per message and looked up in the handlers
+ * registered for each element name. The type of the payloads known, as
+ * returned by IPAWSEdxlBroadcast.findEDXLType, is looked up the same way.
+ */
+public class IPAWSEdxlClassifier {
+
+    /**
+     * interface Handler
+     * processes the EDXL-DE messages with one kind of payload
+     */
+    public interface Handler {
+
+        public void handle(EDXLDistribution edxl);
+    }
+
+    private static Logger log = LoggerFactory.getLogger(IPAWSEdxlClassifier.class);
+
+    // the type of the message by name of the embedded element
+    private static final Map<QName, Integer> TYPES = newTypes();
+
+    private final ConcurrentMap<QName, Handler> handlers = new ConcurrentHashMap<QName, Handler>();
+
+    private static Map<QName, Integer> newTypes() {
+
+        Map<QName, Integer> types = new HashMap<QName, Integer>();
+        types.put(ResourceManagementServiceImpl.REQUEST_RESOURCE_QNAME, IPAWSEdxlBroadcast.RM_TYPE);
+        types.put(IPAWSEdxlBroadcast.ALERT_QNAME, IPAWSEdxlBroadcast.ALERT_TYPE);
+        types.put(IPAWSEdxlBroadcast.HAVE_QNAME, IPAWSEdxlBroadcast.HAVE_TYPE);
+        types.put(IPAWSEdxlBroadcast.WORKPRODUCT_QNAME, IPAWSEdxlBroadcast.UICDS_TYPE);
+        return Collections.unmodifiableMap(types);
+    }
+
+    /**
+     * @return Map<QName, Integer> the type of the payloads known by name of the embedded element
+     */
+    public static Map<QName, Integer> getTypes() {
+
+        return TYPES;
+    }
+
+    /**
+     * method getType
+     * @param QName elementName the name of the embedded element
+     * @return int the type of the payload, IPAWSEdxlBroadcast.UNKNOWN_TYPE if it is not known
+     */
+    public static int getType(QName elementName) {
+
+        Integer type = elementName != null ? TYPES.get(elementName) : null;
+        if (type == null) {
+            log.debug("type not processed:" + elementName);
+            return IPAWSEdxlBroadcast.UNKNOWN_TYPE;
+        }
+        return type.intValue();
+    }
+
+    /**
+     * method getType
+     * @param EDXLDistribution edxl the message to examine
+     * @return int the type of its payload, IPAWSEdxlBroadcast.UNKNOWN_TYPE if it is not known
+     */
+    public static int getType(EDXLDistribution edxl) {
+
+        return getType(getContentName(edxl));
+    }
+
+    /**
+     * method getContentName
+     * @param EDXLDistribution edxl the message to examine
+     * @return QName the name of the element embedded in the first content
+     *         object, or null if there is none
+     */
+    public static QName getContentName(EDXLDistribution edxl) {
+
+        if (edxl.sizeOfContentObjectArray() == 0) {
+            return null;
+        }
+        XmlContent content = edxl.getContentObjectArray(0).getXmlContent();
+        if (content == null || content.sizeOfEmbeddedXMLContentArray() == 0) {
+            return null;
+        }
+
+        XmlCursor c = content.getEmbeddedXMLContentArray(0).newCursor();
+        try {
+            return c.toFirstChild() ? c.getName() : null;
+        } finally {
+            c.dispose();
+        }
+    }
+
+    /**
+     * method register
+     * sets the handler of the messages embedding the element, replacing the
+     * one registered before
+     * @param QName elementName the name of the embedded element
+     * @param Handler handler the handler of these messages
+     */
+    public void register(QName elementName, Handler handler) {
+
+        handlers.put(elementName, handler);
+    }
+
+    /**
+     * set more handlers, by name of the embedded element
+     */
+    public void setHandlers(Map<QName, Handler> handlers) {
+
+        this.handlers.putAll(handlers);
+    }
+
+    /**
+     * method getHandler
+     * @param QName elementName the name of the embedded element
+     * @return Handler the handler of the messages embedding the element, or
+     *         null if there is none
+     */
+    public Handler getHandler(QName elementName) {
+
+        return elementName != null ? handlers.get(elementName) : null;
+    }
+}
@@ -2,7 +2,12 @@ package com.leidos.xchangecore.core.em.processes.ipaws;
 
 import java.util.List;
 import java.util.ArrayList;
+
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xmlbeans.XmlException;
 import org.apache.xmlbeans.XmlObject;
+import org.w3c.dom.Node;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +37,19 @@ public class IPAWSEdxlServiceResponse {
 
     private static Logger log = LoggerFactory.getLogger(IPAWSEdxlServiceResponse.class);
 
+    private static final IPAWSMessageReader.MessageParser<EDXLDistribution> EDXL_PARSER = new IPAWSMessageReader.MessageParser<EDXLDistribution>() {
+
+        public EDXLDistribution parse(XMLStreamReader reader) throws XmlException {
+
+            return EDXLDistributionDocument.Factory.parse(reader).getEDXLDistribution();
+        }
+
+        public EDXLDistribution parse(Node node) throws XmlException {
+
+            return EDXLDistributionDocument.Factory.parse(node).getEDXLDistribution();
+        }
+    };
+
     /**
      * method getAckFromResponse
      * @param XmlObject xmlObjResponse the response object from IPAWS
@@ -69,6 +87,11 @@ public class IPAWSEdxlServiceResponse {
 
         ArrayList<IPAWSCog> cogList = new ArrayList<IPAWSCog>();
 
+        // no response, the request was not sent
+        if (xmlObjResponse == null) {
+            return cogList;
+        }
+
         try {
             GetResponseTypeDefDocument responseDoc = (GetResponseTypeDefDocument) xmlObjResponse;
             ResponseParameterList responseParamList = responseDoc.getGetResponseTypeDef();
@@ -100,6 +123,11 @@ public class IPAWSEdxlServiceResponse {
      */
     public static EDXLDistribution[] getEdxlMessagesFromResponse(XmlObject xmlObjResponse) {
 
+        // no response, the request was not sent
+        if (xmlObjResponse == null) {
+            return null;
+        }
+
         try {
             MessageResponseTypeDefDocument responseDoc = (MessageResponseTypeDefDocument) xmlObjResponse;
 
@@ -112,8 +140,27 @@ public class IPAWSEdxlServiceResponse {
         return null;
     }
 
+    /**
+     * method newEdxlMessageReader
+     * creates a reader that hands the EDXL distributions of a getMessage response
+     * to the handler one at a time instead of parsing the whole response.
+     * @param MessageHandler<EDXLDistribution> handler receives each distribution as it is read
+     * @return IPAWSMessageReader<EDXLDistribution> the reader to pass to IPAWSSpringClient.sendRequest
+     */
+    public static IPAWSMessageReader<EDXLDistribution> newEdxlMessageReader(IPAWSMessageReader.MessageHandler<EDXLDistribution> handler) {
+
+        return new IPAWSMessageReader<EDXLDistribution>(EDXLDistributionDocument.type.getDocumentElementName(),
+            EDXL_PARSER,
+            handler);
+    }
+
     public static boolean getPostEdxlResultFromResponse(XmlObject xmlObjResponse) {
 
+        // no response, the request was not sent
+        if (xmlObjResponse == null) {
+            return false;
+        }
+
         try {
             PostEdxlResponseTypeDefDocument responseDoc = (PostEdxlResponseTypeDefDocument) xmlObjResponse;
 
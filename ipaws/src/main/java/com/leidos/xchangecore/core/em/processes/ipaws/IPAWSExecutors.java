@@ -0,0 +1,90 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * class IPAWSExecutors
+ * the thread pools shared by the alert poster, the alert fetcher and the
+ * asynchronous requests of the client: a fixed number of daemon threads that
+ * time out when idle, so that a pool costs nothing between two polls
+ */
+final class IPAWSExecutors {
+
+    private static final long KEEP_ALIVE_SECONDS = 60L;
+
+    private IPAWSExecutors() {
+
+    }
+
+    /**
+     * method daemonThreads
+     * @param String prefix the name of the threads, followed by their number
+     * @return ThreadFactory a factory of daemon threads, which do not keep the server running
+     */
+    static ThreadFactory daemonThreads(final String prefix) {
+
+        return new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, prefix + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * method newBoundedPool
+     * @param int threads the most threads running at the same time, the other tasks wait in
+     *        the queue
+     * @param String prefix the name of the threads
+     * @return ThreadPoolExecutor the pool
+     */
+    static ThreadPoolExecutor newBoundedPool(int threads, String prefix) {
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads,
+            threads,
+            KEEP_ALIVE_SECONDS,
+            TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(),
+            daemonThreads(prefix));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * method resize
+     * changes the number of threads of a pool made by newBoundedPool, in the order the executor
+     * requires, the core size never being over the maximum size
+     */
+    static void resize(ThreadPoolExecutor executor, int threads) {
+
+        if (threads > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(threads);
+            executor.setCorePoolSize(threads);
+        } else {
+            executor.setCorePoolSize(threads);
+            executor.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * method shutdownNow
+     * interrupts the threads of the executor, if there is one
+     */
+    static void shutdownNow(ExecutorService executor) {
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
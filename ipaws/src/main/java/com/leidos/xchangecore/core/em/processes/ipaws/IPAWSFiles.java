@@ -0,0 +1,50 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * class IPAWSFiles
+ * the file handling shared by the checkpoint store, the retry queue and the
+ * outbox
+ */
+final class IPAWSFiles {
+
+    private IPAWSFiles() {
+
+    }
+
+    /**
+     * method replace
+     * renames the temporary file over the file, atomically where the file
+     * system allows it, so that a crash leaves either the old or the new file
+     * @param File tmpFile the new content, written and synced
+     * @param File file the file to replace
+     */
+    static void replace(File tmpFile, File file) throws IOException {
+
+        try {
+            Files.move(tmpFile.toPath(),
+                file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static void closeQuietly(Closeable closeable) {
+
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
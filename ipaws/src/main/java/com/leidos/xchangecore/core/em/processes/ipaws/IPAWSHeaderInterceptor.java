@@ -0,0 +1,157 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import javax.xml.namespace.QName;
+import javax.xml.soap.SOAPElement;
+import javax.xml.soap.SOAPException;
+import javax.xml.soap.SOAPHeaderElement;
+import javax.xml.soap.SOAPMessage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.client.support.interceptor.ClientInterceptor;
+import org.springframework.ws.context.MessageContext;
+import org.springframework.ws.soap.saaj.SaajSoapMessage;
+
+/**
+ * class IPAWSHeaderInterceptor
+ * is a Soap message client interceptor that adds the header IPAWS requires
+ * to each request: the logon user and the logon COG id of the service.
+ * The names of the header elements are built once per service and the
+ * credentials come from the spring configuration, which fails to start if
+ * they are missing since IPAWS refuses every request without them.
+ */
+public class IPAWSHeaderInterceptor
+    implements ClientInterceptor, InitializingBean {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final QName headerName;
+    private final QName logonUserName;
+    private final QName logonCogIdName;
+
+    private String logonUser;
+    private String logonCogId;
+
+    /**
+     * @param String namespace the namespace of the service
+     * @param String headerElement the local name of the header element, such as CAPHeaderTypeDef
+     */
+    public IPAWSHeaderInterceptor(String namespace, String headerElement) {
+
+        this.headerName = new QName(namespace, headerElement, "dmop");
+        this.logonUserName = new QName(namespace, "logonUser", "dmop");
+        this.logonCogIdName = new QName(namespace, "logonCogId", "dmop");
+    }
+
+    public String getLogonUser() {
+
+        return logonUser;
+    }
+
+    /**
+     * get/set the IPAWS user the requests are sent as
+     */
+    public void setLogonUser(String logonUser) {
+
+        this.logonUser = logonUser;
+    }
+
+    public String getLogonCogId() {
+
+        return logonCogId;
+    }
+
+    /**
+     * get/set the id of the COG the requests are sent for
+     */
+    public void setLogonCogId(String logonCogId) {
+
+        this.logonCogId = logonCogId;
+    }
+
+    /**
+     * method afterPropertiesSet
+     * checks the credentials are configured
+     * @throws IllegalStateException if logonUser or logonCogId is missing
+     */
+    @Override
+    public void afterPropertiesSet() {
+
+        checkCredentials();
+        log.info(headerName.getLocalPart() + " sent as " + logonUser + " for COG " + logonCogId);
+    }
+
+    private void checkCredentials() {
+
+        if (isBlank(logonUser) || isBlank(logonCogId)) {
+            throw new IllegalStateException("logonUser and logonCogId must be configured to add " +
+                                            headerName.getLocalPart());
+        }
+    }
+
+    private static boolean isBlank(String value) {
+
+        return value == null || value.trim().length() == 0;
+    }
+
+    /**
+     * method addHeader
+     * adds the header element with the credentials to the SOAP message header.
+     * @parameter SOAPMessage soapMessage the soap message to which the element is added.
+     */
+    void addHeader(SOAPMessage soapMessage) throws SOAPException {
+
+        SOAPHeaderElement headerElement = soapMessage.getSOAPHeader().addHeaderElement(headerName);
+        SOAPElement logonUserElement = headerElement.addChildElement(logonUserName);
+        logonUserElement.addTextNode(logonUser);
+        SOAPElement logonCogIdElement = headerElement.addChildElement(logonCogIdName);
+        logonCogIdElement.addTextNode(logonCogId);
+    }
+
+    @Override
+    public boolean handleRequest(MessageContext context) {
+
+        WebServiceMessage request = context.getRequest();
+        if (!(request instanceof SaajSoapMessage)) {
+            log.error("Unable to add " + headerName.getLocalPart() + " to a " +
+                      request.getClass().getName());
+            return true;
+        }
+        // not sending at all beats a request IPAWS refuses
+        checkCredentials();
+
+        SOAPMessage soapMessage = ((SaajSoapMessage) request).getSaajMessage();
+        try {
+            addHeader(soapMessage);
+
+            // IPAWS does not recognize the signature unless the changes are
+            // saved as writing the message would, but nothing needs writing
+            if (soapMessage.saveRequired()) {
+                soapMessage.saveChanges();
+            }
+        } catch (SOAPException e) {
+            log.info("Unable to add " + headerName.getLocalPart() + " to SOAPHeader");
+            return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public boolean handleResponse(MessageContext context) {
+
+        return true;
+    }
+
+    @Override
+    public boolean handleFault(MessageContext context) {
+
+        return true;
+    }
+
+    public void afterCompletion(MessageContext context, Exception ex) {
+
+    }
+}
@@ -0,0 +1,200 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSHealthCheck
+ * remembers whether IPAWS was last seen available so that the pollers do not
+ * send a getACK before every request. A successful getACK or any successful
+ * data response counts as proof of liveness for ackTimeToLive milliseconds.
+ * After failureThreshold consecutive failures the server is considered down
+ * and no getACK is sent until the backoff delay has passed; the delay doubles
+ * with each further failure up to maxBackoff. One instance is meant to be
+ * shared by IPAWSCap and IPAWSEdxl.
+ */
+public class IPAWSHealthCheck {
+
+    /**
+     * interface Probe
+     * checks the availability of IPAWS, usually with a getACK request
+     */
+    public interface Probe {
+
+        public boolean ping();
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private long ackTimeToLive = 120000L;
+    private int failureThreshold = 3;
+    private long initialBackoff = 30000L;
+    private long maxBackoff = 600000L;
+
+    private long lastSuccess = 0;
+    private int consecutiveFailures = 0;
+    private long backoffUntil = 0;
+
+    private final AtomicLong probeCount = new AtomicLong();
+    private final AtomicLong cachedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public long getAckTimeToLive() {
+
+        return ackTimeToLive;
+    }
+
+    /**
+     * get/set how long in milliseconds a success is trusted before IPAWS is
+     * probed again, 0 probes on every check
+     */
+    public void setAckTimeToLive(long ackTimeToLive) {
+
+        this.ackTimeToLive = ackTimeToLive;
+    }
+
+    public int getFailureThreshold() {
+
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(int failureThreshold) {
+
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getInitialBackoff() {
+
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(long initialBackoff) {
+
+        this.initialBackoff = initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * method isAvailable
+     * A getACK the client refused to send, because its circuit breaker is
+     * open or its rate limiter ran out, says nothing new of IPAWS and is not
+     * counted as a failure, so that it does not push the backoff further out.
+     * @param Probe probe sends the getACK if the last result is too old
+     * @return boolean true if IPAWS is available
+     */
+    public boolean isAvailable(Probe probe) {
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (lastSuccess > 0 && now - lastSuccess < ackTimeToLive) {
+                cachedCount.incrementAndGet();
+                return true;
+            }
+            if (now < backoffUntil) {
+                rejectedCount.incrementAndGet();
+                log.debug("IPAWS is backing off for another " + (backoffUntil - now) + " ms");
+                return false;
+            }
+        }
+
+        probeCount.incrementAndGet();
+        boolean available = false;
+        try {
+            available = probe.ping();
+        } catch (IPAWSUnavailableException e) {
+            log.debug("getACK not sent to IPAWS: " + e.getMessage());
+            return false;
+        } catch (IPAWSThrottledException e) {
+            log.debug("getACK not sent to IPAWS: " + e.getMessage());
+            return false;
+        } catch (RuntimeException e) {
+            log.error("Unable to get ACK from IPAWS: " + e.getMessage());
+        }
+
+        if (available) {
+            recordSuccess();
+        } else {
+            recordFailure();
+        }
+        return available;
+    }
+
+    /**
+     * method recordSuccess
+     * records a successful exchange with IPAWS
+     */
+    public synchronized void recordSuccess() {
+
+        if (consecutiveFailures >= failureThreshold) {
+            log.info("IPAWS is available again after " + consecutiveFailures + " failures");
+        }
+        lastSuccess = System.currentTimeMillis();
+        consecutiveFailures = 0;
+        backoffUntil = 0;
+    }
+
+    /**
+     * method recordFailure
+     * records a failed exchange with IPAWS
+     */
+    public synchronized void recordFailure() {
+
+        lastSuccess = 0;
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            int exponent = Math.min(consecutiveFailures - failureThreshold, 30);
+            long backoff = Math.min(maxBackoff, initialBackoff << exponent);
+            if (backoff < 0) {
+                backoff = maxBackoff;
+            }
+            backoffUntil = System.currentTimeMillis() + backoff;
+            log.error("IPAWS failed " + consecutiveFailures + " times in a row, backing off for " +
+                      backoff + " ms");
+        }
+    }
+
+    public synchronized int getConsecutiveFailures() {
+
+        return consecutiveFailures;
+    }
+
+    public synchronized boolean isBackingOff() {
+
+        return System.currentTimeMillis() < backoffUntil;
+    }
+
+    /**
+     * @return long the number of getACK requests sent
+     */
+    public long getProbeCount() {
+
+        return probeCount.get();
+    }
+
+    /**
+     * @return long the number of checks answered from the last success
+     */
+    public long getCachedCount() {
+
+        return cachedCount.get();
+    }
+
+    /**
+     * @return long the number of checks refused while backing off
+     */
+    public long getRejectedCount() {
+
+        return rejectedCount.get();
+    }
+}
@@ -0,0 +1,306 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.Credentials;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.GzipCompressingEntity;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ws.transport.http.HttpComponentsMessageSender;
+
+/**
+ * class IPAWSHttpMessageSender
+ * is the message sender of the IPAWS WebServiceTemplate. It keeps the
+ * connections to IPAWS-OPEN alive in a pool so that each SOAP call does not
+ * open a new TLS connection. Idle and expired connections are evicted on a
+ * background thread. The pool statistics are exposed to tune it under load.
+ */
+public class IPAWSHttpMessageSender
+    extends HttpComponentsMessageSender {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private int maxTotal = 20;
+    private int maxPerRoute = 10;
+    private long keepAlive = 30000L;
+    private long idleTimeout = 60000L;
+    private int connectTimeout = 30000;
+    private int readTimeout = 60000;
+    private int poolTimeout = 30000;
+    private boolean compressRequests = false;
+    private Credentials credentials;
+    private AuthScope authScope = AuthScope.ANY;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient pooledClient;
+
+    public int getMaxTotal() {
+
+        return maxTotal;
+    }
+
+    /**
+     * get/set the maximum number of connections in the pool
+     */
+    public void setMaxTotal(int maxTotal) {
+
+        this.maxTotal = maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+
+        return maxPerRoute;
+    }
+
+    /**
+     * get/set the maximum number of connections to one host
+     */
+    public void setMaxPerRoute(int maxPerRoute) {
+
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    public long getKeepAlive() {
+
+        return keepAlive;
+    }
+
+    /**
+     * get/set how long in milliseconds a connection is kept alive when the
+     * server does not say so in a Keep-Alive header
+     */
+    public void setKeepAlive(long keepAlive) {
+
+        this.keepAlive = keepAlive;
+    }
+
+    public long getIdleTimeout() {
+
+        return idleTimeout;
+    }
+
+    /**
+     * get/set how long in milliseconds a connection may stay idle in the pool
+     * before it is closed
+     */
+    public void setIdleTimeout(long idleTimeout) {
+
+        this.idleTimeout = idleTimeout;
+    }
+
+    public int getConnectTimeout() {
+
+        return connectTimeout;
+    }
+
+    @Override
+    public void setConnectionTimeout(int connectTimeout) {
+
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+
+        return readTimeout;
+    }
+
+    @Override
+    public void setReadTimeout(int readTimeout) {
+
+        this.readTimeout = readTimeout;
+    }
+
+    public int getPoolTimeout() {
+
+        return poolTimeout;
+    }
+
+    /**
+     * get/set how long in milliseconds a request waits for a connection of
+     * the pool
+     */
+    public void setPoolTimeout(int poolTimeout) {
+
+        this.poolTimeout = poolTimeout;
+    }
+
+    public boolean isCompressRequests() {
+
+        return compressRequests;
+    }
+
+    /**
+     * set compressRequests to true to gzip the request bodies, the responses
+     * are accepted gzipped according to acceptGzipEncoding
+     */
+    public void setCompressRequests(boolean compressRequests) {
+
+        this.compressRequests = compressRequests;
+    }
+
+    /**
+     * set the credentials of the requests, applied to the pooled client
+     */
+    @Override
+    public void setCredentials(Credentials credentials) {
+
+        super.setCredentials(credentials);
+        this.credentials = credentials;
+    }
+
+    @Override
+    public void setAuthScope(AuthScope authScope) {
+
+        super.setAuthScope(authScope);
+        this.authScope = authScope;
+    }
+
+    /**
+     * method afterPropertiesSet
+     * replaces the client created by the superclass with the pooled client,
+     * and closes the replaced client so that its connections are released
+     */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+
+        super.afterPropertiesSet();
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        // check a connection idle for a while before it is reused
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom().setConnectTimeout(connectTimeout).setSocketTimeout(readTimeout).setConnectionRequestTimeout(poolTimeout).build();
+
+        HttpClientBuilder builder = HttpClientBuilder.create();
+        builder.setConnectionManager(connectionManager);
+        builder.setDefaultRequestConfig(requestConfig);
+        builder.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+
+            @Override
+            public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+
+                HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+                while (it.hasNext()) {
+                    HeaderElement element = it.nextElement();
+                    if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                        try {
+                            return Long.parseLong(element.getValue()) * 1000L;
+                        } catch (NumberFormatException e) {
+                            // use the default
+                        }
+                    }
+                }
+                return keepAlive;
+            }
+        });
+        builder.evictExpiredConnections();
+        builder.evictIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        // the responses are decompressed by the message sender itself
+        builder.disableContentCompression();
+        // spring-ws sets the content headers itself, they have to go before
+        // httpclient adds its own
+        builder.addInterceptorFirst(new HttpComponentsMessageSender.RemoveSoapHeadersInterceptor());
+        if (compressRequests) {
+            builder.addInterceptorFirst(new HttpRequestInterceptor() {
+
+                @Override
+                public void process(HttpRequest request, HttpContext context)
+                    throws HttpException, IOException {
+
+                    if (request instanceof HttpEntityEnclosingRequest) {
+                        HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
+                        HttpEntity entity = entityRequest.getEntity();
+                        if (entity != null && entity.getContentEncoding() == null) {
+                            entityRequest.setEntity(new GzipCompressingEntity(entity));
+                        }
+                    }
+                }
+            });
+        }
+
+        if (credentials != null) {
+            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
+            credentialsProvider.setCredentials(authScope, credentials);
+            builder.setDefaultCredentialsProvider(credentialsProvider);
+        }
+
+        HttpClient replacedClient = getHttpClient();
+        pooledClient = builder.build();
+        setHttpClient(pooledClient);
+        if (replacedClient instanceof Closeable) {
+            ((Closeable) replacedClient).close();
+        }
+
+        log.info("IPAWS connection pool of " + maxTotal + " connections, " + maxPerRoute +
+                 " per host");
+    }
+
+    @Override
+    public void destroy() throws Exception {
+
+        if (pooledClient != null) {
+            pooledClient.close();
+            pooledClient = null;
+        }
+    }
+
+    /**
+     * @return int the number of connections in use
+     */
+    public int getLeased() {
+
+        PoolStats stats = getStats();
+        return stats == null ? 0 : stats.getLeased();
+    }
+
+    /**
+     * @return int the number of idle connections ready to be reused
+     */
+    public int getAvailable() {
+
+        PoolStats stats = getStats();
+        return stats == null ? 0 : stats.getAvailable();
+    }
+
+    /**
+     * @return int the number of requests waiting for a connection
+     */
+    public int getPending() {
+
+        PoolStats stats = getStats();
+        return stats == null ? 0 : stats.getPending();
+    }
+
+    /**
+     * @return PoolStats the statistics of the whole pool, or null before afterPropertiesSet
+     */
+    public PoolStats getStats() {
+
+        return connectionManager == null ? null : connectionManager.getTotalStats();
+    }
+}
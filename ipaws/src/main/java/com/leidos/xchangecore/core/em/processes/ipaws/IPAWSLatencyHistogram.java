@@ -0,0 +1,125 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * class IPAWSLatencyHistogram
+ * counts latencies in microseconds in log-linear buckets: each power of two
+ * is split in 8 buckets, so a percentile is off by at most an eighth of its
+ * value. Recording is lock free and the memory is fixed, whatever the number
+ * of latencies recorded.
+ */
+public class IPAWSLatencyHistogram {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    // up to 2^36 microseconds, about 19 hours
+    private static final int MAX_BITS = 36;
+    private static final int BUCKET_COUNT = (MAX_BITS - SUB_BITS + 1) * SUB_COUNT + SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * method record
+     * @param long latency the latency in nanoseconds
+     */
+    public void record(long latency) {
+
+        long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(latency));
+        buckets.incrementAndGet(bucketOf(micros));
+        count.incrementAndGet();
+        sum.addAndGet(micros);
+        long current = max.get();
+        while (micros > current && !max.compareAndSet(current, micros)) {
+            current = max.get();
+        }
+    }
+
+    static int bucketOf(long micros) {
+
+        if (micros < SUB_COUNT) {
+            return (int) micros;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        if (msb > MAX_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        int shift = msb - SUB_BITS;
+        int sub = (int) (micros >>> shift) & (SUB_COUNT - 1);
+        return (shift + 1) * SUB_COUNT + sub;
+    }
+
+    static long upperBoundOf(int bucket) {
+
+        if (bucket < SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + bucket % SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    /**
+     * method getPercentile
+     * @param double percentile the percentile between 0 and 100, such as 99.9
+     * @return long the latency in microseconds below which that percentage of the latencies are,
+     *         0 if nothing was recorded
+     */
+    public long getPercentile(double percentile) {
+
+        long total = count.get();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100.0 * total);
+        if (rank < 1) {
+            rank = 1;
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public long getCount() {
+
+        return count.get();
+    }
+
+    /**
+     * @return long the mean latency in microseconds
+     */
+    public long getMean() {
+
+        long total = count.get();
+        return total == 0 ? 0 : sum.get() / total;
+    }
+
+    /**
+     * @return long the longest latency in microseconds
+     */
+    public long getMax() {
+
+        return max.get();
+    }
+
+    public String toString() {
+
+        StringBuffer buf = new StringBuffer("count:");
+        buf.append(getCount());
+        buf.append(", p50:").append(getPercentile(50)).append("us");
+        buf.append(", p99:").append(getPercentile(99)).append("us");
+        buf.append(", p999:").append(getPercentile(99.9)).append("us");
+        buf.append(", max:").append(getMax()).append("us");
+        return buf.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.io.IOException;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stax.StAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xmlbeans.XmlException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.client.core.WebServiceMessageExtractor;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+/**
+ * class IPAWSMessageReader
+ * reads the messages of an IPAWS getMessage response one at a time and hands
+ * each of them to a MessageHandler, so that the whole response is never held
+ * as one XmlBeans document. Streamed payloads are pulled with StAX, which
+ * keeps the heap used to about one message. Payloads that are already a DOM,
+ * as with SAAJ, are walked element by element: the DOM of the whole response
+ * is then in memory anyway and only its XmlBeans copy is saved.
+ */
+public class IPAWSMessageReader<T>
+    implements WebServiceMessageExtractor<Integer> {
+
+    /**
+     * interface MessageHandler
+     * receives the messages of a response as they are read
+     */
+    public interface MessageHandler<T> {
+
+        public void handleMessage(T message);
+    }
+
+    /**
+     * interface MessageParser
+     * parses one message element of a response
+     */
+    public interface MessageParser<T> {
+
+        /**
+         * parses the element at the current START_ELEMENT of the reader, leaving
+         * the reader on its END_ELEMENT
+         */
+        public T parse(XMLStreamReader reader) throws XmlException;
+
+        public T parse(Node node) throws XmlException;
+    }
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    private static Logger log = LoggerFactory.getLogger(IPAWSMessageReader.class);
+
+    private final QName elementName;
+    private final MessageParser<T> parser;
+    private final MessageHandler<T> handler;
+
+    public IPAWSMessageReader(QName elementName, MessageParser<T> parser, MessageHandler<T> handler) {
+
+        this.elementName = elementName;
+        this.parser = parser;
+        this.handler = handler;
+    }
+
+    @Override
+    public Integer extractData(WebServiceMessage message) throws IOException, TransformerException {
+
+        return readMessages(message.getPayloadSource());
+    }
+
+    /**
+     * method readMessages
+     * @param Source source the payload of the response
+     * @return int the number of messages handed to the handler
+     */
+    public int readMessages(Source source) throws IOException, TransformerException {
+
+        if (source == null) {
+            return 0;
+        }
+
+        try {
+            if (source instanceof DOMSource) {
+                return readMessages(((DOMSource) source).getNode());
+            }
+            if (source instanceof StreamSource || source instanceof StAXSource) {
+                return readMessages(inputFactory.createXMLStreamReader(source));
+            }
+
+            // any other kind of source is copied into a DOM first
+            DOMResult result = new DOMResult();
+            TransformerFactory.newInstance().newTransformer().transform(source, result);
+            return readMessages(result.getNode());
+        } catch (XMLStreamException e) {
+            throw new IOException("Unable to read the IPAWS response: " + e.getMessage(), e);
+        } catch (XmlException e) {
+            throw new IOException("Unable to parse the IPAWS response: " + e.getMessage(), e);
+        }
+    }
+
+    private int readMessages(XMLStreamReader reader) throws XMLStreamException, XmlException {
+
+        int count = 0;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT &&
+                    elementName.equals(reader.getName())) {
+                    handler.handleMessage(parser.parse(reader));
+                    count++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        log.debug("Read " + count + " " + elementName.getLocalPart() + " from the IPAWS response");
+        return count;
+    }
+
+    private int readMessages(Node node) throws XmlException {
+
+        if (node == null) {
+            return 0;
+        }
+
+        NodeList nodes;
+        if (node.getNodeType() == Node.DOCUMENT_NODE) {
+            nodes = ((Document) node).getElementsByTagNameNS(elementName.getNamespaceURI(),
+                elementName.getLocalPart());
+        } else if (node.getNodeType() == Node.ELEMENT_NODE) {
+            nodes = ((Element) node).getElementsByTagNameNS(elementName.getNamespaceURI(),
+                elementName.getLocalPart());
+        } else {
+            return 0;
+        }
+
+        int count = nodes.getLength();
+        for (int i = 0; i < count; i++) {
+            handler.handleMessage(parser.parse(nodes.item(i)));
+        }
+
+        log.debug("Read " + count + " " + elementName.getLocalPart() + " from the IPAWS response");
+        return count;
+    }
+}
@@ -0,0 +1,40 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+/**
+ * interface IPAWSMetricsRegistry
+ * receives the measures of the requests sent by IPAWSSpringClient, keyed by
+ * request API and operation such as CAP11.getMessage, or by the document
+ * element of the requests that have none, such as postCAPRequestTypeDef.
+ * IPAWSRequestMetrics keeps them in memory; an adapter to another metrics
+ * library implements this interface.
+ */
+public interface IPAWSMetricsRegistry {
+
+    /**
+     * the outcome of a request
+     */
+    public enum Outcome {
+        SUCCESS, FAULT, ERROR
+    }
+
+    /**
+     * method requestStarted
+     * is called when the request is about to be sent
+     */
+    public void requestStarted(String operation);
+
+    /**
+     * method requestCompleted
+     * is called once for each requestStarted
+     * @param String operation the key of the operation
+     * @param long latency the time in nanoseconds from sending the request to reading the response
+     * @param long requestBytes the size of the request, -1 if not known
+     * @param long responseBytes the size of the response, -1 if not known
+     * @param Outcome outcome SUCCESS, FAULT if IPAWS answered with a SOAP fault, or ERROR
+     */
+    public void requestCompleted(String operation,
+                                 long latency,
+                                 long requestBytes,
+                                 long responseBytes,
+                                 Outcome outcome);
+}
@@ -0,0 +1,339 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.xmlbeans.XmlObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSNotificationDrainer
+ * drains the notification queues of the cogs, the cogs in parallel, each in
+ * batches until its queue is empty or the deadline is passed. The deadline is
+ * checked before each notification is forwarded, and the notifications of a
+ * batch left when it passes are kept for the next drain of the cog, so that a
+ * large batch does not hold the poll and nothing retrieved is dropped.
+ */
+public class IPAWSNotificationDrainer {
+
+    /**
+     * interface Source
+     * retrieves the notifications of a cog
+     */
+    public interface Source {
+
+        /**
+         * @return XmlObject[] at most count notifications, or null if there are none
+         */
+        public XmlObject[] getMessages(String cogId, int count);
+    }
+
+    /**
+     * interface Forwarder
+     * processes one notification
+     */
+    public interface Forwarder {
+
+        public void forward(XmlObject notification);
+    }
+
+    /**
+     * inner class DrainState
+     * to hold what is known of the notification queue of a cog between drains
+     */
+    private static class DrainState {
+
+        final AtomicBoolean draining = new AtomicBoolean();
+        volatile int batchSize;
+        volatile int backlog;
+        // retrieved but not forwarded when the deadline passed, only read
+        // and written by the drain holding the draining flag. They are in
+        // memory only, like a notification being forwarded, and are lost if
+        // the server stops before the next drain.
+        XmlObject[] leftover;
+
+        DrainState(int batchSize) {
+
+            this.batchSize = batchSize;
+        }
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    // notifications requested per batch, the batches grow up to maxBatchSize
+    // while the queue of a cog stays full
+    private int batchSize = 10;
+    private int maxBatchSize = 100;
+
+    private final ConcurrentMap<String, DrainState> drainStates = new ConcurrentHashMap<String, DrainState>();
+    private ExecutorService executor;
+
+    public int getBatchSize() {
+
+        return batchSize;
+    }
+
+    /**
+     * get/set the number of notifications requested in the first batch of a
+     * cog, and the least the batches shrink to
+     */
+    public void setBatchSize(int batchSize) {
+
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxBatchSize() {
+
+        return maxBatchSize;
+    }
+
+    /**
+     * get/set the most notifications requested in a batch
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * method drain
+     * drains the cogs in parallel and waits for them until the deadline. A
+     * drain still running then is cancelled, so that it does not run on
+     * into the next poll.
+     * @param List<String> cogIds the cogs to drain
+     * @param long deadline the time in milliseconds after which no notification is forwarded
+     * @param Source source retrieves the notifications
+     * @param Forwarder forwarder processes each notification
+     * @return int the number of notifications forwarded by the drains that completed
+     */
+    public int drain(List<String> cogIds,
+                     final long deadline,
+                     final Source source,
+                     final Forwarder forwarder) {
+
+        if (cogIds.size() == 1) {
+            return drainCog(cogIds.get(0), deadline, source, forwarder);
+        }
+
+        ExecutorService pool = getExecutor();
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(cogIds.size());
+        for (final String cogId : cogIds) {
+            futures.add(pool.submit(new Callable<Integer>() {
+
+                @Override
+                public Integer call() {
+
+                    return drainCog(cogId, deadline, source, forwarder);
+                }
+            }));
+        }
+
+        int count = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                long timeout = Math.max(0, deadline - System.currentTimeMillis());
+                count += futures.get(i).get(timeout, TimeUnit.MILLISECONDS).intValue();
+            } catch (TimeoutException e) {
+                futures.get(i).cancel(true);
+                log.info("Notifications of cog " + cogIds.get(i) +
+                         " still draining after the deadline, cancelled");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                break;
+            } catch (ExecutionException e) {
+                log.error("Draining the notifications of cog " + cogIds.get(i) + " failed: " +
+                          e.getCause());
+            }
+        }
+        return count;
+    }
+
+    /**
+     * method drainCog
+     * forwards the notifications left by the previous drain of the cog, then
+     * retrieves its notifications batch after batch, until a batch comes back
+     * short, which means the queue is empty, or the deadline is passed. The
+     * batch size grows while the batches come back full and shrinks when they
+     * come back mostly empty.
+     * @param String cogId the cog to drain
+     * @param long deadline the time in milliseconds after which no notification is forwarded
+     * @param Source source retrieves the notifications
+     * @param Forwarder forwarder processes each notification
+     * @return int the number of notifications forwarded
+     */
+    int drainCog(String cogId, long deadline, Source source, Forwarder forwarder) {
+
+        DrainState state = getDrainState(cogId);
+        if (!state.draining.compareAndSet(false, true)) {
+            log.info("Skipping cog " + cogId + ", the previous drain is still running");
+            return 0;
+        }
+
+        int count = 0;
+        try {
+            XmlObject[] leftover = state.leftover;
+            if (leftover != null) {
+                state.leftover = null;
+                int forwarded = forward(leftover, deadline, state, forwarder);
+                count += forwarded;
+                if (forwarded < leftover.length) {
+                    state.backlog = leftover.length - forwarded;
+                    log.info("Drain deadline passed for cog " + cogId + " after " + count +
+                             " notifications");
+                    return count;
+                }
+            }
+
+            while (true) {
+                int size = state.batchSize;
+                XmlObject[] xmlDocs = source.getMessages(cogId, size);
+                int returned = xmlDocs != null ? xmlDocs.length : 0;
+                int forwarded = returned > 0 ? forward(xmlDocs, deadline, state, forwarder) : 0;
+                count += forwarded;
+                state.batchSize = nextBatchSize(size, returned, batchSize, maxBatchSize);
+
+                if (forwarded < returned) {
+                    // a full batch means as much again may be in the queue
+                    state.backlog = returned - forwarded + (returned < size ? 0 : returned);
+                    log.info("Drain deadline passed for cog " + cogId + " after " + count +
+                             " notifications");
+                    break;
+                }
+                if (returned < size) {
+                    state.backlog = 0;
+                    break;
+                }
+                if (isOver(deadline)) {
+                    // the queue held at least a full batch, assume as much is left
+                    state.backlog = returned;
+                    log.info("Drain deadline passed for cog " + cogId + " after " + count +
+                             " notifications");
+                    break;
+                }
+            }
+        } finally {
+            state.draining.set(false);
+        }
+        return count;
+    }
+
+    /**
+     * method forward
+     * forwards the notifications until the deadline is passed, at least one
+     * so that each drain makes progress, and keeps the rest for the next drain
+     * @return int the number of notifications forwarded
+     */
+    private int forward(XmlObject[] xmlDocs,
+                        long deadline,
+                        DrainState state,
+                        Forwarder forwarder) {
+
+        for (int i = 0; i < xmlDocs.length; i++) {
+            if (i > 0 && isOver(deadline)) {
+                state.leftover = Arrays.copyOfRange(xmlDocs, i, xmlDocs.length);
+                return i;
+            }
+            forwarder.forward(xmlDocs[i]);
+        }
+        return xmlDocs.length;
+    }
+
+    private static boolean isOver(long deadline) {
+
+        return System.currentTimeMillis() >= deadline || Thread.currentThread().isInterrupted();
+    }
+
+    /**
+     * method nextBatchSize
+     * doubles the batch size after a full batch and halves it after a batch
+     * less than half full, within min and max
+     * @return int the size of the next batch
+     */
+    static int nextBatchSize(int size, int returned, int min, int max) {
+
+        if (returned >= size) {
+            size = size * 2;
+        } else if (returned < size / 2) {
+            size = size / 2;
+        }
+        return Math.max(min, Math.min(max, size));
+    }
+
+    private DrainState getDrainState(String cogId) {
+
+        DrainState state = drainStates.get(cogId);
+        if (state == null) {
+            DrainState created = new DrainState(batchSize);
+            state = drainStates.putIfAbsent(cogId, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * method getBacklog
+     * @return Map<String, Integer> per cog id, 0 if its notification queue was
+     *         emptied by the last drain, else an estimate of the notifications
+     *         left when the deadline passed
+     */
+    public Map<String, Integer> getBacklog() {
+
+        Map<String, Integer> backlog = new TreeMap<String, Integer>();
+        for (Map.Entry<String, DrainState> entry : drainStates.entrySet()) {
+            backlog.put(entry.getKey(), Integer.valueOf(entry.getValue().backlog));
+        }
+        return backlog;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable r) {
+
+                    Thread thread = new Thread(r, "ipaws-edxl-drain-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * method shutdown
+     * stops the drain threads
+     */
+    public synchronized void shutdown() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+}
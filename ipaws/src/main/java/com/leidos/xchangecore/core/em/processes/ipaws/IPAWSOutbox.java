@@ -0,0 +1,607 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSOutbox
+ * keeps the messages to send to IPAWS in an append-only journal file until
+ * IPAWS confirms them, so a message taken off the notification service is
+ * not lost if IPAWS rejects it, is down or the server restarts. Each message
+ * is appended and synced to disk before append returns, and a sender thread
+ * of its own sends the oldest messages due in batches. A message is marked
+ * done in the journal only once it is sent, so a crash between the send and
+ * the mark sends it again: the delivery is at least once from the time
+ * append returns. Before that the message is only in memory, so the caller
+ * must append it as soon as it takes it off its source, which cannot give it
+ * back after a crash. Each message that failed waits on its own before the
+ * next attempt, as IPAWSBackoff computes it, so it does not hold up the
+ * others, and one that ran out of attempts is moved to the dead file. A
+ * record cut short by a crash is cut off the journal on load, and the
+ * journal is rewritten with the pending messages only once enough of them
+ * are done.
+ */
+public class IPAWSOutbox<T> {
+
+    /**
+     * interface Sender
+     * sends one message to IPAWS
+     */
+    public interface Sender<T> {
+
+        /**
+         * @return boolean true if IPAWS accepted the message
+         */
+        public boolean send(String id, T message);
+    }
+
+    /**
+     * inner class Entry
+     * holds a pending message as stored in the journal
+     */
+    private static class Entry {
+
+        private final String id;
+        private final String payload;
+        private int attempts = 0;
+        private long nextAttempt = 0;
+
+        Entry(String id, String payload) {
+
+            this.id = id;
+            this.payload = payload;
+        }
+    }
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String APPEND = "A";
+    private static final String DONE = "D";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private String outboxFile = "ipaws-outbox.log";
+    private int batchSize = 20;
+    private int maxAttempts = 10;
+    private final IPAWSBackoff backoff = new IPAWSBackoff(5000L, 300000L, 0.2);
+    private long pollInterval = 1000L;
+    private int compactThreshold = 1000;
+
+    private IPAWSRetryQueue.Codec<T> codec;
+    private Sender<T> sender;
+
+    // sequence -> message, in the order appended, the payloads are kept
+    // encoded as they are in the journal
+    private final Map<Long, Entry> pending = new LinkedHashMap<Long, Entry>();
+    private long nextSequence = 1;
+    private int doneSinceCompact = 0;
+    private FileOutputStream journal;
+    private boolean loaded = false;
+
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong deadCount = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+
+    public String getOutboxFile() {
+
+        return outboxFile;
+    }
+
+    /**
+     * get/set the journal file, the dead messages are kept next to it with
+     * the extension .dead
+     */
+    public void setOutboxFile(String outboxFile) {
+
+        this.outboxFile = outboxFile;
+    }
+
+    public int getBatchSize() {
+
+        return batchSize;
+    }
+
+    /**
+     * get/set the most messages sent in one run of the sender
+     */
+    public void setBatchSize(int batchSize) {
+
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    public int getMaxAttempts() {
+
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * get/set the delay in milliseconds before a message that failed is sent
+     * again, it doubles with each further failure of the message up to maxDelay
+     */
+    public long getInitialDelay() {
+
+        return backoff.getInitialDelay();
+    }
+
+    public void setInitialDelay(long initialDelay) {
+
+        backoff.setInitialDelay(initialDelay);
+    }
+
+    public long getMaxDelay() {
+
+        return backoff.getMaxDelay();
+    }
+
+    public void setMaxDelay(long maxDelay) {
+
+        backoff.setMaxDelay(maxDelay);
+    }
+
+    public double getJitter() {
+
+        return backoff.getJitter();
+    }
+
+    /**
+     * set the part of the delay that is random, so that the messages of a
+     * failed batch are not all sent again at once
+     */
+    public void setJitter(double jitter) {
+
+        backoff.setJitter(jitter);
+    }
+
+    public long getPollInterval() {
+
+        return pollInterval;
+    }
+
+    public void setPollInterval(long pollInterval) {
+
+        this.pollInterval = pollInterval;
+    }
+
+    public int getCompactThreshold() {
+
+        return compactThreshold;
+    }
+
+    /**
+     * get/set the number of messages done after which the journal is
+     * rewritten with the pending messages only
+     */
+    public void setCompactThreshold(int compactThreshold) {
+
+        this.compactThreshold = compactThreshold;
+    }
+
+    public void setCodec(IPAWSRetryQueue.Codec<T> codec) {
+
+        this.codec = codec;
+    }
+
+    public void setSender(Sender<T> sender) {
+
+        this.sender = sender;
+    }
+
+    /**
+     * @return int the number of messages waiting to be sent
+     */
+    public synchronized int size() {
+
+        load();
+        return pending.size();
+    }
+
+    /**
+     * method getPendingIds
+     * @return List<String> the ids of the messages waiting to be sent, oldest first
+     */
+    public synchronized List<String> getPendingIds() {
+
+        load();
+        List<String> ids = new ArrayList<String>(pending.size());
+        for (Entry entry : pending.values()) {
+            ids.add(entry.id);
+        }
+        return ids;
+    }
+
+    public long getSentCount() {
+
+        return sentCount.get();
+    }
+
+    /**
+     * @return long the number of failed sends since the start
+     */
+    public long getFailedCount() {
+
+        return failedCount.get();
+    }
+
+    /**
+     * @return long the number of messages moved to the dead file since the start
+     */
+    public long getDeadCount() {
+
+        return deadCount.get();
+    }
+
+    /**
+     * method append
+     * stores the message durably to be sent
+     * @param String id the id of the message, for the logs and the dead file
+     * @param T message the message
+     * @return boolean true if the message was stored, false if it could not
+     *         be written and must be sent by other means
+     */
+    public synchronized boolean append(String id, T message) {
+
+        load();
+
+        String payload = codec.encode(message);
+        long sequence = nextSequence;
+        try {
+            writeRecord(APPEND + " " + sequence + " " + encode(String.valueOf(id)) + " " +
+                        encode(payload), true);
+        } catch (IOException e) {
+            log.error("Unable to store " + id + " in the IPAWS outbox: " + e.getMessage());
+            return false;
+        }
+        nextSequence++;
+        pending.put(Long.valueOf(sequence), new Entry(id, payload));
+
+        start();
+        return true;
+    }
+
+    /**
+     * method start
+     * starts the sender, to be used as the spring init-method. It is started
+     * on the first append as well.
+     */
+    public synchronized void start() {
+
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, "ipaws-outbox");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+                    sendBatch();
+                } catch (RuntimeException e) {
+                    log.error("IPAWS outbox failed: " + e.getMessage());
+                }
+            }
+        }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * method stop
+     * stops the sender and closes the journal, to be used as the spring
+     * destroy-method
+     */
+    public synchronized void stop() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        IPAWSFiles.closeQuietly(journal);
+        journal = null;
+        loaded = false;
+        pending.clear();
+    }
+
+    /**
+     * method sendBatch
+     * sends the oldest messages due, up to batchSize. The messages waiting
+     * after a failure are skipped, so a failing message does not hold up the
+     * others.
+     * @return int the number of messages sent
+     */
+    public int sendBatch() {
+
+        Map<Long, Entry> batch = new LinkedHashMap<Long, Entry>();
+        synchronized (this) {
+            load();
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Long, Entry> entry : pending.entrySet()) {
+                if (batch.size() >= batchSize) {
+                    break;
+                }
+                if (entry.getValue().nextAttempt <= now) {
+                    batch.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        int count = 0;
+        for (Map.Entry<Long, Entry> entry : batch.entrySet()) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (send(entry.getKey(), entry.getValue())) {
+                count++;
+            }
+        }
+
+        synchronized (this) {
+            if (journal != null) {
+                try {
+                    journal.getFD().sync();
+                } catch (IOException e) {
+                    log.error("Unable to sync the IPAWS outbox: " + e.getMessage());
+                }
+            }
+            if (doneSinceCompact >= compactThreshold) {
+                compact();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * method send
+     * sends one message, and on failure schedules its next attempt or moves
+     * it to the dead file
+     * @return boolean true if the message was sent
+     */
+    private boolean send(Long sequence, Entry entry) {
+
+        String error = null;
+        try {
+            T message = codec.decode(entry.payload);
+            if (sender.send(entry.id, message)) {
+                sentCount.incrementAndGet();
+                done(sequence);
+                return true;
+            }
+            error = "not accepted";
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+
+        failedCount.incrementAndGet();
+        synchronized (this) {
+            entry.attempts++;
+            if (entry.attempts >= maxAttempts) {
+                dead(sequence, entry, error);
+                return false;
+            }
+            entry.nextAttempt = System.currentTimeMillis() + backoff.delay(entry.attempts);
+            log.info("Sending " + entry.id + " to IPAWS failed on attempt " + entry.attempts +
+                     ": " + error);
+        }
+        return false;
+    }
+
+    private synchronized void done(Long sequence) {
+
+        if (pending.remove(sequence) == null) {
+            return;
+        }
+        try {
+            // not synced each time, a done lost in a crash only sends the message again
+            writeRecord(DONE + " " + sequence, false);
+        } catch (IOException e) {
+            log.error("Unable to mark " + sequence + " done in the IPAWS outbox: " +
+                      e.getMessage());
+        }
+        doneSinceCompact++;
+    }
+
+    private void dead(Long sequence, Entry entry, String error) {
+
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(outboxFile + ".dead", true);
+            String record = APPEND + " " + sequence + " " + encode(entry.id) + " " +
+                            encode(entry.payload) + "\n";
+            out.write(record.getBytes(UTF8));
+            out.getFD().sync();
+        } catch (IOException e) {
+            log.error("Unable to write " + entry.id + " to the IPAWS outbox dead file: " +
+                      e.getMessage());
+            return;
+        } finally {
+            IPAWSFiles.closeQuietly(out);
+        }
+        deadCount.incrementAndGet();
+        log.error("Giving up on " + entry.id + " after " + entry.attempts + " attempts: " + error);
+        done(sequence);
+    }
+
+    private void writeRecord(String record, boolean sync) throws IOException {
+
+        if (journal == null) {
+            File file = new File(outboxFile).getAbsoluteFile();
+            if (file.getParentFile() != null && !file.getParentFile().exists()) {
+                file.getParentFile().mkdirs();
+            }
+            journal = new FileOutputStream(file, true);
+        }
+        journal.write((record + "\n").getBytes(UTF8));
+        if (sync) {
+            journal.getFD().sync();
+        }
+    }
+
+    /**
+     * method compact
+     * rewrites the journal with the pending messages only, the same way the
+     * checkpoint is written
+     */
+    private void compact() {
+
+        File file = new File(outboxFile).getAbsoluteFile();
+        File tmpFile = new File(file.getPath() + ".tmp");
+        FileOutputStream out = null;
+        boolean written = false;
+        try {
+            out = new FileOutputStream(tmpFile);
+            for (Map.Entry<Long, Entry> entry : pending.entrySet()) {
+                String record = APPEND + " " + entry.getKey() + " " +
+                                encode(entry.getValue().id) + " " +
+                                encode(entry.getValue().payload) + "\n";
+                out.write(record.getBytes(UTF8));
+            }
+            out.flush();
+            out.getFD().sync();
+            written = true;
+        } catch (IOException e) {
+            log.error("Unable to compact the IPAWS outbox: " + e.getMessage());
+        } finally {
+            IPAWSFiles.closeQuietly(out);
+        }
+        if (!written) {
+            tmpFile.delete();
+            return;
+        }
+
+        IPAWSFiles.closeQuietly(journal);
+        journal = null;
+        try {
+            IPAWSFiles.replace(tmpFile, file);
+            doneSinceCompact = 0;
+        } catch (IOException e) {
+            log.error("Unable to compact the IPAWS outbox: " + e.getMessage());
+        }
+    }
+
+    private synchronized void load() {
+
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        File file = new File(outboxFile);
+        if (!file.exists()) {
+            return;
+        }
+
+        int records = 0;
+        BufferedReader in = null;
+        try {
+            truncateTornRecord(file);
+            in = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                records++;
+                String[] fields = line.split(" ");
+                try {
+                    Long sequence = Long.valueOf(fields[1]);
+                    if (APPEND.equals(fields[0]) && fields.length == 4) {
+                        pending.put(sequence, new Entry(decode(fields[2]), decode(fields[3])));
+                    } else if (DONE.equals(fields[0]) && fields.length == 2) {
+                        pending.remove(sequence);
+                    } else {
+                        throw new IllegalArgumentException(fields[0]);
+                    }
+                    nextSequence = Math.max(nextSequence, sequence.longValue() + 1);
+                } catch (RuntimeException e) {
+                    log.error("Ignoring invalid record " + records + " of the IPAWS outbox");
+                }
+            }
+        } catch (IOException e) {
+            log.error("Unable to read the IPAWS outbox " + outboxFile + ": " + e.getMessage());
+        } finally {
+            IPAWSFiles.closeQuietly(in);
+        }
+
+        doneSinceCompact = records - pending.size();
+        if (!pending.isEmpty()) {
+            log.info("Loaded " + pending.size() + " messages to send from " +
+                     file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * method truncateTornRecord
+     * cuts the journal back to the end of its last complete record. A crash
+     * in the middle of an append leaves a record without its newline, which
+     * the next append would run into and make both unreadable. The message
+     * of such a record was never stored, since its append did not return.
+     */
+    private void truncateTornRecord(File file) throws IOException {
+
+        RandomAccessFile journalFile = new RandomAccessFile(file, "rw");
+        try {
+            long length = journalFile.length();
+            long end = length;
+            while (end > 0) {
+                journalFile.seek(end - 1);
+                if (journalFile.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < length) {
+                journalFile.setLength(end);
+                log.error("Cut a record of " + (length - end) +
+                          " bytes left incomplete by a crash off the IPAWS outbox");
+            }
+        } finally {
+            IPAWSFiles.closeQuietly(journalFile);
+        }
+    }
+
+    private static String encode(String text) {
+
+        return Base64.getEncoder().encodeToString(text.getBytes(UTF8));
+    }
+
+    private static String decode(String text) {
+
+        return new String(Base64.getDecoder().decode(text), UTF8);
+    }
+}
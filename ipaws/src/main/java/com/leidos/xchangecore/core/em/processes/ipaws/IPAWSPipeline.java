@@ -0,0 +1,308 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSPipeline
+ * processes items in stages, one stage per kind of item, so that a slow kind
+ * does not hold up the others. Each stage has its own lanes, a lane being a
+ * bounded queue and the thread that empties it. The items with the same key
+ * go to the same lane and are processed in the order submitted. A submit
+ * waits while the lane is full.
+ */
+public class IPAWSPipeline<T> {
+
+    /**
+     * interface Worker
+     * processes one item
+     */
+    public interface Worker<T> {
+
+        public void process(T item);
+    }
+
+    private static class Task<T> {
+
+        private final T item;
+        private final Worker<T> worker;
+
+        Task(T item, Worker<T> worker) {
+
+            this.item = item;
+            this.worker = worker;
+        }
+    }
+
+    /**
+     * inner class Stage
+     * holds the lanes and the measures of one kind of item
+     */
+    public static class Stage<T> {
+
+        private final Logger log = LoggerFactory.getLogger(IPAWSPipeline.class);
+
+        private final String name;
+        private final Pending pending;
+        private final BlockingQueue<Task<T>>[] lanes;
+        private final Thread[] threads;
+        private final IPAWSLatencyHistogram serviceTime = new IPAWSLatencyHistogram();
+        private final AtomicLong failedCount = new AtomicLong();
+
+        @SuppressWarnings("unchecked")
+        Stage(final String name, int laneCount, int capacity, Pending pending) {
+
+            this.name = name;
+            this.pending = pending;
+            this.lanes = new BlockingQueue[laneCount];
+            this.threads = new Thread[laneCount];
+            for (int i = 0; i < laneCount; i++) {
+                final BlockingQueue<Task<T>> lane = new LinkedBlockingQueue<Task<T>>(capacity);
+                lanes[i] = lane;
+                threads[i] = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+
+                        drain(lane);
+                    }
+                }, "ipaws-" + name + "-" + (i + 1));
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+        }
+
+        void submit(String key, T item, Worker<T> worker) throws InterruptedException {
+
+            int lane = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes.length;
+            pending.increment();
+            try {
+                lanes[lane].put(new Task<T>(item, worker));
+            } catch (InterruptedException e) {
+                pending.decrement();
+                throw e;
+            }
+        }
+
+        private void drain(BlockingQueue<Task<T>> lane) {
+
+            while (!Thread.currentThread().isInterrupted()) {
+                Task<T> task;
+                try {
+                    task = lane.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    task.worker.process(task.item);
+                } catch (RuntimeException e) {
+                    failedCount.incrementAndGet();
+                    log.error("Stage " + name + " failed to process an item: " + e.getMessage());
+                } finally {
+                    serviceTime.record(System.nanoTime() - start);
+                    pending.decrement();
+                }
+            }
+        }
+
+        void stop() {
+
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+
+        public String getName() {
+
+            return name;
+        }
+
+        /**
+         * @return int the number of items waiting in the lanes of the stage
+         */
+        public int getQueueDepth() {
+
+            int depth = 0;
+            for (BlockingQueue<Task<T>> lane : lanes) {
+                depth += lane.size();
+            }
+            return depth;
+        }
+
+        /**
+         * @return IPAWSLatencyHistogram the time taken to process each item
+         */
+        public IPAWSLatencyHistogram getServiceTime() {
+
+            return serviceTime;
+        }
+
+        public long getProcessedCount() {
+
+            return serviceTime.getCount();
+        }
+
+        public long getFailedCount() {
+
+            return failedCount.get();
+        }
+
+        public String toString() {
+
+            StringBuffer buf = new StringBuffer(name);
+            buf.append(" queued:").append(getQueueDepth());
+            buf.append(", failed:").append(getFailedCount());
+            buf.append(", ").append(serviceTime);
+            return buf.toString();
+        }
+    }
+
+    /**
+     * inner class Pending
+     * counts the items submitted and not processed yet
+     */
+    private static class Pending {
+
+        private int count = 0;
+
+        synchronized void increment() {
+
+            count++;
+        }
+
+        synchronized void decrement() {
+
+            count--;
+            if (count == 0) {
+                notifyAll();
+            }
+        }
+
+        synchronized boolean awaitZero(long timeout) throws InterruptedException {
+
+            long deadline = System.currentTimeMillis() + timeout;
+            while (count > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private final ConcurrentMap<String, Stage<T>> stages = new ConcurrentHashMap<String, Stage<T>>();
+    private final Pending pending = new Pending();
+
+    private int lanes = 2;
+    private int capacity = 100;
+    private boolean stopped = false;
+
+    public int getLanes() {
+
+        return lanes;
+    }
+
+    /**
+     * get/set the number of lanes of each stage, the stages already started keep theirs
+     */
+    public void setLanes(int lanes) {
+
+        if (lanes <= 0) {
+            throw new IllegalArgumentException("lanes must be positive: " + lanes);
+        }
+        this.lanes = lanes;
+    }
+
+    public int getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * get/set the number of items a lane holds before a submit waits
+     */
+    public void setCapacity(int capacity) {
+
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * method submit
+     * queues the item in the lane of its key in the stage, and waits while
+     * the lane is full
+     * @param String stage the name of the stage, started on its first item
+     * @param String key the key of the item, the items of a key are processed in order
+     * @param T item the item to process
+     * @param Worker<T> worker processes the item
+     */
+    public void submit(String stage, String key, T item, Worker<T> worker)
+        throws InterruptedException {
+
+        getStage(stage).submit(key, item, worker);
+    }
+
+    private Stage<T> getStage(String name) {
+
+        Stage<T> stage = stages.get(name);
+        if (stage == null) {
+            synchronized (this) {
+                if (stopped) {
+                    throw new IllegalStateException("the pipeline is shut down");
+                }
+                stage = stages.get(name);
+                if (stage == null) {
+                    stage = new Stage<T>(name, lanes, capacity, pending);
+                    stages.put(name, stage);
+                }
+            }
+        }
+        return stage;
+    }
+
+    /**
+     * method awaitIdle
+     * waits until every item submitted is processed
+     * @param long timeout the longest wait in milliseconds
+     * @return boolean false if items were still pending after the timeout
+     */
+    public boolean awaitIdle(long timeout) throws InterruptedException {
+
+        return pending.awaitZero(timeout);
+    }
+
+    /**
+     * @return Map<String, Stage<T>> the stages started, by name
+     */
+    public Map<String, Stage<T>> getStages() {
+
+        return new TreeMap<String, Stage<T>>(stages);
+    }
+
+    /**
+     * method shutdown
+     * stops the threads of the stages, to be used as the spring destroy-method
+     */
+    public synchronized void shutdown() {
+
+        stopped = true;
+        for (Stage<T> stage : stages.values()) {
+            stage.stop();
+        }
+        stages.clear();
+    }
+}
@@ -0,0 +1,301 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSPollScheduler
+ * runs the IPAWS poll cycles with an interval that adapts to the traffic. The
+ * interval grows by backoffFactor after each cycle that returned no messages,
+ * shrinks by the same factor after a cycle that returned messages, and drops
+ * to minInterval after a cycle that returned busyThreshold messages or more.
+ * The next cycle is only scheduled once the previous one is done, and
+ * runCycle skips a cycle if another one is still running, so cycles never
+ * overlap.
+ */
+public class IPAWSPollScheduler {
+
+    /**
+     * interface Cycle
+     * one poll cycle
+     */
+    public interface Cycle {
+
+        /**
+         * @return int the number of messages the cycle retrieved
+         */
+        public int run();
+    }
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private long minInterval = 15000L;
+    private long maxInterval = 300000L;
+    private long initialInterval = 60000L;
+    private double backoffFactor = 2.0;
+    private int busyThreshold = 100;
+
+    private volatile long currentInterval = -1;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final AtomicLong cycleCount = new AtomicLong();
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong totalCycleTime = new AtomicLong();
+    private volatile long lastCycleTime = 0;
+    private volatile long maxCycleTime = 0;
+    private volatile int lastMessageCount = 0;
+
+    private ScheduledExecutorService executor;
+
+    public long getMinInterval() {
+
+        return minInterval;
+    }
+
+    /**
+     * get/set the shortest interval between two cycles in milliseconds
+     */
+    public void setMinInterval(long minInterval) {
+
+        this.minInterval = minInterval;
+    }
+
+    public long getMaxInterval() {
+
+        return maxInterval;
+    }
+
+    /**
+     * get/set the longest interval between two cycles in milliseconds
+     */
+    public void setMaxInterval(long maxInterval) {
+
+        this.maxInterval = maxInterval;
+    }
+
+    public long getInitialInterval() {
+
+        return initialInterval;
+    }
+
+    public void setInitialInterval(long initialInterval) {
+
+        this.initialInterval = initialInterval;
+    }
+
+    public double getBackoffFactor() {
+
+        return backoffFactor;
+    }
+
+    public void setBackoffFactor(double backoffFactor) {
+
+        if (backoffFactor < 1.0) {
+            throw new IllegalArgumentException("backoffFactor must be at least 1: " + backoffFactor);
+        }
+        this.backoffFactor = backoffFactor;
+    }
+
+    public int getBusyThreshold() {
+
+        return busyThreshold;
+    }
+
+    /**
+     * get/set the number of messages in a cycle above which polling goes back
+     * to minInterval
+     */
+    public void setBusyThreshold(int busyThreshold) {
+
+        this.busyThreshold = busyThreshold;
+    }
+
+    /**
+     * @return long the interval in milliseconds before the next cycle
+     */
+    public long getCurrentInterval() {
+
+        return currentInterval < 0 ? clamp(initialInterval) : currentInterval;
+    }
+
+    public long getCycleCount() {
+
+        return cycleCount.get();
+    }
+
+    /**
+     * @return long the number of cycles skipped because the previous one was still running
+     */
+    public long getSkippedCount() {
+
+        return skippedCount.get();
+    }
+
+    /**
+     * @return long the duration of the last cycle in milliseconds
+     */
+    public long getLastCycleTime() {
+
+        return lastCycleTime;
+    }
+
+    public long getMaxCycleTime() {
+
+        return maxCycleTime;
+    }
+
+    public long getAverageCycleTime() {
+
+        long count = cycleCount.get();
+        return count == 0 ? 0 : totalCycleTime.get() / count;
+    }
+
+    public int getLastMessageCount() {
+
+        return lastMessageCount;
+    }
+
+    public boolean isRunning() {
+
+        return running.get();
+    }
+
+    /**
+     * method runCycle
+     * runs the cycle unless another cycle is still running, and adapts the interval
+     * @param Cycle cycle the poll cycle
+     * @return boolean true if the cycle ran, false if it was skipped
+     */
+    public boolean runCycle(Cycle cycle) {
+
+        if (!running.compareAndSet(false, true)) {
+            skippedCount.incrementAndGet();
+            log.info("Skipping IPAWS poll cycle, the previous cycle is still running");
+            return false;
+        }
+
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try {
+            count = cycle.run();
+        } catch (RuntimeException e) {
+            log.error("IPAWS poll cycle failed: " + e.getMessage());
+        } finally {
+            long time = System.currentTimeMillis() - start;
+            lastCycleTime = time;
+            if (time > maxCycleTime) {
+                maxCycleTime = time;
+            }
+            totalCycleTime.addAndGet(time);
+            cycleCount.incrementAndGet();
+            lastMessageCount = count;
+            adapt(count);
+            running.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * method start
+     * runs the first cycle right away and each following cycle the current
+     * interval after the end of the previous one
+     * @param Runnable firstCycle run once before the first cycle, may be null
+     * @param Cycle cycle the poll cycle
+     */
+    public synchronized void start(final Runnable firstCycle, final Cycle cycle) {
+
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, "ipaws-poll");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        final ScheduledExecutorService scheduler = executor;
+        scheduler.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (firstCycle != null) {
+                    try {
+                        firstCycle.run();
+                    } catch (RuntimeException e) {
+                        log.error("IPAWS first poll cycle failed: " + e.getMessage());
+                    }
+                }
+                scheduleNext(scheduler, cycle);
+            }
+        });
+    }
+
+    /**
+     * method stop
+     * stops scheduling cycles, to be used as the spring destroy-method
+     */
+    public synchronized void stop() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private void scheduleNext(final ScheduledExecutorService scheduler, final Cycle cycle) {
+
+        if (scheduler.isShutdown()) {
+            return;
+        }
+
+        try {
+            scheduler.schedule(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    runCycle(cycle);
+                    scheduleNext(scheduler, cycle);
+                }
+            }, getCurrentInterval(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped while the cycle was running
+        }
+    }
+
+    private void adapt(int count) {
+
+        long interval = getCurrentInterval();
+        if (count >= busyThreshold) {
+            interval = minInterval;
+        } else if (count > 0) {
+            interval = (long) (interval / backoffFactor);
+        } else {
+            interval = (long) (interval * backoffFactor);
+        }
+        currentInterval = clamp(interval);
+
+        log.debug("IPAWS poll cycle retrieved " + count + " messages in " + lastCycleTime +
+                  " ms, next cycle in " + currentInterval + " ms");
+    }
+
+    private long clamp(long interval) {
+
+        return Math.max(minInterval, Math.min(maxInterval, interval));
+    }
+}
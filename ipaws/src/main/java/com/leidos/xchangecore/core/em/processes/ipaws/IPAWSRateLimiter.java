@@ -0,0 +1,188 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * class IPAWSRateLimiter
+ * is a token bucket that limits how fast one class of operations is sent to
+ * IPAWS. The bucket holds up to capacity tokens and refills at rate tokens
+ * per second. A call finding the bucket empty reserves the next token and
+ * waits for it, unless that would take longer than maxWait, in which case
+ * it is throttled.
+ */
+public class IPAWSRateLimiter {
+
+    private double rate = 5.0;
+    private double capacity = 10.0;
+    private long maxWait = 10000L;
+
+    private double tokens = 0;
+    private long lastRefill = 0;
+    private boolean started = false;
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong queuedCount = new AtomicLong();
+    private final AtomicLong throttledCount = new AtomicLong();
+    private final AtomicLong queuedTime = new AtomicLong();
+
+    public IPAWSRateLimiter() {
+
+    }
+
+    /**
+     * @param double rate the number of calls allowed per second
+     * @param double capacity the number of calls allowed in a burst
+     * @param long maxWait the longest wait in milliseconds for a token
+     */
+    public IPAWSRateLimiter(double rate, double capacity, long maxWait) {
+
+        setRate(rate);
+        setCapacity(capacity);
+        setMaxWait(maxWait);
+    }
+
+    public double getRate() {
+
+        return rate;
+    }
+
+    /**
+     * get/set the number of calls allowed per second
+     */
+    public synchronized void setRate(double rate) {
+
+        if (rate <= 0) {
+            throw new IllegalArgumentException("rate must be positive: " + rate);
+        }
+        this.rate = rate;
+    }
+
+    public double getCapacity() {
+
+        return capacity;
+    }
+
+    /**
+     * get/set the number of calls allowed in a burst
+     */
+    public synchronized void setCapacity(double capacity) {
+
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.capacity = capacity;
+        if (tokens > capacity) {
+            tokens = capacity;
+        }
+    }
+
+    public long getMaxWait() {
+
+        return maxWait;
+    }
+
+    /**
+     * get/set the longest time in milliseconds a call waits for a token
+     * before it is throttled
+     */
+    public void setMaxWait(long maxWait) {
+
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * method acquire
+     * takes a token, waiting for it if the bucket is empty
+     * @return boolean true if the call may go on, false if it is throttled
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean acquire() throws InterruptedException {
+
+        long wait = reserve(System.nanoTime());
+        if (wait < 0) {
+            throttledCount.incrementAndGet();
+            return false;
+        }
+        if (wait > 0) {
+            queuedCount.incrementAndGet();
+            queuedTime.addAndGet(TimeUnit.NANOSECONDS.toMillis(wait));
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        acquiredCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * method reserve
+     * takes a token or reserves the next one to come
+     * @param long now the current time in nanoseconds
+     * @return long the wait in nanoseconds for the token, or -1 if it is longer than maxWait
+     */
+    synchronized long reserve(long now) {
+
+        if (!started) {
+            // a new bucket is full
+            tokens = capacity;
+            started = true;
+        } else {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * rate / 1.0e9);
+        }
+        lastRefill = now;
+
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+
+        long wait = (long) Math.ceil((1 - tokens) * 1.0e9 / rate);
+        if (wait > TimeUnit.MILLISECONDS.toNanos(maxWait)) {
+            return -1;
+        }
+        // the token is taken now so that the calls waiting are served in turn
+        tokens -= 1;
+        return wait;
+    }
+
+    /**
+     * @return long the number of calls let through
+     */
+    public long getAcquiredCount() {
+
+        return acquiredCount.get();
+    }
+
+    /**
+     * @return long the number of calls that waited for a token
+     */
+    public long getQueuedCount() {
+
+        return queuedCount.get();
+    }
+
+    /**
+     * @return long the number of calls refused because the wait was too long
+     */
+    public long getThrottledCount() {
+
+        return throttledCount.get();
+    }
+
+    /**
+     * @return long the total time in milliseconds the calls waited for a token
+     */
+    public long getQueuedTime() {
+
+        return queuedTime.get();
+    }
+
+    public String toString() {
+
+        StringBuffer buf = new StringBuffer("rate:");
+        buf.append(rate).append("/s, capacity:").append(capacity);
+        buf.append(", acquired:").append(acquiredCount.get());
+        buf.append(", queued:").append(queuedCount.get());
+        buf.append(", throttled:").append(throttledCount.get());
+        return buf.toString();
+    }
+}
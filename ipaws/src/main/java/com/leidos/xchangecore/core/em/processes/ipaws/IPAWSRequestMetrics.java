@@ -0,0 +1,156 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * class IPAWSRequestMetrics
+ * is the in-memory IPAWSMetricsRegistry: for each operation a latency
+ * histogram, the request and response bytes, the faults, the errors and the
+ * requests in flight.
+ */
+public class IPAWSRequestMetrics
+    implements IPAWSMetricsRegistry {
+
+    /**
+     * class Stats
+     * holds the measures of one operation
+     */
+    public static class Stats {
+
+        private final IPAWSLatencyHistogram latency = new IPAWSLatencyHistogram();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong faultCount = new AtomicLong();
+        private final AtomicLong errorCount = new AtomicLong();
+        private final AtomicLong requestBytes = new AtomicLong();
+        private final AtomicLong responseBytes = new AtomicLong();
+
+        public IPAWSLatencyHistogram getLatency() {
+
+            return latency;
+        }
+
+        public int getInFlight() {
+
+            return inFlight.get();
+        }
+
+        public long getCount() {
+
+            return latency.getCount();
+        }
+
+        public long getFaultCount() {
+
+            return faultCount.get();
+        }
+
+        public long getErrorCount() {
+
+            return errorCount.get();
+        }
+
+        /**
+         * @return long the bytes sent, for the requests whose size was known
+         */
+        public long getRequestBytes() {
+
+            return requestBytes.get();
+        }
+
+        /**
+         * @return long the bytes received, for the responses whose size was known
+         */
+        public long getResponseBytes() {
+
+            return responseBytes.get();
+        }
+
+        public String toString() {
+
+            StringBuffer buf = new StringBuffer(latency.toString());
+            buf.append(", inFlight:").append(getInFlight());
+            buf.append(", faults:").append(getFaultCount());
+            buf.append(", errors:").append(getErrorCount());
+            buf.append(", sent:").append(getRequestBytes()).append("B");
+            buf.append(", received:").append(getResponseBytes()).append("B");
+            return buf.toString();
+        }
+    }
+
+    private final ConcurrentMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+    @Override
+    public void requestStarted(String operation) {
+
+        getOrCreateStats(operation).inFlight.incrementAndGet();
+    }
+
+    @Override
+    public void requestCompleted(String operation,
+                                 long latency,
+                                 long requestBytes,
+                                 long responseBytes,
+                                 Outcome outcome) {
+
+        Stats operationStats = getOrCreateStats(operation);
+        operationStats.inFlight.decrementAndGet();
+        operationStats.latency.record(latency);
+        if (requestBytes > 0) {
+            operationStats.requestBytes.addAndGet(requestBytes);
+        }
+        if (responseBytes > 0) {
+            operationStats.responseBytes.addAndGet(responseBytes);
+        }
+        if (outcome == Outcome.FAULT) {
+            operationStats.faultCount.incrementAndGet();
+        } else if (outcome == Outcome.ERROR) {
+            operationStats.errorCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Stats the measures of the operation, or null if it was never sent
+     */
+    public Stats getStats(String operation) {
+
+        return stats.get(operation);
+    }
+
+    /**
+     * @return List<String> the operations sent, sorted
+     */
+    public List<String> getOperations() {
+
+        List<String> operations = new ArrayList<String>(stats.keySet());
+        Collections.sort(operations);
+        return operations;
+    }
+
+    private Stats getOrCreateStats(String operation) {
+
+        Stats operationStats = stats.get(operation);
+        if (operationStats == null) {
+            Stats created = new Stats();
+            operationStats = stats.putIfAbsent(operation, created);
+            if (operationStats == null) {
+                operationStats = created;
+            }
+        }
+        return operationStats;
+    }
+
+    public String toString() {
+
+        StringBuffer buf = new StringBuffer();
+        for (String operation : getOperations()) {
+            buf.append(operation).append(": ").append(stats.get(operation)).append("\n");
+        }
+        return buf.toString();
+    }
+}
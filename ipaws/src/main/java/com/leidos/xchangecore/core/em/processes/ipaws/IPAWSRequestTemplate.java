@@ -0,0 +1,222 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import javax.xml.namespace.QName;
+
+import org.apache.xmlbeans.SchemaProperty;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlObject;
+
+/**
+ * class IPAWSRequestTemplate
+ * holds a request document built once with everything but its variable
+ * parameter values, such as a time or a COG id. A request is a copy of the
+ * prebuilt document with the values filled in, which skips building the
+ * document element by element through the generated types on each poll.
+ * A template without values hands out the prebuilt document itself, which
+ * must therefore never be modified.
+ * newParameterTemplate builds the getRequest and getMessage templates of the
+ * CAP and of the EDXL-DE services alike, their request parameter lists only
+ * differing by namespace.
+ */
+public class IPAWSRequestTemplate<T extends XmlObject> {
+
+    /**
+     * interface Binder
+     * fills the values into a copy of the prebuilt document
+     */
+    public interface Binder<T> {
+
+        public void bind(T request, String[] values);
+    }
+
+    /**
+     * inner class ParameterBinder
+     * fills the values into the parameterValue of each parameter that has
+     * one, in the order of the parameters
+     */
+    public static class ParameterBinder<T extends XmlObject>
+        implements Binder<T> {
+
+        @Override
+        public void bind(T request, String[] values) {
+
+            int i = 0;
+            XmlCursor c = request.newCursor();
+            try {
+                if (c.toFirstChild() && c.toFirstChild()) {
+                    do {
+                        if (i < values.length && PARAMETERS.equals(c.getName().getLocalPart())) {
+                            c.push();
+                            if (toChild(c, PARAMETER_VALUE)) {
+                                c.setTextValue(values[i++]);
+                            }
+                            c.pop();
+                        }
+                    } while (c.toNextSibling());
+                }
+            } finally {
+                c.dispose();
+            }
+        }
+    }
+
+    private static final String REQUEST_API = "requestAPI";
+    private static final String REQUEST_OPERATION = "requestOperation";
+    private static final String PARAMETERS = "parameters";
+    private static final String PARAMETER_NAME = "parameterName";
+    private static final String COMPARISON_OP = "comparisonOp";
+    private static final String PARAMETER_VALUE = "parameterValue";
+
+    private final T prototype;
+    private final int valueCount;
+    private final Binder<T> binder;
+
+    /**
+     * @param T prototype the complete request, shared by every caller
+     */
+    public IPAWSRequestTemplate(T prototype) {
+
+        this(prototype, 0, null);
+    }
+
+    /**
+     * @param T prototype the request with a placeholder for each value
+     * @param int valueCount the number of values of a request
+     * @param Binder<T> binder fills the values into a copy of the prototype
+     */
+    public IPAWSRequestTemplate(T prototype, int valueCount, Binder<T> binder) {
+
+        if (prototype == null) {
+            throw new IllegalArgumentException("the prototype is null");
+        }
+        if (valueCount > 0 && binder == null) {
+            throw new IllegalArgumentException("a binder is needed to fill " + valueCount +
+                                               " values");
+        }
+        this.prototype = prototype;
+        this.valueCount = valueCount;
+        this.binder = binder;
+    }
+
+    public int getValueCount() {
+
+        return valueCount;
+    }
+
+    /**
+     * method newRequest
+     * @param String... values the values of the parameters, in the order of the placeholders
+     * @return T the request, the shared prebuilt document if the template has no values
+     */
+    @SuppressWarnings("unchecked")
+    public T newRequest(String... values) {
+
+        int count = values == null ? 0 : values.length;
+        if (count != valueCount) {
+            throw new IllegalArgumentException("expected " + valueCount + " values but got " +
+                                               count);
+        }
+        if (valueCount == 0) {
+            return prototype;
+        }
+
+        T request = (T) prototype.copy();
+        binder.bind(request, values);
+        return request;
+    }
+
+    /**
+     * method newParameterTemplate
+     * builds the template of an IPAWS getRequest or getMessage request
+     * @param T document the empty request document, or one holding only its document element
+     * @param String api the request API
+     * @param String operation the request operation
+     * @param String... parameters the name and the comparison of each
+     *        parameter in turn, a null comparison for a parameter without value
+     * @return IPAWSRequestTemplate<T> the template, whose requests take one
+     *         value per parameter with a comparison
+     */
+    public static <T extends XmlObject> IPAWSRequestTemplate<T> newParameterTemplate(T document,
+                                                                                   String api,
+                                                                                   String operation,
+                                                                                   String... parameters) {
+
+        int valueCount = 0;
+        XmlCursor c = document.newCursor();
+        try {
+            // the element names are read off the schema type of the
+            // document, with the namespace of the parent as a fallback
+            SchemaType listType;
+            QName listName;
+            if (c.toFirstChild()) {
+                listName = c.getName();
+                listType = c.getObject().schemaType();
+                c.toEndToken();
+            } else {
+                listName = document.schemaType().getDocumentElementName();
+                listType = childType(document.schemaType(), listName);
+                c.toEndToken();
+                c.beginElement(listName);
+            }
+
+            c.insertElementWithText(childName(listType, listName, REQUEST_API), api);
+            c.insertElementWithText(childName(listType, listName, REQUEST_OPERATION), operation);
+
+            QName parametersName = childName(listType, listName, PARAMETERS);
+            SchemaType parametersType = childType(listType, parametersName);
+            for (int i = 0; i < parameters.length; i += 2) {
+                c.beginElement(parametersName);
+                c.insertElementWithText(childName(parametersType, parametersName, PARAMETER_NAME),
+                    parameters[i]);
+                if (parameters[i + 1] != null) {
+                    c.insertElementWithText(childName(parametersType,
+                        parametersName,
+                        COMPARISON_OP), parameters[i + 1]);
+                    c.insertElementWithText(childName(parametersType,
+                        parametersName,
+                        PARAMETER_VALUE), "");
+                    valueCount++;
+                }
+                c.toNextToken();
+            }
+        } finally {
+            c.dispose();
+        }
+
+        if (valueCount == 0) {
+            return new IPAWSRequestTemplate<T>(document);
+        }
+        return new IPAWSRequestTemplate<T>(document, valueCount, new ParameterBinder<T>());
+    }
+
+    private static QName childName(SchemaType type, QName parentName, String localName) {
+
+        if (type != null) {
+            for (SchemaProperty property : type.getElementProperties()) {
+                if (localName.equals(property.getName().getLocalPart())) {
+                    return property.getName();
+                }
+            }
+        }
+        return new QName(parentName.getNamespaceURI(), localName);
+    }
+
+    private static SchemaType childType(SchemaType type, QName name) {
+
+        SchemaProperty property = type == null ? null : type.getElementProperty(name);
+        return property == null ? null : property.getType();
+    }
+
+    private static boolean toChild(XmlCursor c, String localName) {
+
+        if (c.toFirstChild()) {
+            do {
+                if (localName.equals(c.getName().getLocalPart())) {
+                    return true;
+                }
+            } while (c.toNextSibling());
+        }
+        return false;
+    }
+}
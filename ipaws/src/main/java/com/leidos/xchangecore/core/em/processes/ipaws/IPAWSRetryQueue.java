@@ -0,0 +1,516 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * class IPAWSRetryQueue
+ * keeps the messages that could not be processed in a local directory, one
+ * file per message with its full payload, and retries them on a worker thread
+ * of its own so the poll cycle is never blocked. Each failed attempt doubles
+ * the delay before the next one, with some jitter so that a burst of failures
+ * is not retried all at once, as computed by IPAWSBackoff. A message that ran out of attempts is moved to
+ * the dead directory, where it can be inspected and put back with
+ * replayDeadLetters. The files are written the same way as the checkpoint, so
+ * the queue survives a restart.
+ */
+public class IPAWSRetryQueue<T> {
+
+    /**
+     * interface Codec
+     * turns a message into the text stored in the queue file and back
+     */
+    public interface Codec<T> {
+
+        public String encode(T message);
+
+        public T decode(String text) throws Exception;
+    }
+
+    /**
+     * interface Handler
+     * processes one message taken off the queue
+     */
+    public interface Handler<T> {
+
+        /**
+         * @return boolean true if the message was processed and can be removed from the queue
+         */
+        public boolean process(String id, T message);
+    }
+
+    private static final String ENTRY_SUFFIX = ".retry";
+    private static final String DEAD_DIRECTORY = "dead";
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private String queueDirectory = "ipaws-retry";
+    private int maxAttempts = 8;
+    private final IPAWSBackoff backoff = new IPAWSBackoff(30000L, 3600000L, 0.2);
+    private long pollInterval = 5000L;
+
+    private Codec<T> codec;
+    private Handler<T> handler;
+
+    // id -> time of the next attempt, the payloads stay on disk
+    private final Map<String, Long> due = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong retriedCount = new AtomicLong();
+    private final AtomicLong deadCount = new AtomicLong();
+
+    private ScheduledExecutorService executor;
+    private boolean loaded = false;
+
+    public String getQueueDirectory() {
+
+        return queueDirectory;
+    }
+
+    public void setQueueDirectory(String queueDirectory) {
+
+        this.queueDirectory = queueDirectory;
+    }
+
+    public int getMaxAttempts() {
+
+        return maxAttempts;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+
+        if (maxAttempts <= 0) {
+            throw new IllegalArgumentException("maxAttempts must be positive: " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * get/set the delay in milliseconds before the first retry, it doubles
+     * with each further attempt up to maxDelay
+     */
+    public long getInitialDelay() {
+
+        return backoff.getInitialDelay();
+    }
+
+    public void setInitialDelay(long initialDelay) {
+
+        backoff.setInitialDelay(initialDelay);
+    }
+
+    public long getMaxDelay() {
+
+        return backoff.getMaxDelay();
+    }
+
+    public void setMaxDelay(long maxDelay) {
+
+        backoff.setMaxDelay(maxDelay);
+    }
+
+    public double getJitter() {
+
+        return backoff.getJitter();
+    }
+
+    /**
+     * set the part of the delay that is random, 0.2 spreads the retries over
+     * plus or minus 20% of the delay
+     */
+    public void setJitter(double jitter) {
+
+        backoff.setJitter(jitter);
+    }
+
+    public long getPollInterval() {
+
+        return pollInterval;
+    }
+
+    public void setPollInterval(long pollInterval) {
+
+        this.pollInterval = pollInterval;
+    }
+
+    public void setCodec(Codec<T> codec) {
+
+        this.codec = codec;
+    }
+
+    public void setHandler(Handler<T> handler) {
+
+        this.handler = handler;
+    }
+
+    /**
+     * @return int the number of messages waiting to be retried
+     */
+    public int size() {
+
+        load();
+        return due.size();
+    }
+
+    public boolean contains(String id) {
+
+        load();
+        return due.containsKey(id);
+    }
+
+    /**
+     * @return long the number of retries attempted since the start
+     */
+    public long getRetriedCount() {
+
+        return retriedCount.get();
+    }
+
+    /**
+     * @return long the number of messages moved to the dead directory since the start
+     */
+    public long getDeadCount() {
+
+        return deadCount.get();
+    }
+
+    /**
+     * method add
+     * stores the message to be retried after the initial delay. A message
+     * already in the queue is replaced and keeps its attempts.
+     * @param String id the id of the message
+     * @param T message the message
+     * @return boolean true if the message was stored
+     */
+    public synchronized boolean add(String id, T message) {
+
+        load();
+
+        Properties entry = readEntry(entryFile(getQueueDir(), id));
+        int attempts = entry == null ? 0 : Integer.parseInt(entry.getProperty("attempts", "0"));
+        long nextAttempt = System.currentTimeMillis() + backoff.delay(attempts + 1);
+
+        Properties newEntry = new Properties();
+        newEntry.setProperty("id", id);
+        newEntry.setProperty("attempts", Integer.toString(attempts));
+        newEntry.setProperty("nextAttempt", Long.toString(nextAttempt));
+        newEntry.setProperty("payload", codec.encode(message));
+        try {
+            writeEntry(entryFile(getQueueDir(), id), newEntry);
+        } catch (IOException e) {
+            log.error("Unable to queue " + id + " for retry: " + e.getMessage());
+            return false;
+        }
+        due.put(id, Long.valueOf(nextAttempt));
+
+        log.info("Queued " + id + " for retry, " + due.size() + " in the retry queue");
+        start();
+        return true;
+    }
+
+    /**
+     * method remove
+     * removes the message from the queue, when it was processed by other means
+     */
+    public synchronized void remove(String id) {
+
+        load();
+        if (due.remove(id) != null) {
+            entryFile(getQueueDir(), id).delete();
+        }
+    }
+
+    /**
+     * method start
+     * starts the worker, to be used as the spring init-method. It is started
+     * on the first add as well.
+     */
+    public synchronized void start() {
+
+        if (executor != null) {
+            return;
+        }
+
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+
+                Thread thread = new Thread(r, "ipaws-retry");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+                    retryDue();
+                } catch (RuntimeException e) {
+                    log.error("IPAWS retry failed: " + e.getMessage());
+                }
+            }
+        }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * method stop
+     * stops the worker, to be used as the spring destroy-method
+     */
+    public synchronized void stop() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * method retryDue
+     * retries the messages whose next attempt is due
+     * @return int the number of messages processed
+     */
+    public int retryDue() {
+
+        load();
+
+        long now = System.currentTimeMillis();
+        List<String> ids = new ArrayList<String>();
+        for (Map.Entry<String, Long> entry : due.entrySet()) {
+            if (entry.getValue().longValue() <= now) {
+                ids.add(entry.getKey());
+            }
+        }
+
+        int processed = 0;
+        for (String id : ids) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            if (retry(id)) {
+                processed++;
+            }
+        }
+        return processed;
+    }
+
+    private boolean retry(String id) {
+
+        File file = entryFile(getQueueDir(), id);
+        Properties entry = readEntry(file);
+        if (entry == null) {
+            due.remove(id);
+            return false;
+        }
+
+        int attempts = Integer.parseInt(entry.getProperty("attempts", "0")) + 1;
+        retriedCount.incrementAndGet();
+
+        String error = null;
+        try {
+            T message = codec.decode(entry.getProperty("payload", ""));
+            if (handler.process(id, message)) {
+                synchronized (this) {
+                    due.remove(id);
+                    file.delete();
+                }
+                log.info("Processed " + id + " on retry " + attempts);
+                return true;
+            }
+            error = "not processed";
+        } catch (Exception e) {
+            error = e.getMessage();
+        }
+
+        synchronized (this) {
+            if (!due.containsKey(id)) {
+                // removed while it was being retried
+                return false;
+            }
+
+            entry.setProperty("attempts", Integer.toString(attempts));
+            entry.setProperty("lastError", String.valueOf(error));
+            try {
+                if (attempts >= maxAttempts) {
+                    File deadDir = new File(getQueueDir(), DEAD_DIRECTORY);
+                    writeEntry(entryFile(deadDir, id), entry);
+                    file.delete();
+                    due.remove(id);
+                    deadCount.incrementAndGet();
+                    log.error("Giving up on " + id + " after " + attempts + " attempts: " + error);
+                } else {
+                    long nextAttempt = System.currentTimeMillis() + backoff.delay(attempts + 1);
+                    entry.setProperty("nextAttempt", Long.toString(nextAttempt));
+                    writeEntry(file, entry);
+                    due.put(id, Long.valueOf(nextAttempt));
+                    log.info("Retry " + attempts + " of " + id + " failed: " + error);
+                }
+            } catch (IOException e) {
+                log.error("Unable to update the retry of " + id + ": " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * method getDeadLetters
+     * @return List<String> the ids of the messages in the dead directory
+     */
+    public synchronized List<String> getDeadLetters() {
+
+        List<String> ids = new ArrayList<String>();
+        File[] files = new File(getQueueDir(), DEAD_DIRECTORY).listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Properties entry = file.getName().endsWith(ENTRY_SUFFIX) ? readEntry(file) : null;
+                if (entry != null) {
+                    ids.add(entry.getProperty("id"));
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * method replayDeadLetters
+     * puts the messages of the dead directory back in the queue with their
+     * attempts reset, to be retried right away
+     * @return int the number of messages put back
+     */
+    public synchronized int replayDeadLetters() {
+
+        load();
+
+        int count = 0;
+        File[] files = new File(getQueueDir(), DEAD_DIRECTORY).listFiles();
+        if (files == null) {
+            return 0;
+        }
+        for (File file : files) {
+            Properties entry = file.getName().endsWith(ENTRY_SUFFIX) ? readEntry(file) : null;
+            if (entry == null) {
+                continue;
+            }
+            String id = entry.getProperty("id");
+            entry.setProperty("attempts", "0");
+            entry.setProperty("nextAttempt", Long.toString(System.currentTimeMillis()));
+            entry.remove("lastError");
+            try {
+                writeEntry(entryFile(getQueueDir(), id), entry);
+                file.delete();
+                due.put(id, Long.valueOf(System.currentTimeMillis()));
+                count++;
+            } catch (IOException e) {
+                log.error("Unable to replay " + id + ": " + e.getMessage());
+            }
+        }
+
+        if (count > 0) {
+            log.info("Replaying " + count + " messages from the dead directory");
+            start();
+        }
+        return count;
+    }
+
+    private synchronized void load() {
+
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+
+        File[] files = getQueueDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.isFile() || !file.getName().endsWith(ENTRY_SUFFIX)) {
+                continue;
+            }
+            Properties entry = readEntry(file);
+            if (entry == null || entry.getProperty("id") == null) {
+                continue;
+            }
+            try {
+                due.put(entry.getProperty("id"), Long.valueOf(entry.getProperty("nextAttempt", "0")));
+            } catch (NumberFormatException e) {
+                due.put(entry.getProperty("id"), Long.valueOf(0));
+            }
+        }
+        if (!due.isEmpty()) {
+            log.info("Loaded " + due.size() + " messages to retry from " +
+                     getQueueDir().getAbsolutePath());
+        }
+    }
+
+    private File getQueueDir() {
+
+        return new File(queueDirectory);
+    }
+
+    private static File entryFile(File dir, String id) {
+
+        try {
+            return new File(dir, URLEncoder.encode(id, "UTF-8") + ENTRY_SUFFIX);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private Properties readEntry(File file) {
+
+        if (!file.exists()) {
+            return null;
+        }
+
+        Properties entry = new Properties();
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            entry.load(in);
+            return entry;
+        } catch (IOException e) {
+            log.error("Unable to read retry entry " + file + ": " + e.getMessage());
+        } finally {
+            IPAWSFiles.closeQuietly(in);
+        }
+        return null;
+    }
+
+    private static void writeEntry(File file, Properties entry) throws IOException {
+
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+
+        FileOutputStream out = new FileOutputStream(tmpFile);
+        try {
+            entry.store(out, "IPAWS retry entry");
+            out.flush();
+            out.getFD().sync();
+        } finally {
+            IPAWSFiles.closeQuietly(out);
+        }
+
+        IPAWSFiles.replace(tmpFile, file);
+    }
+}
@@ -1,12 +1,43 @@
 package com.leidos.xchangecore.core.em.processes.ipaws;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+import javax.xml.transform.Source;
+import javax.xml.transform.TransformerException;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.xmlbeans.SchemaType;
+import org.apache.xmlbeans.XmlCursor;
 import org.apache.xmlbeans.XmlObject;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.springframework.oxm.Marshaller;
+import org.springframework.oxm.Unmarshaller;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.client.core.WebServiceMessageCallback;
+import org.springframework.ws.client.core.WebServiceMessageExtractor;
 import org.springframework.ws.client.core.WebServiceOperations;
 import org.springframework.ws.client.core.WebServiceTemplate;
+import org.springframework.ws.soap.client.SoapFaultClientException;
+import org.springframework.ws.transport.WebServiceConnection;
+import org.springframework.ws.transport.context.TransportContext;
+import org.springframework.ws.transport.context.TransportContextHolder;
+import org.springframework.ws.transport.http.HttpComponentsConnection;
 
 /**
  * class IPAWSSpringClient
@@ -15,10 +46,26 @@ import org.springframework.ws.client.core.WebServiceTemplate;
 public class IPAWSSpringClient
     implements WebServiceClient {
 
+    // the classes of operations rate limited apart
+    public static final String ACK_OPERATIONS = "ack";
+    public static final String QUERY_OPERATIONS = "query";
+    public static final String POST_OPERATIONS = "post";
+
     private Logger log = LoggerFactory.getLogger(this.getClass());
     private String URI = "";
     protected WebServiceOperations webServiceTemplate;
 
+    private ExecutorService asyncExecutor;
+    private boolean ownAsyncExecutor = false;
+    private int asyncConcurrency = 8;
+    private long requestTimeout = 0;
+    private Map<String, Long> operationTimeouts = new HashMap<String, Long>();
+    private ScheduledExecutorService timeoutScheduler;
+    private Map<String, IPAWSRateLimiter> rateLimiters = newRateLimiters();
+    private IPAWSCircuitBreaker circuitBreaker = new IPAWSCircuitBreaker();
+    private IPAWSMetricsRegistry metricsRegistry = null;
+    private IPAWSHealthCheck healthCheck = new IPAWSHealthCheck();
+
     /**
      * get/set webServiceTemplate from context
      */
@@ -32,6 +79,153 @@ public class IPAWSSpringClient
         return webServiceTemplate;
     }
 
+    public ExecutorService getAsyncExecutor() {
+
+        return asyncExecutor;
+    }
+
+    /**
+     * set the executor the asynchronous requests run on, for instance one
+     * creating a virtual thread per task on a runtime that has them. By
+     * default a pool of asyncConcurrency daemon threads is used.
+     */
+    public synchronized void setAsyncExecutor(ExecutorService asyncExecutor) {
+
+        this.asyncExecutor = asyncExecutor;
+        this.ownAsyncExecutor = false;
+    }
+
+    public int getAsyncConcurrency() {
+
+        return asyncConcurrency;
+    }
+
+    public void setAsyncConcurrency(int asyncConcurrency) {
+
+        if (asyncConcurrency <= 0) {
+            throw new IllegalArgumentException("asyncConcurrency must be positive: " +
+                                               asyncConcurrency);
+        }
+        this.asyncConcurrency = asyncConcurrency;
+    }
+
+    public long getRequestTimeout() {
+
+        return requestTimeout;
+    }
+
+    /**
+     * get/set the timeout in milliseconds of the asynchronous requests, 0 for
+     * no timeout
+     */
+    public void setRequestTimeout(long requestTimeout) {
+
+        this.requestTimeout = requestTimeout;
+    }
+
+    public Map<String, Long> getOperationTimeouts() {
+
+        return operationTimeouts;
+    }
+
+    /**
+     * set the timeouts in milliseconds of the asynchronous requests by the
+     * local name of their document element, such as getMessageTypeDef, which
+     * take precedence over requestTimeout
+     */
+    public void setOperationTimeouts(Map<String, Long> operationTimeouts) {
+
+        this.operationTimeouts = operationTimeouts;
+    }
+
+    public IPAWSCircuitBreaker getCircuitBreaker() {
+
+        return circuitBreaker;
+    }
+
+    /**
+     * get/set the circuit breaker that refuses the requests while IPAWS is
+     * down, null to always send them
+     */
+    public void setCircuitBreaker(IPAWSCircuitBreaker circuitBreaker) {
+
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public IPAWSMetricsRegistry getMetricsRegistry() {
+
+        return metricsRegistry;
+    }
+
+    /**
+     * get/set the registry the requests are measured into, such as an
+     * IPAWSRequestMetrics. By default it is null and nothing is measured.
+     */
+    public void setMetricsRegistry(IPAWSMetricsRegistry metricsRegistry) {
+
+        this.metricsRegistry = metricsRegistry;
+    }
+
+    public IPAWSHealthCheck getHealthCheck() {
+
+        return healthCheck;
+    }
+
+    /**
+     * get/set the health check the outcome of the requests is reported to,
+     * a response or a SOAP fault being a proof of liveness. The getACK
+     * requests are left to the health check probing with them. IPAWSCap and
+     * IPAWSEdxl share the health check of their client, null reports nothing.
+     */
+    public void setHealthCheck(IPAWSHealthCheck healthCheck) {
+
+        this.healthCheck = healthCheck;
+    }
+
+    public Map<String, IPAWSRateLimiter> getRateLimiters() {
+
+        return rateLimiters;
+    }
+
+    /**
+     * set the rate limiters keyed by operation class: ack, query or post.
+     * A class without a limiter is not limited, null turns rate limiting off.
+     */
+    public void setRateLimiters(Map<String, IPAWSRateLimiter> rateLimiters) {
+
+        this.rateLimiters = rateLimiters;
+    }
+
+    /**
+     * @return long the number of requests that waited to be sent
+     */
+    public long getQueuedCount() {
+
+        long count = 0;
+        Map<String, IPAWSRateLimiter> limiters = rateLimiters;
+        if (limiters != null) {
+            for (IPAWSRateLimiter limiter : limiters.values()) {
+                count += limiter.getQueuedCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return long the number of requests not sent because of the rate limits
+     */
+    public long getThrottledCount() {
+
+        long count = 0;
+        Map<String, IPAWSRateLimiter> limiters = rateLimiters;
+        if (limiters != null) {
+            for (IPAWSRateLimiter limiter : limiters.values()) {
+                count += limiter.getThrottledCount();
+            }
+        }
+        return count;
+    }
+
     /**
      * get/set URI
      */
@@ -63,6 +257,8 @@ public class IPAWSSpringClient
      * sends and receives messages from IPAWS-OPEN
      * @param XmlObject request the XmlObject request to be sent to IPAWS
      * @return XmlObject the XmlObject response from IPAWS 
+     * @throws IPAWSUnavailableException if the circuit breaker is open
+     * @throws IPAWSThrottledException if the rate limiter did not let the request through
      */
     public XmlObject sendRequest(XmlObject request) {
 
@@ -76,8 +272,495 @@ public class IPAWSSpringClient
             return null;
         }
 
-        XmlObject response = (XmlObject) webServiceTemplate.marshalSendAndReceive(request);
-        return response;
+        if (metricsRegistry != null) {
+            // the response is read by an extractor, which sees the transport to measure it
+            final Unmarshaller unmarshaller = ((WebServiceTemplate) webServiceTemplate).getUnmarshaller();
+            return sendRequest(request, new WebServiceMessageExtractor<XmlObject>() {
+
+                @Override
+                public XmlObject extractData(WebServiceMessage message) throws IOException {
+
+                    Source payload = message.getPayloadSource();
+                    return payload == null ? null : (XmlObject) unmarshaller.unmarshal(payload);
+                }
+            });
+        }
+
+        IPAWSCircuitBreaker breaker = allowRequest(request);
+        try {
+            acquire(request);
+        } catch (IPAWSThrottledException e) {
+            if (breaker != null) {
+                breaker.release();
+            }
+            throw e;
+        }
+
+        IPAWSHealthCheck health = getHealthCheck(request);
+        try {
+            XmlObject response = (XmlObject) webServiceTemplate.marshalSendAndReceive(request);
+            recordSuccess(breaker, health);
+            return response;
+        } catch (SoapFaultClientException e) {
+            // IPAWS answered with a fault, so it is up
+            recordSuccess(breaker, health);
+            throw e;
+        } catch (RuntimeException e) {
+            recordFailure(breaker, health);
+            throw e;
+        }
+    }
+
+    /**
+     * method sendRequest
+     * sends a request to IPAWS-OPEN and lets the extractor read the response
+     * payload directly, without unmarshalling it into an XmlObject first
+     * @param XmlObject request the XmlObject request to be sent to IPAWS
+     * @param WebServiceMessageExtractor<T> extractor reads the response
+     * @return T the value returned by the extractor
+     * @throws IPAWSUnavailableException if the circuit breaker is open
+     * @throws IPAWSThrottledException if the rate limiter did not let the request through
+     */
+    public <T> T sendRequest(final XmlObject request, WebServiceMessageExtractor<T> extractor) {
+
+        if (webServiceTemplate == null) {
+            log.error("webServiceTemplate is null");
+            return null;
+        }
+
+        if (request == null) {
+            log.error("sendRequest failed : the request is null");
+            return null;
+        }
+
+        IPAWSCircuitBreaker breaker = allowRequest(request);
+        try {
+            acquire(request);
+        } catch (IPAWSThrottledException e) {
+            if (breaker != null) {
+                breaker.release();
+            }
+            throw e;
+        }
+
+        Measure measure = null;
+        IPAWSMetricsRegistry metrics = metricsRegistry;
+        if (metrics != null) {
+            measure = new Measure(metrics, getMetricsKey(request));
+            extractor = measure.wrap(extractor);
+        }
+
+        IPAWSHealthCheck health = getHealthCheck(request);
+        final Marshaller marshaller = ((WebServiceTemplate) webServiceTemplate).getMarshaller();
+        try {
+            T result = webServiceTemplate.sendAndReceive(new WebServiceMessageCallback() {
+
+                @Override
+                public void doWithMessage(WebServiceMessage message) throws IOException {
+
+                    marshaller.marshal(request, message.getPayloadResult());
+                }
+            }, extractor);
+            recordSuccess(breaker, health);
+            complete(measure, IPAWSMetricsRegistry.Outcome.SUCCESS);
+            return result;
+        } catch (SoapFaultClientException e) {
+            recordSuccess(breaker, health);
+            complete(measure, IPAWSMetricsRegistry.Outcome.FAULT);
+            throw e;
+        } catch (RuntimeException e) {
+            recordFailure(breaker, health);
+            complete(measure, IPAWSMetricsRegistry.Outcome.ERROR);
+            throw e;
+        }
+    }
+
+    /**
+     * class Measure
+     * times one request and reads its sizes off the HTTP transport
+     */
+    private static class Measure {
+
+        private final IPAWSMetricsRegistry metrics;
+        private final String operation;
+        private final long start;
+        private long requestBytes = -1;
+        private long responseBytes = -1;
+
+        Measure(IPAWSMetricsRegistry metrics, String operation) {
+
+            this.metrics = metrics;
+            this.operation = operation;
+            metrics.requestStarted(operation);
+            this.start = System.nanoTime();
+        }
+
+        <T> WebServiceMessageExtractor<T> wrap(final WebServiceMessageExtractor<T> extractor) {
+
+            return new WebServiceMessageExtractor<T>() {
+
+                @Override
+                public T extractData(WebServiceMessage message)
+                    throws IOException, TransformerException {
+
+                    readSizes();
+                    return extractor.extractData(message);
+                }
+            };
+        }
+
+        private void readSizes() {
+
+            TransportContext context = TransportContextHolder.getTransportContext();
+            WebServiceConnection connection = context == null ? null : context.getConnection();
+            if (connection instanceof HttpComponentsConnection) {
+                HttpComponentsConnection httpConnection = (HttpComponentsConnection) connection;
+                HttpEntity entity = httpConnection.getHttpPost().getEntity();
+                if (entity != null) {
+                    requestBytes = entity.getContentLength();
+                }
+                HttpResponse response = httpConnection.getHttpResponse();
+                if (response != null && response.getEntity() != null) {
+                    responseBytes = response.getEntity().getContentLength();
+                }
+            }
+        }
+
+        void complete(IPAWSMetricsRegistry.Outcome outcome) {
+
+            metrics.requestCompleted(operation,
+                System.nanoTime() - start,
+                requestBytes,
+                responseBytes,
+                outcome);
+        }
+    }
+
+    private static void complete(Measure measure, IPAWSMetricsRegistry.Outcome outcome) {
+
+        if (measure != null) {
+            measure.complete(outcome);
+        }
+    }
+
+    /**
+     * method allowRequest
+     * @return IPAWSCircuitBreaker the circuit breaker to report the outcome to, or null if none
+     * @throws IPAWSUnavailableException if the circuit breaker is open
+     */
+    private IPAWSCircuitBreaker allowRequest(XmlObject request) {
+
+        IPAWSCircuitBreaker breaker = circuitBreaker;
+        if (breaker != null && !breaker.allowRequest()) {
+            throw new IPAWSUnavailableException("IPAWS is unavailable, " + getOperation(request) +
+                                                " not sent",
+                breaker.getState());
+        }
+        return breaker;
+    }
+
+    /**
+     * method getHealthCheck
+     * @return IPAWSHealthCheck the health check to report the outcome of the
+     *         request to, or null for a getACK or if there is none
+     */
+    private IPAWSHealthCheck getHealthCheck(XmlObject request) {
+
+        IPAWSHealthCheck health = healthCheck;
+        if (health == null || ACK_OPERATIONS.equals(getOperationClass(request))) {
+            return null;
+        }
+        return health;
+    }
+
+    private static void recordSuccess(IPAWSCircuitBreaker breaker, IPAWSHealthCheck health) {
+
+        if (breaker != null) {
+            breaker.recordSuccess();
+        }
+        if (health != null) {
+            health.recordSuccess();
+        }
+    }
+
+    private static void recordFailure(IPAWSCircuitBreaker breaker, IPAWSHealthCheck health) {
+
+        if (breaker != null) {
+            breaker.recordFailure();
+        }
+        if (health != null) {
+            health.recordFailure();
+        }
+    }
+
+    /**
+     * method sendRequestAsync
+     * sends the request on the async executor without blocking the caller
+     * @param XmlObject request the XmlObject request to be sent to IPAWS
+     * @return CompletableFuture<XmlObject> completed with the response, or
+     *         exceptionally with a TimeoutException if the timeout of the
+     *         operation ran out. Cancelling it interrupts the request.
+     */
+    public CompletableFuture<XmlObject> sendRequestAsync(final XmlObject request) {
+
+        return submit(request, new Request<XmlObject>() {
+
+            @Override
+            public XmlObject send() {
+
+                return sendRequest(request);
+            }
+        });
+    }
+
+    /**
+     * method sendRequestAsync
+     * does the same for a request whose response is read by the extractor
+     */
+    public <T> CompletableFuture<T> sendRequestAsync(final XmlObject request,
+                                                     final WebServiceMessageExtractor<T> extractor) {
+
+        return submit(request, new Request<T>() {
+
+            @Override
+            public T send() {
+
+                return sendRequest(request, extractor);
+            }
+        });
+    }
+
+    private interface Request<T> {
+
+        public T send();
+    }
+
+    private <T> CompletableFuture<T> submit(XmlObject request, final Request<T> send) {
+
+        final CompletableFuture<T> result = new CompletableFuture<T>();
+
+        final Future<?> task;
+        try {
+            task = getExecutor().submit(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+                        result.complete(send.send());
+                    } catch (Throwable t) {
+                        result.completeExceptionally(t);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        final String operation = getOperation(request);
+        long timeout = getTimeout(operation);
+        if (timeout > 0) {
+            final Future<?> timer = getTimeoutScheduler().schedule(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    if (result.completeExceptionally(new TimeoutException(operation +
+                                                                          " timed out"))) {
+                        log.error("IPAWS request " + operation + " timed out");
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            result.whenComplete(new BiConsumer<T, Throwable>() {
+
+                @Override
+                public void accept(T response, Throwable t) {
+
+                    timer.cancel(false);
+                }
+            });
+        }
+
+        // a cancelled or timed out request does not hold its thread any longer
+        // than the transport takes to notice the interrupt
+        result.whenComplete(new BiConsumer<T, Throwable>() {
+
+            @Override
+            public void accept(T response, Throwable t) {
+
+                if (t != null) {
+                    task.cancel(true);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    private long getTimeout(String operation) {
+
+        Map<String, Long> timeouts = operationTimeouts;
+        if (operation != null && timeouts != null) {
+            Long timeout = timeouts.get(operation);
+            if (timeout != null) {
+                return timeout.longValue();
+            }
+        }
+        return requestTimeout;
+    }
+
+    /**
+     * method acquire
+     * waits until the rate limiter of the class of the request lets it through
+     * @throws IPAWSThrottledException if the request was throttled and must not be sent
+     */
+    private void acquire(XmlObject request) {
+
+        Map<String, IPAWSRateLimiter> limiters = rateLimiters;
+        if (limiters == null) {
+            return;
+        }
+        String operationClass = getOperationClass(request);
+        IPAWSRateLimiter limiter = limiters.get(operationClass);
+        if (limiter == null) {
+            return;
+        }
+
+        try {
+            if (limiter.acquire()) {
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IPAWSThrottledException(getOperation(request) +
+                                              " interrupted while waiting to be sent",
+                operationClass);
+        }
+        throw new IPAWSThrottledException("too many " + operationClass + " requests to IPAWS, " +
+                                          getOperation(request) + " not sent: " + limiter,
+            operationClass);
+    }
+
+    /**
+     * method getOperationClass
+     * @return String post for the posts, ack for the getACK requests and query for the others
+     */
+    static String getOperationClass(XmlObject request) {
+
+        String operation = getOperation(request);
+        if (operation != null && operation.startsWith("post")) {
+            return POST_OPERATIONS;
+        }
+
+        return IPAWSCap.GET_ACK_OP.equals(getRequestValue(request, "requestOperation")) ? ACK_OPERATIONS
+                                                                                         : QUERY_OPERATIONS;
+    }
+
+    /**
+     * method getMetricsKey
+     * @return String the request API and operation of the request, such as CAP11.getMessage, or
+     *         the name of its document element if it has none
+     */
+    static String getMetricsKey(XmlObject request) {
+
+        String operation = getRequestValue(request, "requestOperation");
+        if (operation == null) {
+            operation = getOperation(request);
+            return operation == null ? "unknown" : operation;
+        }
+        String api = getRequestValue(request, "requestAPI");
+        return api == null ? operation : api + "." + operation;
+    }
+
+    /**
+     * method getRequestValue
+     * @return String the text of the child of the document element with the local name, or null
+     */
+    private static String getRequestValue(XmlObject request, String localName) {
+
+        XmlCursor c = request.newCursor();
+        try {
+            if (c.toFirstChild() && c.toFirstChild()) {
+                do {
+                    if (localName.equals(c.getName().getLocalPart())) {
+                        return c.getTextValue();
+                    }
+                } while (c.toNextSibling());
+            }
+        } finally {
+            c.dispose();
+        }
+        return null;
+    }
+
+    /**
+     * method newRateLimiters
+     * @return Map<String, IPAWSRateLimiter> the default limits of each class of operations
+     */
+    private static Map<String, IPAWSRateLimiter> newRateLimiters() {
+
+        Map<String, IPAWSRateLimiter> limiters = new HashMap<String, IPAWSRateLimiter>();
+        limiters.put(ACK_OPERATIONS, new IPAWSRateLimiter(1.0, 5.0, 10000L));
+        limiters.put(QUERY_OPERATIONS, new IPAWSRateLimiter(5.0, 10.0, 30000L));
+        limiters.put(POST_OPERATIONS, new IPAWSRateLimiter(2.0, 5.0, 30000L));
+        return limiters;
+    }
+
+    private static String getOperation(XmlObject request) {
+
+        if (request == null) {
+            return null;
+        }
+        SchemaType type = request.schemaType();
+        if (type != null && type.getDocumentElementName() != null) {
+            return type.getDocumentElementName().getLocalPart();
+        }
+        return null;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+
+        if (asyncExecutor == null) {
+            asyncExecutor = IPAWSExecutors.newBoundedPool(asyncConcurrency, "ipaws-async-");
+            ownAsyncExecutor = true;
+        }
+        return asyncExecutor;
+    }
+
+    private synchronized ScheduledExecutorService getTimeoutScheduler() {
+
+        if (timeoutScheduler == null) {
+            timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                @Override
+                public Thread newThread(Runnable r) {
+
+                    Thread thread = new Thread(r, "ipaws-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return timeoutScheduler;
+    }
+
+    /**
+     * method shutdown
+     * stops the threads of the asynchronous requests, to be used as the
+     * spring destroy-method. An executor set with setAsyncExecutor is left
+     * to its owner.
+     */
+    public synchronized void shutdown() {
+
+        if (ownAsyncExecutor) {
+            IPAWSExecutors.shutdownNow(asyncExecutor);
+            asyncExecutor = null;
+        }
+        if (timeoutScheduler != null) {
+            timeoutScheduler.shutdownNow();
+            timeoutScheduler = null;
+        }
     }
 
 }
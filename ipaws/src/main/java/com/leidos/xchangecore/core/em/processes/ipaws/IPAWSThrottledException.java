@@ -0,0 +1,29 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+/**
+ * class IPAWSThrottledException
+ * is thrown instead of sending a request that the rate limiter of the
+ * IPAWSSpringClient did not let through in time. IPAWS never saw the request,
+ * so it may be sent again later.
+ */
+public class IPAWSThrottledException
+    extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String operationClass;
+
+    public IPAWSThrottledException(String message, String operationClass) {
+
+        super(message);
+        this.operationClass = operationClass;
+    }
+
+    /**
+     * @return String the class of the operation refused: ack, query or post
+     */
+    public String getOperationClass() {
+
+        return operationClass;
+    }
+}
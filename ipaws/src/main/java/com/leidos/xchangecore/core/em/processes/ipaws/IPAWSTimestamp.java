@@ -0,0 +1,90 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+/**
+ * class IPAWSTimestamp
+ * formats and parses the CAP and EDXL timestamps exchanged with IPAWS, in the
+ * RFC 3339 form yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm. The formatters are immutable
+ * and thread-safe so one instance is shared by all the IPAWS classes, and the
+ * comparisons work on the epoch milliseconds without building any object.
+ */
+public final class IPAWSTimestamp {
+
+    /**
+     * yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm, a zero offset is written +00:00 as before
+     */
+    public static final DateTimeFormatter RFC3339_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ssxxx");
+
+    private IPAWSTimestamp() {
+
+    }
+
+    /**
+     * method format
+     * @param Calendar cal the time to format
+     * @return String the time in the local offset in format yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
+     */
+    public static String format(Calendar cal) {
+
+        return format(cal.getTimeInMillis());
+    }
+
+    /**
+     * method format
+     * @param long millis the time to format in milliseconds since the epoch
+     * @return String the time in the local offset in format yyyy-MM-dd'T'HH:mm:ss[+/-]HH:mm
+     */
+    public static String format(long millis) {
+
+        return RFC3339_FORMATTER.format(Instant.ofEpochMilli(millis).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * method parse
+     * @param String dateStr a RFC 3339 time with an offset, the seconds fraction is optional
+     * @return Calendar the time with the offset of the string
+     * @throws IllegalArgumentException if the string is null or not a RFC 3339 time
+     */
+    public static Calendar parse(String dateStr) {
+
+        if (dateStr == null) {
+            throw new IllegalArgumentException("Invalid RFC 3339 time: null");
+        }
+        try {
+            OffsetDateTime time = OffsetDateTime.parse(dateStr,
+                DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+            return GregorianCalendar.from(time.toZonedDateTime());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid RFC 3339 time: " + dateStr, e);
+        }
+    }
+
+    /**
+     * method isAfter
+     * @return boolean true if time is after reference, a null time is never
+     *         after and any time is after a null reference
+     */
+    public static boolean isAfter(Calendar time, Calendar reference) {
+
+        if (time == null) {
+            return false;
+        }
+        return reference == null || time.getTimeInMillis() > reference.getTimeInMillis();
+    }
+
+    /**
+     * method latest
+     * @return Calendar the later of the two times, the current one on a tie
+     */
+    public static Calendar latest(Calendar current, Calendar time) {
+
+        return isAfter(time, current) ? time : current;
+    }
+}
@@ -0,0 +1,28 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+/**
+ * class IPAWSUnavailableException
+ * is thrown instead of sending a request while the circuit breaker of the
+ * IPAWSSpringClient is open.
+ */
+public class IPAWSUnavailableException
+    extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final IPAWSCircuitBreaker.State state;
+
+    public IPAWSUnavailableException(String message, IPAWSCircuitBreaker.State state) {
+
+        super(message);
+        this.state = state;
+    }
+
+    /**
+     * @return State the state of the circuit when the request was refused
+     */
+    public IPAWSCircuitBreaker.State getState() {
+
+        return state;
+    }
+}
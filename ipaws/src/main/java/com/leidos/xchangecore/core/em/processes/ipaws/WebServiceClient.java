@@ -1,6 +1,9 @@
 package com.leidos.xchangecore.core.em.processes.ipaws;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.apache.xmlbeans.XmlObject;
+import org.springframework.ws.client.core.WebServiceMessageExtractor;
 
 public interface WebServiceClient {
 
@@ -9,4 +12,11 @@ public interface WebServiceClient {
     public void setURI(String URI);
 
     public XmlObject sendRequest(XmlObject request);
+
+    public <T> T sendRequest(XmlObject request, WebServiceMessageExtractor<T> extractor);
+
+    public CompletableFuture<XmlObject> sendRequestAsync(XmlObject request);
+
+    public <T> CompletableFuture<T> sendRequestAsync(XmlObject request,
+                                                     WebServiceMessageExtractor<T> extractor);
 }
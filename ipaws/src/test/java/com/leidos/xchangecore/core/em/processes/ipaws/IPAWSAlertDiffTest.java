@@ -0,0 +1,133 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class IPAWSAlertDiffTest {
+
+    private Map<String, String> ipawsAlerts(String... ids) {
+
+        Map<String, String> alerts = new LinkedHashMap<String, String>();
+        for (String id : ids) {
+            alerts.put(id, "alert-" + id);
+        }
+        return alerts;
+    }
+
+    @Test
+    public void testDiff() {
+
+        Set<String> uicds = new HashSet<String>(Arrays.asList("b", "c", "d", "e"));
+        IPAWSAlertIdSet inBoth = new IPAWSAlertIdSet();
+        inBoth.add("d");
+
+        IPAWSAlertDiff.Result<String> result = IPAWSAlertDiff.diff(ipawsAlerts("a", "b", "c"),
+            uicds,
+            inBoth);
+
+        assertEquals("create wrong", Arrays.asList("alert-a"), result.getCreateInUICDS());
+        assertEquals("inSync wrong", Arrays.asList("b", "c"), result.getInSync());
+        assertEquals("post wrong", Arrays.asList("e"), result.getPostToIPAWS());
+        assertEquals("uicds set modified", 4, uicds.size());
+    }
+
+    @Test
+    public void testDiffWithoutIPAWSAlerts() {
+
+        Set<String> uicds = new HashSet<String>(Arrays.asList("a", "b"));
+        IPAWSAlertIdSet inBoth = new IPAWSAlertIdSet();
+        inBoth.add("a");
+
+        IPAWSAlertDiff.Result<String> result = IPAWSAlertDiff.diff(null, uicds, inBoth);
+
+        assertTrue("create not empty", result.getCreateInUICDS().isEmpty());
+        assertTrue("inSync not empty", result.getInSync().isEmpty());
+        assertEquals("post wrong", Arrays.asList("b"), result.getPostToIPAWS());
+    }
+
+    private List<IPAWSCapMessageDigest> digests(String... idsAndTimes) {
+
+        List<IPAWSCapMessageDigest> digests = new ArrayList<IPAWSCapMessageDigest>();
+        for (int i = 0; i < idsAndTimes.length; i += 2) {
+            IPAWSCapMessageDigest digest = new IPAWSCapMessageDigest();
+            digest.setMsgId(idsAndTimes[i]);
+            digest.setSentTime(idsAndTimes[i + 1]);
+            digests.add(digest);
+        }
+        return digests;
+    }
+
+    @Test
+    public void testDiffDigestsSince() {
+
+        Set<String> uicds = new HashSet<String>(Arrays.asList("b", "old", "e"));
+        IPAWSAlertIdSet inBoth = new IPAWSAlertIdSet();
+        inBoth.add("c");
+        Calendar since = IPAWSTimestamp.parse("2020-01-01T00:00:00+00:00");
+
+        IPAWSAlertDiff.DigestResult result = IPAWSAlertDiff.diffDigests(digests("old",
+            "2019-12-31T23:00:00+00:00",
+            "a",
+            "2020-01-01T01:00:00+00:00",
+            "b",
+            "2020-01-01T02:00:00+00:00",
+            "c",
+            "2020-01-01T03:00:00+00:00",
+            "d",
+            "not a time"), since, uicds, inBoth);
+
+        // the digest sent before the time is left out, like the time query would
+        assertEquals("count wrong", 4, result.getCount());
+        assertEquals("missing wrong", Arrays.asList("a", "d"), result.getMissingIds());
+        assertEquals("inSync wrong", Arrays.asList("b"), result.getInSync());
+        assertEquals("post wrong", new HashSet<String>(Arrays.asList("old", "e")),
+            new HashSet<String>(result.getPostToIPAWS()));
+
+        // a missing alert with no sent time resumes from the time of the digests
+        assertEquals("lastUpdate wrong", since, result.getLastUpdate(Arrays.asList("a")));
+        assertEquals("lastUpdate wrong", IPAWSTimestamp.parse("2020-01-01T03:00:00+00:00")
+            .getTimeInMillis(), result.getLastUpdate(Arrays.asList("a", "d")).getTimeInMillis());
+    }
+
+    @Test
+    public void testDigestLastUpdate() {
+
+        IPAWSAlertDiff.DigestResult result = IPAWSAlertDiff.diffDigests(digests("a",
+            "2020-01-01T01:00:00+00:00",
+            "b",
+            "2020-01-01T02:00:00+00:00",
+            "c",
+            "2020-01-01T03:00:00+00:00"), null, Collections.<String> emptySet(), null);
+        assertEquals("missing wrong", Arrays.asList("a", "b", "c"), result.getMissingIds());
+
+        // every alert retrieved, resume after the latest
+        assertEquals("lastUpdate wrong", IPAWSTimestamp.parse("2020-01-01T03:00:00+00:00")
+            .getTimeInMillis(), result.getLastUpdate(Arrays.asList("a", "b", "c"))
+            .getTimeInMillis());
+
+        // resume before the earliest alert not retrieved, so the time query gets it
+        assertEquals("lastUpdate wrong", IPAWSTimestamp.parse("2020-01-01T01:59:59+00:00")
+            .getTimeInMillis(), result.getLastUpdate(Arrays.asList("a", "c"))
+            .getTimeInMillis());
+
+        IPAWSAlertDiff.DigestResult none = IPAWSAlertDiff.diffDigests(digests(),
+            null,
+            Collections.<String> emptySet(),
+            null);
+        assertNull("lastUpdate without digests",
+            none.getLastUpdate(Collections.<String> emptySet()));
+    }
+}
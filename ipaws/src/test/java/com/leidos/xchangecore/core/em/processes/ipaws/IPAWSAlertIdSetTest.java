@@ -0,0 +1,146 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class IPAWSAlertIdSetTest {
+
+    private static class ClockedIdSet
+        extends IPAWSAlertIdSet {
+
+        long time = 0;
+
+        ClockedIdSet(int maxSize, long timeToLive) {
+
+            super(maxSize, timeToLive);
+        }
+
+        @Override
+        protected long now() {
+
+            return time;
+        }
+    }
+
+    @Test
+    public void testEvictsOldestWhenFull() {
+
+        ClockedIdSet set = new ClockedIdSet(2, 1000L);
+        set.add("a");
+        set.add("b");
+        set.add("c");
+
+        assertEquals("size wrong", 2, set.size());
+        assertFalse("oldest id not evicted", set.contains("a"));
+        assertTrue("id missing", set.contains("b"));
+        assertTrue("id missing", set.contains("c"));
+        assertEquals("evictions wrong", 1, set.getEvictionCount());
+        assertEquals("hits wrong", 2, set.getHitCount());
+        assertEquals("misses wrong", 1, set.getMissCount());
+    }
+
+    @Test
+    public void testExpiresOldIds() {
+
+        ClockedIdSet set = new ClockedIdSet(10, 1000L);
+        set.add("a");
+        set.time = 600;
+        set.add("b");
+        set.time = 1200;
+
+        assertFalse("expired id found", set.contains("a"));
+        assertTrue("id missing", set.contains("b"));
+        assertEquals("size wrong", 1, set.size());
+    }
+
+    @Test
+    public void testAddAgainRefreshesAge() {
+
+        ClockedIdSet set = new ClockedIdSet(10, 1000L);
+        set.add("a");
+        set.time = 800;
+        set.add("a");
+        set.time = 1500;
+        set.add("b");
+
+        assertTrue("refreshed id evicted", set.contains("a"));
+        assertEquals("size wrong", 2, set.size());
+        assertEquals("evictions wrong", 0, set.getEvictionCount());
+    }
+
+    @Test
+    public void testContainsRefreshesAge() {
+
+        ClockedIdSet set = new ClockedIdSet(10, 1000L);
+        set.add("a");
+        set.time = 800;
+        assertTrue("id missing", set.contains("a"));
+        set.time = 1500;
+
+        assertTrue("id found again expired", set.contains("a"));
+        assertEquals("evictions wrong", 0, set.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyFoundWhenFull() {
+
+        ClockedIdSet set = new ClockedIdSet(2, 1000L);
+        set.add("a");
+        set.time = 300;
+        set.add("b");
+        set.time = 600;
+        assertTrue("id missing", set.contains("a"));
+        set.add("c");
+
+        assertEquals("size wrong", 2, set.size());
+        assertTrue("found id evicted", set.contains("a"));
+        assertFalse("least recently found id not evicted", set.contains("b"));
+        assertTrue("id missing", set.contains("c"));
+    }
+
+    @Test
+    public void testStaleEntriesDropped() {
+
+        ClockedIdSet set = new ClockedIdSet(2, 1000L);
+        set.add("a");
+        set.add("b");
+        for (int i = 1; i <= 10; i++) {
+            set.time = i * 300;
+            assertTrue("id missing", set.contains("a"));
+            assertTrue("id missing", set.contains("b"));
+        }
+
+        assertEquals("size wrong", 2, set.size());
+        assertEquals("evictions wrong", 0, set.getEvictionCount());
+    }
+
+    @Test
+    public void testRestoreKeepsAge() {
+
+        ClockedIdSet set = new ClockedIdSet(10, 1000L);
+        set.add("a");
+        long modifications = set.getModificationCount();
+        set.time = 200;
+        assertTrue("id missing", set.contains("a"));
+        assertEquals("found id counted as a change", modifications, set.getModificationCount());
+        set.time = 600;
+        set.add("b");
+
+        ClockedIdSet restored = new ClockedIdSet(10, 1000L);
+        restored.time = 900;
+        restored.restore(set.getIds());
+        assertEquals("size wrong", 2, restored.size());
+
+        // the restored ids expire when the ones they were copied from would have
+        restored.time = 1200;
+        restored.add("c");
+        assertEquals("ids wrong", Arrays.asList("b", "c"),
+            new ArrayList<String>(restored.getIds().keySet()));
+    }
+}
@@ -0,0 +1,85 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class IPAWSAlertPosterTest {
+
+    private final IPAWSAlertPoster<String> poster = new IPAWSAlertPoster<String>();
+    private final Map<String, AtomicInteger> calls = new ConcurrentHashMap<String, AtomicInteger>();
+
+    // "ok" is accepted, "bad" is rejected, "flaky" fails once on the way, "busy" is throttled
+    // and "down" is refused by the circuit breaker
+    private final IPAWSAlertPoster.Sender<String> sender = new IPAWSAlertPoster.Sender<String>() {
+
+        @Override
+        public IPAWSAlertPoster.Result post(String alert) {
+
+            calls.putIfAbsent(alert, new AtomicInteger());
+            int call = calls.get(alert).incrementAndGet();
+            if (alert.equals("flaky") && call == 1) {
+                throw new IllegalStateException("connection reset");
+            }
+            if (alert.equals("busy")) {
+                return IPAWSAlertPoster.Result.THROTTLED;
+            }
+            if (alert.equals("down")) {
+                return IPAWSAlertPoster.Result.UNAVAILABLE;
+            }
+            return alert.equals("bad") ? IPAWSAlertPoster.Result.REJECTED
+                                       : IPAWSAlertPoster.Result.ACCEPTED;
+        }
+    };
+
+    @After
+    public void tearDown() {
+
+        poster.shutdown();
+    }
+
+    @Test
+    public void testRejectedNotRetried() {
+
+        poster.setRetryDelay(0);
+        List<IPAWSAlertPoster.Outcome<String>> outcomes = poster.postAlerts(Arrays.asList("ok",
+            "bad",
+            "flaky"), sender);
+
+        assertEquals("outcomes wrong", 3, outcomes.size());
+        assertTrue("alert not posted", outcomes.get(0).isPosted());
+        assertEquals("attempts wrong", 1, outcomes.get(0).getAttempts());
+
+        assertFalse("rejected alert posted", outcomes.get(1).isPosted());
+        assertEquals("result wrong", IPAWSAlertPoster.Result.REJECTED, outcomes.get(1).getResult());
+        assertEquals("rejected alert retried", 1, calls.get("bad").get());
+
+        assertTrue("alert not retried", outcomes.get(2).isPosted());
+        assertEquals("attempts wrong", 2, outcomes.get(2).getAttempts());
+    }
+
+    @Test
+    public void testRefusedNotRetried() {
+
+        poster.setRetryDelay(0);
+        List<IPAWSAlertPoster.Outcome<String>> outcomes = poster.postAlerts(Arrays.asList("busy",
+            "down"), sender);
+
+        assertFalse("throttled alert posted", outcomes.get(0).isPosted());
+        assertEquals("result wrong", IPAWSAlertPoster.Result.THROTTLED, outcomes.get(0).getResult());
+        assertEquals("throttled alert retried", 1, calls.get("busy").get());
+
+        assertFalse("refused alert posted", outcomes.get(1).isPosted());
+        assertEquals("result wrong", IPAWSAlertPoster.Result.UNAVAILABLE, outcomes.get(1).getResult());
+        assertEquals("refused alert retried", 1, calls.get("down").get());
+    }
+}
@@ -0,0 +1,61 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class IPAWSCacheTest {
+
+    private int loads = 0;
+    private String value = "http://cog/120018";
+
+    private final IPAWSCache.Loader<String, String> loader = new IPAWSCache.Loader<String, String>() {
+
+        @Override
+        public String load(String key) {
+
+            loads++;
+            return value;
+        }
+    };
+
+    @Test
+    public void testReadThrough() {
+
+        IPAWSCache<String, String> cache = new IPAWSCache<String, String>();
+
+        assertEquals("value wrong", "http://cog/120018", cache.get("120018", loader));
+        assertEquals("value wrong", "http://cog/120018", cache.get("120018", loader));
+        assertEquals("loads wrong", 1, loads);
+        assertEquals("hits wrong", 1, cache.getHitCount());
+        assertEquals("misses wrong", 1, cache.getMissCount());
+
+        // an invalidated value is loaded again
+        value = "http://cog/120019";
+        cache.invalidate("120018");
+        assertEquals("value wrong", "http://cog/120019", cache.get("120018", loader));
+        assertEquals("loads wrong", 2, loads);
+    }
+
+    @Test
+    public void testNotCached() {
+
+        IPAWSCache<String, String> cache = new IPAWSCache<String, String>();
+
+        // a failed load is tried again
+        value = null;
+        assertNull("value cached", cache.get("120018", loader));
+        assertNull("value cached", cache.get("120018", loader));
+        assertEquals("loads wrong", 2, loads);
+        assertEquals("failures wrong", 2, cache.getLoadFailureCount());
+
+        // so is an expired value
+        value = "http://cog/120018";
+        cache.setTimeToLive(0);
+        cache.get("120018", loader);
+        cache.get("120018", loader);
+        assertEquals("loads wrong", 4, loads);
+        assertEquals("size wrong", 0, cache.size());
+    }
+}
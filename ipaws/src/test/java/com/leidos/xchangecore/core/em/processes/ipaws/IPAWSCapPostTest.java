@@ -0,0 +1,122 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Test;
+
+import x1.oasisNamesTcEmergencyCap1.AlertDocument.Alert;
+
+public class IPAWSCapPostTest {
+
+    private static class ClockedIdSet
+        extends IPAWSAlertIdSet {
+
+        long time = 0;
+
+        ClockedIdSet(long timeToLive) {
+
+            super(DEFAULT_MAX_SIZE, timeToLive);
+        }
+
+        @Override
+        protected long now() {
+
+            return time;
+        }
+    }
+
+    // the XchangeCore alerts, none of them retrieved from IPAWS
+    private final Set<String> uicdsAlertIds = new LinkedHashSet<String>(Arrays.asList("ok",
+        "bad",
+        "flaky"));
+    // "ok" is accepted, "bad" is rejected and "flaky" is never answered
+    private final Map<String, IPAWSAlertPoster.Result> results = new HashMap<String, IPAWSAlertPoster.Result>();
+    private final List<String> posted = new ArrayList<String>();
+    private final ClockedIdSet rejectedSet = new ClockedIdSet(1000L);
+
+    private final IPAWSCap cap = new IPAWSCap() {
+
+        @Override
+        public IPAWSAlertPoster.Result postAlert(Alert alert) {
+
+            synchronized (posted) {
+                posted.add(alert.getIdentifier());
+            }
+            return results.get(alert.getIdentifier());
+        }
+    };
+
+    public IPAWSCapPostTest() {
+
+        results.put("ok", IPAWSAlertPoster.Result.ACCEPTED);
+        results.put("bad", IPAWSAlertPoster.Result.REJECTED);
+        results.put("flaky", IPAWSAlertPoster.Result.FAILED);
+
+        cap.setAlertWorkProduct(new IPAWSAlertWorkProduct() {
+
+            @Override
+            public Set<String> getAlertWorkProduct() {
+
+                return uicdsAlertIds;
+            }
+
+            @Override
+            public Alert getAlertFromWP(String alertId) {
+
+                Alert alert = Alert.Factory.newInstance();
+                alert.setIdentifier(alertId);
+                return alert;
+            }
+        });
+        cap.setRejectedSet(rejectedSet);
+        cap.getAlertPoster().setRetryDelay(0);
+        cap.getAlertPoster().setMaxAttempts(2);
+        cap.getAlertPoster().setConcurrency(1);
+    }
+
+    @After
+    public void tearDown() {
+
+        cap.shutdown();
+    }
+
+    private List<String> cycle() {
+
+        posted.clear();
+        cap.synchronizeAlertsWithUICDS(null);
+        return new ArrayList<String>(posted);
+    }
+
+    @Test
+    public void testPostOutcomes() {
+
+        // the failed alert is retried within the cycle
+        assertEquals("posted wrong", Arrays.asList("ok", "bad", "flaky", "flaky"), cycle());
+        assertTrue("accepted alert not in both", cap.getInBothSet().contains("ok"));
+        assertFalse("rejected alert in both", cap.getInBothSet().contains("bad"));
+        assertTrue("rejected alert not kept", rejectedSet.peek("bad"));
+        assertFalse("failed alert in both", cap.getInBothSet().contains("flaky"));
+        assertFalse("failed alert rejected", rejectedSet.peek("flaky"));
+
+        // only the failed alert is posted again on the next cycle, the lookup
+        // of the rejected one does not keep it from expiring
+        rejectedSet.time = 800;
+        assertEquals("posted wrong", Arrays.asList("flaky", "flaky"), cycle());
+
+        // the rejected alert is posted again once it expired
+        rejectedSet.time = 1200;
+        assertEquals("posted wrong", Arrays.asList("bad", "flaky", "flaky"), cycle());
+        assertTrue("rejected alert not kept again", rejectedSet.peek("bad"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IPAWSCheckpointStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static IPAWSCheckpointStore newStore(File file) {
+
+        IPAWSCheckpointStore store = new IPAWSCheckpointStore();
+        store.setCheckpointFile(file.getPath());
+        return store;
+    }
+
+    private static Calendar timeOf(long millis) {
+
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(millis);
+        return cal;
+    }
+
+    private static void write(File file, String content) throws IOException {
+
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    @Test
+    public void testCommitAndReload() {
+
+        File file = new File(folder.getRoot(), "checkpoint/ipaws.properties");
+        IPAWSCheckpointStore store = newStore(file);
+        assertNull("checkpoint on a cold start", store.getCheckpoint("cap"));
+
+        store.commit("cap", timeOf(1000L));
+        store.commit("edxl", timeOf(2000L));
+        store.commit("cap", timeOf(3000L));
+        assertFalse("temporary file left", new File(file.getPath() + ".tmp").exists());
+
+        IPAWSCheckpointStore reloaded = newStore(file);
+        assertEquals("checkpoint wrong", 3000L, reloaded.getCheckpoint("cap").getTimeInMillis());
+        assertEquals("checkpoint wrong", 2000L, reloaded.getCheckpoint("edxl").getTimeInMillis());
+
+        reloaded.clear("cap");
+        reloaded = newStore(file);
+        assertNull("checkpoint not cleared", reloaded.getCheckpoint("cap"));
+        assertEquals("checkpoint wrong", 2000L, reloaded.getCheckpoint("edxl").getTimeInMillis());
+    }
+
+    @Test
+    public void testUnwritableFile() throws IOException {
+
+        // the checkpoint directory cannot be created under a plain file
+        File blocker = folder.newFile("blocker");
+        File file = new File(blocker, "ipaws.properties");
+        IPAWSCheckpointStore store = newStore(file);
+
+        store.commit("cap", timeOf(1000L));
+        assertNull("checkpoint not written kept", store.getCheckpoint("cap"));
+
+        Map<String, Long> ids = new LinkedHashMap<String, Long>();
+        ids.put("a", Long.valueOf(1000L));
+        assertFalse("ids written", store.commitIds("inBoth", ids));
+        assertNull("ids not written found", store.getIds("inBoth"));
+    }
+
+    @Test
+    public void testMissingOrCorruptCheckpoint() throws IOException {
+
+        File file = new File(folder.getRoot(), "ipaws.properties");
+        assertNull("missing checkpoint found", newStore(file).getCheckpoint("cap"));
+        assertNull("missing ids found", newStore(file).getIds("inBoth"));
+
+        write(file, "cap=not a time\nedxl=2000\n");
+        write(new File(file.getPath() + ".inBoth"), "1000 a\nnot a time b\n2000 c d\n");
+        IPAWSCheckpointStore store = newStore(file);
+        assertNull("corrupt checkpoint used", store.getCheckpoint("cap"));
+        assertEquals("checkpoint wrong", 2000L, store.getCheckpoint("edxl").getTimeInMillis());
+
+        Map<String, Long> ids = store.getIds("inBoth");
+        assertEquals("ids wrong", 2, ids.size());
+        assertEquals("time wrong", Long.valueOf(2000L), ids.get("c d"));
+
+        // a new commit replaces the corrupt value
+        store.commit("cap", timeOf(3000L));
+        assertEquals("checkpoint wrong", 3000L, newStore(file).getCheckpoint("cap")
+            .getTimeInMillis());
+    }
+
+    @Test
+    public void testIdsSurviveRestart() {
+
+        File file = new File(folder.getRoot(), "ipaws.properties");
+        IPAWSAlertIdSet inBoth = new IPAWSAlertIdSet();
+        inBoth.add("alert-1");
+        inBoth.add("alert-2");
+        assertTrue("ids not written", newStore(file).commitIds("inBoth", inBoth.getIds()));
+
+        IPAWSAlertIdSet restored = new IPAWSAlertIdSet();
+        restored.restore(newStore(file).getIds("inBoth"));
+        assertEquals("size wrong", 2, restored.size());
+        assertTrue("id missing", restored.contains("alert-1"));
+        assertTrue("id missing", restored.contains("alert-2"));
+        assertEquals("times wrong", inBoth.getIds(), restored.getIds());
+    }
+}
@@ -0,0 +1,60 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IPAWSCircuitBreakerTest {
+
+    @Test
+    public void testOpenAndClose() {
+
+        IPAWSCircuitBreaker breaker = new IPAWSCircuitBreaker();
+        breaker.setFailureThreshold(2);
+        breaker.setOpenTimeout(1000L);
+
+        assertTrue("closed circuit refused", breaker.allowRequest(0));
+        breaker.recordFailure(0);
+        assertEquals("state wrong", IPAWSCircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.recordFailure(10);
+        assertEquals("state wrong", IPAWSCircuitBreaker.State.OPEN, breaker.getState());
+
+        // open: refused until the timeout is over
+        assertFalse("open circuit allowed", breaker.allowRequest(500));
+        assertEquals("rejected wrong", 1, breaker.getRejectedCount());
+
+        // half open: a single trial
+        assertTrue("trial refused", breaker.allowRequest(1010));
+        assertEquals("state wrong", IPAWSCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertFalse("second trial allowed", breaker.allowRequest(1020));
+
+        // a failed trial opens it again
+        breaker.recordFailure(1030);
+        assertEquals("state wrong", IPAWSCircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse("open circuit allowed", breaker.allowRequest(1500));
+
+        // a successful trial closes it
+        assertTrue("trial refused", breaker.allowRequest(2030));
+        breaker.recordSuccess();
+        assertEquals("state wrong", IPAWSCircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("failures wrong", 0, breaker.getConsecutiveFailures());
+        assertEquals("opened wrong", 2, breaker.getOpenedCount());
+    }
+
+    @Test
+    public void testRelease() {
+
+        IPAWSCircuitBreaker breaker = new IPAWSCircuitBreaker();
+        breaker.setFailureThreshold(1);
+        breaker.setOpenTimeout(0L);
+        breaker.recordFailure(0);
+
+        assertTrue("trial refused", breaker.allowRequest(0));
+        assertFalse("second trial allowed", breaker.allowRequest(0));
+        // a trial not sent lets the next one through
+        breaker.release();
+        assertTrue("trial refused", breaker.allowRequest(0));
+    }
+}
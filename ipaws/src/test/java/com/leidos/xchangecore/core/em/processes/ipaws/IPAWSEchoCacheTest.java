@@ -0,0 +1,73 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IPAWSEchoCacheTest {
+
+    private static final String ALERT = "<alert><identifier>IPAWS-1</identifier>" +
+                                        "<headline>Flood warning</headline></alert>";
+
+    @Test
+    public void testEchoSuppressedOnce() {
+
+        IPAWSEchoCache cache = new IPAWSEchoCache();
+        cache.expect(IPAWSEchoCache.keyOf("edxl-1", ALERT));
+
+        assertTrue("echo not suppressed", cache.suppress(IPAWSEchoCache.keyOf("edxl-1", ALERT)));
+        assertFalse("echo suppressed twice", cache.suppress(IPAWSEchoCache.keyOf("edxl-1", ALERT)));
+        assertEquals("suppressed wrong", 1, cache.getSuppressedCount());
+        assertEquals("size wrong", 0, cache.size());
+    }
+
+    @Test
+    public void testKeyIgnoresWhitespace() {
+
+        assertEquals("key wrong",
+            IPAWSEchoCache.keyOf("edxl-1", ALERT),
+            IPAWSEchoCache.keyOf("edxl-1", "\n  " + ALERT.replace("><", ">\n    <") + "\n"));
+    }
+
+    @Test
+    public void testChangedContentMissed() {
+
+        IPAWSEchoCache cache = new IPAWSEchoCache();
+        cache.expect(IPAWSEchoCache.keyOf("edxl-1", ALERT));
+
+        assertFalse("changed content suppressed",
+            cache.suppress(IPAWSEchoCache.keyOf("edxl-1", ALERT.replace("Flood", "Fire"))));
+        assertFalse("other message suppressed",
+            cache.suppress(IPAWSEchoCache.keyOf("edxl-2", ALERT)));
+        assertFalse("split content suppressed",
+            cache.suppress(IPAWSEchoCache.keyOf("edxl-1", ALERT.substring(0, 20), ALERT.substring(20))));
+        assertEquals("size wrong", 1, cache.size());
+    }
+
+    @Test
+    public void testExpiredNotSuppressed() throws InterruptedException {
+
+        IPAWSEchoCache cache = new IPAWSEchoCache();
+        cache.setTimeToLive(1L);
+        cache.expect(IPAWSEchoCache.keyOf("edxl-1", ALERT));
+        Thread.sleep(20);
+
+        assertFalse("expired echo suppressed",
+            cache.suppress(IPAWSEchoCache.keyOf("edxl-1", ALERT)));
+    }
+
+    @Test
+    public void testNullFields() {
+
+        String key = IPAWSEchoCache.keyOf(null, (String[]) null);
+        assertEquals("key wrong", key, IPAWSEchoCache.keyOf(null, new String[0]));
+        assertFalse("null contents ignored",
+            key.equals(IPAWSEchoCache.keyOf(null, (String) null)));
+
+        IPAWSEchoCache cache = new IPAWSEchoCache();
+        cache.expect(IPAWSEchoCache.keyOf(null, ALERT, null));
+        assertTrue("echo not suppressed", cache.suppress(IPAWSEchoCache.keyOf(null, ALERT, null)));
+    }
+}
@@ -0,0 +1,72 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import javax.xml.namespace.QName;
+
+import org.junit.Test;
+
+import x0.oasisNamesTcEmergencyEDXLDE1.EDXLDistributionDocument.EDXLDistribution;
+
+import com.leidos.xchangecore.core.em.service.impl.ResourceManagementServiceImpl;
+
+public class IPAWSEdxlClassifierTest {
+
+    private static final QName OTHER_QNAME = new QName("urn:example:other", "other");
+
+    private static final IPAWSEdxlClassifier.Handler HANDLER = new IPAWSEdxlClassifier.Handler() {
+
+        @Override
+        public void handle(EDXLDistribution edxl) {
+
+        }
+    };
+
+    @Test
+    public void testTypeOfEachPayload() {
+
+        assertEquals("type wrong",
+            IPAWSEdxlBroadcast.RM_TYPE,
+            IPAWSEdxlClassifier.getType(ResourceManagementServiceImpl.REQUEST_RESOURCE_QNAME));
+        assertEquals("type wrong",
+            IPAWSEdxlBroadcast.ALERT_TYPE,
+            IPAWSEdxlClassifier.getType(IPAWSEdxlBroadcast.ALERT_QNAME));
+        assertEquals("type wrong",
+            IPAWSEdxlBroadcast.HAVE_TYPE,
+            IPAWSEdxlClassifier.getType(IPAWSEdxlBroadcast.HAVE_QNAME));
+        assertEquals("type wrong",
+            IPAWSEdxlBroadcast.UICDS_TYPE,
+            IPAWSEdxlClassifier.getType(IPAWSEdxlBroadcast.WORKPRODUCT_QNAME));
+        assertEquals("types wrong", 4, IPAWSEdxlClassifier.getTypes().size());
+    }
+
+    @Test
+    public void testUnknownPayload() {
+
+        assertEquals("type wrong",
+            IPAWSEdxlBroadcast.UNKNOWN_TYPE,
+            IPAWSEdxlClassifier.getType(OTHER_QNAME));
+        assertEquals("type wrong",
+            IPAWSEdxlBroadcast.UNKNOWN_TYPE,
+            IPAWSEdxlClassifier.getType((QName) null));
+
+        IPAWSEdxlClassifier classifier = new IPAWSEdxlClassifier();
+        classifier.register(IPAWSEdxlBroadcast.ALERT_QNAME, HANDLER);
+        assertNull("handler found", classifier.getHandler(OTHER_QNAME));
+        assertNull("handler found", classifier.getHandler(null));
+    }
+
+    @Test
+    public void testHandlerOfEachPayload() {
+
+        IPAWSEdxlClassifier classifier = new IPAWSEdxlClassifier();
+        for (QName name : IPAWSEdxlClassifier.getTypes().keySet()) {
+            classifier.register(name, HANDLER);
+        }
+        for (QName name : IPAWSEdxlClassifier.getTypes().keySet()) {
+            assertSame("handler wrong for " + name, HANDLER, classifier.getHandler(name));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IPAWSHealthCheckTest {
+
+    private static IPAWSHealthCheck newHealthCheck() {
+
+        IPAWSHealthCheck healthCheck = new IPAWSHealthCheck();
+        healthCheck.setAckTimeToLive(60000L);
+        healthCheck.setFailureThreshold(1);
+        healthCheck.setInitialBackoff(60000L);
+        return healthCheck;
+    }
+
+    private static IPAWSHealthCheck.Probe probeOf(final RuntimeException e) {
+
+        return new IPAWSHealthCheck.Probe() {
+
+            @Override
+            public boolean ping() {
+
+                throw e;
+            }
+        };
+    }
+
+    @Test
+    public void testOpenBreakerNotAFailure() {
+
+        IPAWSHealthCheck healthCheck = newHealthCheck();
+        IPAWSHealthCheck.Probe refused = probeOf(new IPAWSUnavailableException("unavailable",
+            IPAWSCircuitBreaker.State.OPEN));
+        IPAWSHealthCheck.Probe throttled = probeOf(new IPAWSThrottledException("no token left",
+            "ack"));
+
+        assertFalse("available while the breaker is open", healthCheck.isAvailable(refused));
+        assertFalse("available while throttled", healthCheck.isAvailable(throttled));
+        assertEquals("failures wrong", 0, healthCheck.getConsecutiveFailures());
+        assertFalse("backing off", healthCheck.isBackingOff());
+
+        // still probed on the next check, not refused by a backoff
+        assertFalse("available while the breaker is open", healthCheck.isAvailable(refused));
+        assertEquals("probes wrong", 3, healthCheck.getProbeCount());
+        assertEquals("rejected wrong", 0, healthCheck.getRejectedCount());
+    }
+
+    @Test
+    public void testFailureBacksOff() {
+
+        IPAWSHealthCheck healthCheck = newHealthCheck();
+        IPAWSHealthCheck.Probe failing = probeOf(new IllegalStateException("connection reset"));
+        assertFalse("available", healthCheck.isAvailable(failing));
+        assertEquals("failures wrong", 1, healthCheck.getConsecutiveFailures());
+        assertTrue("not backing off", healthCheck.isBackingOff());
+
+        // the next check is refused without probing
+        assertFalse("available", healthCheck.isAvailable(failing));
+        assertEquals("probes wrong", 1, healthCheck.getProbeCount());
+        assertEquals("rejected wrong", 1, healthCheck.getRejectedCount());
+
+        healthCheck.recordSuccess();
+        assertTrue("not available", healthCheck.isAvailable(failing));
+        assertEquals("cached wrong", 1, healthCheck.getCachedCount());
+    }
+}
@@ -0,0 +1,102 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xmlbeans.XmlException;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.xml.sax.InputSource;
+
+public class IPAWSMessageReaderTest {
+
+    private static final String RESPONSE = "<r:response xmlns:r='urn:response' " +
+                                           "xmlns:m='urn:message'>" +
+                                           "<m:message>first</m:message>" +
+                                           "<r:message>not a message</r:message>" +
+                                           "<r:list><m:message>second</m:message></r:list>" +
+                                           "<m:message>third</m:message>" +
+                                           "</r:response>";
+
+    private static final QName MESSAGE = new QName("urn:message", "message");
+
+    private final List<String> messages = new ArrayList<String>();
+
+    private final IPAWSMessageReader<String> reader = new IPAWSMessageReader<String>(MESSAGE,
+        new IPAWSMessageReader.MessageParser<String>() {
+
+            @Override
+            public String parse(XMLStreamReader streamReader) throws XmlException {
+
+                try {
+                    return streamReader.getElementText();
+                } catch (XMLStreamException e) {
+                    throw new XmlException(e.getMessage());
+                }
+            }
+
+            @Override
+            public String parse(Node node) {
+
+                return node.getTextContent();
+            }
+        },
+        new IPAWSMessageReader.MessageHandler<String>() {
+
+            @Override
+            public void handleMessage(String message) {
+
+                messages.add(message);
+            }
+        });
+
+    private static Document parse(String xml) throws Exception {
+
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory.newDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+    }
+
+    @Test
+    public void testStreamSource() throws Exception {
+
+        int count = reader.readMessages(new StreamSource(new StringReader(RESPONSE)));
+        assertEquals("count wrong", 3, count);
+        assertEquals("messages wrong", Arrays.asList("first", "second", "third"), messages);
+    }
+
+    @Test
+    public void testDOMSource() throws Exception {
+
+        Document document = parse(RESPONSE);
+        assertEquals("count wrong", 3, reader.readMessages(new DOMSource(document)));
+
+        // a SAAJ payload is the element of the body, not the document
+        assertEquals("count wrong", 3,
+            reader.readMessages(new DOMSource(document.getDocumentElement())));
+        assertEquals("messages wrong",
+            Arrays.asList("first", "second", "third", "first", "second", "third"), messages);
+    }
+
+    @Test
+    public void testOtherSource() throws Exception {
+
+        assertEquals("count wrong", 0, reader.readMessages(null));
+        int count = reader.readMessages(new SAXSource(new InputSource(new StringReader(RESPONSE))));
+        assertEquals("count wrong", 3, count);
+        assertEquals("messages wrong", Arrays.asList("first", "second", "third"), messages);
+    }
+}
@@ -0,0 +1,165 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlString;
+import org.junit.After;
+import org.junit.Test;
+
+public class IPAWSNotificationDrainerTest {
+
+    private final IPAWSNotificationDrainer drainer = new IPAWSNotificationDrainer();
+    private final List<String> forwarded = Collections.synchronizedList(new ArrayList<String>());
+
+    @After
+    public void tearDown() {
+
+        drainer.shutdown();
+    }
+
+    // a source holding count notifications named cogId-1 to cogId-count
+    private static IPAWSNotificationDrainer.Source sourceOf(final String cogId, int count) {
+
+        final Queue<XmlObject> queue = new LinkedList<XmlObject>();
+        for (int i = 1; i <= count; i++) {
+            XmlString notification = XmlString.Factory.newInstance();
+            notification.setStringValue(cogId + "-" + i);
+            queue.add(notification);
+        }
+        return new IPAWSNotificationDrainer.Source() {
+
+            @Override
+            public synchronized XmlObject[] getMessages(String cogId, int count) {
+
+                List<XmlObject> batch = new ArrayList<XmlObject>();
+                while (batch.size() < count && !queue.isEmpty()) {
+                    batch.add(queue.remove());
+                }
+                return batch.isEmpty() ? null : batch.toArray(new XmlObject[batch.size()]);
+            }
+        };
+    }
+
+    // records the notifications, taking delay milliseconds for each
+    private IPAWSNotificationDrainer.Forwarder forwarderOf(final long delay) {
+
+        return new IPAWSNotificationDrainer.Forwarder() {
+
+            @Override
+            public void forward(XmlObject notification) {
+
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                forwarded.add(((XmlString) notification).getStringValue());
+            }
+        };
+    }
+
+    @Test
+    public void testNextBatchSize() {
+
+        // a full batch doubles, up to the max
+        assertEquals("size wrong", 20, IPAWSNotificationDrainer.nextBatchSize(10, 10, 10, 100));
+        assertEquals("size wrong", 100, IPAWSNotificationDrainer.nextBatchSize(80, 80, 10, 100));
+
+        // a batch at least half full keeps its size
+        assertEquals("size wrong", 40, IPAWSNotificationDrainer.nextBatchSize(40, 20, 10, 100));
+
+        // a batch less than half full halves, down to the min
+        assertEquals("size wrong", 20, IPAWSNotificationDrainer.nextBatchSize(40, 3, 10, 100));
+        assertEquals("size wrong", 10, IPAWSNotificationDrainer.nextBatchSize(10, 0, 10, 100));
+    }
+
+    @Test
+    public void testDrainsUntilShortBatch() {
+
+        long deadline = System.currentTimeMillis() + 60000L;
+        int count = drainer.drainCog("cog", deadline, sourceOf("cog", 25), forwarderOf(0));
+
+        assertEquals("count wrong", 25, count);
+        assertEquals("forwarded wrong", 25, forwarded.size());
+        assertEquals("backlog wrong", Integer.valueOf(0), drainer.getBacklog().get("cog"));
+    }
+
+    @Test
+    public void testDeadlineCheckedInsideBatch() {
+
+        IPAWSNotificationDrainer.Source source = sourceOf("cog", 10);
+        long start = System.currentTimeMillis();
+        int count = drainer.drainCog("cog", start + 50L, source, forwarderOf(20));
+
+        assertTrue("deadline ignored: " + count, count < 10);
+        assertTrue("drain overran", System.currentTimeMillis() - start < 150L);
+        // the notifications left, and as many again since the batch was full
+        assertEquals("backlog wrong", Integer.valueOf(20 - count), drainer.getBacklog().get("cog"));
+
+        // the notifications left are forwarded first on the next drain
+        List<String> first = new ArrayList<String>(forwarded);
+        count += drainer.drainCog("cog", System.currentTimeMillis() + 60000L, source, forwarderOf(0));
+        assertEquals("count wrong", 10, count);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 1; i <= 10; i++) {
+            expected.add("cog-" + i);
+        }
+        assertEquals("first drain wrong", expected.subList(0, first.size()), first);
+        assertEquals("order wrong", expected, forwarded);
+        assertEquals("backlog wrong", Integer.valueOf(0), drainer.getBacklog().get("cog"));
+    }
+
+    @Test
+    public void testCancelsDrainAfterDeadline() throws InterruptedException {
+
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final IPAWSNotificationDrainer.Forwarder fast = forwarderOf(0);
+        IPAWSNotificationDrainer.Forwarder forwarder = new IPAWSNotificationDrainer.Forwarder() {
+
+            @Override
+            public void forward(XmlObject notification) {
+
+                if (((XmlString) notification).getStringValue().startsWith("slow")) {
+                    try {
+                        Thread.sleep(10000);
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return;
+                }
+                fast.forward(notification);
+            }
+        };
+        final IPAWSNotificationDrainer.Source slow = sourceOf("slow", 1);
+        final IPAWSNotificationDrainer.Source quick = sourceOf("quick", 3);
+        IPAWSNotificationDrainer.Source source = new IPAWSNotificationDrainer.Source() {
+
+            @Override
+            public XmlObject[] getMessages(String cogId, int count) {
+
+                return cogId.equals("slow") ? slow.getMessages(cogId, count)
+                                            : quick.getMessages(cogId, count);
+            }
+        };
+
+        long start = System.currentTimeMillis();
+        int count = drainer.drain(Arrays.asList("quick", "slow"), start + 100L, source, forwarder);
+
+        assertEquals("count wrong", 3, count);
+        assertTrue("drain not cancelled", interrupted.await(5, TimeUnit.SECONDS));
+        assertTrue("drain overran", System.currentTimeMillis() - start < 5000L);
+    }
+}
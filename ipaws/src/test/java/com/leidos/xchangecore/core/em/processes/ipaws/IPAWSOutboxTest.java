@@ -0,0 +1,139 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IPAWSOutboxTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IPAWSQueueFixture fixture = new IPAWSQueueFixture();
+
+    private IPAWSOutbox<String> newOutbox(File file) {
+
+        IPAWSOutbox<String> outbox = new IPAWSOutbox<String>();
+        outbox.setOutboxFile(file.getAbsolutePath());
+        outbox.setInitialDelay(0);
+        outbox.setPollInterval(3600000L);
+        outbox.setBatchSize(2);
+        outbox.setMaxAttempts(3);
+        outbox.setCodec(IPAWSQueueFixture.CODEC);
+        outbox.setSender(fixture.sender());
+        return outbox;
+    }
+
+    @Test
+    public void testAtLeastOnce() throws IOException {
+
+        File file = new File(folder.getRoot(), "outbox.log");
+        IPAWSOutbox<String> outbox = newOutbox(file);
+        assertTrue("not stored", outbox.append("d:1", "<edxl>\n1</edxl>"));
+        assertTrue("not stored", outbox.append("d:2", "<edxl>2</edxl>"));
+        assertTrue("not stored", outbox.append("d:3", "<edxl>3</edxl>"));
+
+        // a failed send keeps the messages
+        assertEquals("sent wrong", 0, outbox.sendBatch());
+        assertEquals("size wrong", 3, outbox.size());
+        outbox.stop();
+
+        // they survive a restart and are sent in order, in batches
+        outbox = newOutbox(file);
+        assertEquals("pending wrong", Arrays.asList("d:1", "d:2", "d:3"), outbox.getPendingIds());
+        fixture.accept = true;
+        assertEquals("sent wrong", 2, outbox.sendBatch());
+        assertEquals("sent wrong", 1, outbox.sendBatch());
+        assertEquals("messages wrong",
+            Arrays.asList("d:1=<edxl>\n1</edxl>", "d:2=<edxl>2</edxl>", "d:3=<edxl>3</edxl>"),
+            fixture.received);
+        outbox.stop();
+
+        // the messages sent are not sent again
+        outbox = newOutbox(file);
+        assertEquals("size wrong", 0, outbox.size());
+        outbox.stop();
+    }
+
+    @Test
+    public void testDeadAndCompact() throws IOException {
+
+        File file = new File(folder.getRoot(), "outbox.log");
+        IPAWSOutbox<String> outbox = newOutbox(file);
+        outbox.setCompactThreshold(1);
+        outbox.append("d:1", "<edxl>1</edxl>");
+        outbox.append("d:2", "<edxl>2</edxl>");
+
+        // the rejected message runs out of attempts, the other is sent on its first
+        fixture.rejected.add("d:1");
+        fixture.accept = true;
+        assertEquals("sent wrong", 1, outbox.sendBatch());
+        assertEquals("sent wrong", 0, outbox.sendBatch());
+        assertEquals("sent wrong", 0, outbox.sendBatch());
+        assertEquals("dead wrong", 1, outbox.getDeadCount());
+        assertEquals("size wrong", 0, outbox.size());
+        assertEquals("messages wrong", Arrays.asList("d:2=<edxl>2</edxl>"), fixture.received);
+        assertTrue("no dead file", new File(file.getPath() + ".dead").length() > 0);
+
+        // the journal was compacted to the pending messages
+        assertEquals("journal not compacted", 0, file.length());
+        outbox.append("d:3", "<edxl>3</edxl>");
+        outbox.stop();
+        outbox = newOutbox(file);
+        assertEquals("pending wrong", Arrays.asList("d:3"), outbox.getPendingIds());
+        outbox.stop();
+    }
+
+    @Test
+    public void testFailureDoesNotBlock() throws IOException {
+
+        File file = new File(folder.getRoot(), "outbox.log");
+        IPAWSOutbox<String> outbox = newOutbox(file);
+        outbox.setInitialDelay(60000L);
+        outbox.setBatchSize(1);
+        outbox.append("d:1", "<edxl>1</edxl>");
+        outbox.append("d:2", "<edxl>2</edxl>");
+
+        // the failed message waits, the next one is sent meanwhile
+        fixture.rejected.add("d:1");
+        fixture.accept = true;
+        assertEquals("sent wrong", 0, outbox.sendBatch());
+        assertEquals("sent wrong", 1, outbox.sendBatch());
+        assertEquals("sent wrong", 0, outbox.sendBatch());
+        assertEquals("messages wrong", Arrays.asList("d:2=<edxl>2</edxl>"), fixture.received);
+        assertEquals("pending wrong", Arrays.asList("d:1"), outbox.getPendingIds());
+        assertEquals("failed wrong", 1, outbox.getFailedCount());
+        outbox.stop();
+    }
+
+    @Test
+    public void testTornRecord() throws IOException {
+
+        File file = new File(folder.getRoot(), "outbox.log");
+        IPAWSOutbox<String> outbox = newOutbox(file);
+        outbox.append("d:1", "<edxl>1</edxl>");
+        outbox.stop();
+
+        // a crash in the middle of an append
+        FileOutputStream out = new FileOutputStream(file, true);
+        out.write("A 9 ZDo".getBytes("UTF-8"));
+        out.close();
+
+        outbox = newOutbox(file);
+        assertEquals("pending wrong", Arrays.asList("d:1"), outbox.getPendingIds());
+        outbox.append("d:2", "<edxl>2</edxl>");
+        outbox.stop();
+
+        outbox = newOutbox(file);
+        assertEquals("pending wrong", Arrays.asList("d:1", "d:2"), outbox.getPendingIds());
+        outbox.stop();
+    }
+}
@@ -0,0 +1,105 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class IPAWSPipelineTest {
+
+    private final IPAWSPipeline<String> pipeline = new IPAWSPipeline<String>();
+
+    @After
+    public void tearDown() {
+
+        pipeline.shutdown();
+    }
+
+    @Test
+    public void testOrderPerKey() throws InterruptedException {
+
+        final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+        IPAWSPipeline.Worker<String> worker = new IPAWSPipeline.Worker<String>() {
+
+            @Override
+            public void process(String item) {
+
+                processed.add(item);
+            }
+        };
+
+        pipeline.setLanes(4);
+        for (int i = 0; i < 50; i++) {
+            pipeline.submit("alert", "dist-1", "dist-1:" + i, worker);
+            pipeline.submit("alert", "dist-2", "dist-2:" + i, worker);
+        }
+        assertTrue("not idle", pipeline.awaitIdle(5000));
+
+        List<String> first = new ArrayList<String>();
+        for (String item : processed) {
+            if (item.startsWith("dist-1:")) {
+                first.add(item);
+            }
+        }
+        assertEquals("size wrong", 100, processed.size());
+        assertEquals("size wrong", 50, first.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("order wrong", "dist-1:" + i, first.get(i));
+        }
+        assertEquals("processed wrong", 100, pipeline.getStages().get("alert").getProcessedCount());
+    }
+
+    @Test
+    public void testSlowStage() throws InterruptedException {
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        IPAWSPipeline.Worker<String> slow = new IPAWSPipeline.Worker<String>() {
+
+            @Override
+            public void process(String item) {
+
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        final CountDownLatch done = new CountDownLatch(3);
+        IPAWSPipeline.Worker<String> fast = new IPAWSPipeline.Worker<String>() {
+
+            @Override
+            public void process(String item) {
+
+                done.countDown();
+            }
+        };
+
+        pipeline.setLanes(1);
+        pipeline.submit("requestResource", "dist-1", "rm-1", slow);
+        pipeline.submit("requestResource", "dist-2", "rm-2", slow);
+        for (int i = 0; i < 3; i++) {
+            pipeline.submit("EdxlDeResponse", "dist-" + i, "have-" + i, fast);
+        }
+
+        // the HAVE messages are not held up by the RM request
+        assertTrue("held up", done.await(5, TimeUnit.SECONDS));
+        assertTrue("not started", started.await(5, TimeUnit.SECONDS));
+        assertEquals("depth wrong", 1,
+            pipeline.getStages().get("requestResource").getQueueDepth());
+        assertFalse("idle", pipeline.awaitIdle(10));
+
+        release.countDown();
+        assertTrue("not idle", pipeline.awaitIdle(5000));
+    }
+}
@@ -0,0 +1,163 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class IPAWSPollSchedulerTest {
+
+    private static IPAWSPollScheduler.Cycle cycleOf(final int count) {
+
+        return new IPAWSPollScheduler.Cycle() {
+
+            @Override
+            public int run() {
+
+                return count;
+            }
+        };
+    }
+
+    private static IPAWSPollScheduler newScheduler() {
+
+        IPAWSPollScheduler scheduler = new IPAWSPollScheduler();
+        scheduler.setMinInterval(1000L);
+        scheduler.setMaxInterval(8000L);
+        scheduler.setInitialInterval(2000L);
+        scheduler.setBackoffFactor(2.0);
+        scheduler.setBusyThreshold(10);
+        return scheduler;
+    }
+
+    @Test
+    public void testBacksOffWhenIdle() {
+
+        IPAWSPollScheduler scheduler = newScheduler();
+        assertEquals("initial interval wrong", 2000L, scheduler.getCurrentInterval());
+
+        scheduler.runCycle(cycleOf(0));
+        assertEquals("interval wrong", 4000L, scheduler.getCurrentInterval());
+        scheduler.runCycle(cycleOf(0));
+        assertEquals("interval wrong", 8000L, scheduler.getCurrentInterval());
+
+        // capped at maxInterval
+        scheduler.runCycle(cycleOf(0));
+        assertEquals("interval not capped", 8000L, scheduler.getCurrentInterval());
+        assertEquals("cycles wrong", 3, scheduler.getCycleCount());
+    }
+
+    @Test
+    public void testSpeedsUpWithTraffic() {
+
+        IPAWSPollScheduler scheduler = newScheduler();
+        scheduler.setInitialInterval(8000L);
+
+        scheduler.runCycle(cycleOf(3));
+        assertEquals("interval wrong", 4000L, scheduler.getCurrentInterval());
+        assertEquals("message count wrong", 3, scheduler.getLastMessageCount());
+
+        // a busy cycle drops straight to minInterval
+        scheduler.runCycle(cycleOf(10));
+        assertEquals("interval wrong", 1000L, scheduler.getCurrentInterval());
+
+        // and never below it
+        scheduler.runCycle(cycleOf(3));
+        assertEquals("interval under minInterval", 1000L, scheduler.getCurrentInterval());
+    }
+
+    @Test
+    public void testFailedCycleBacksOff() {
+
+        IPAWSPollScheduler scheduler = newScheduler();
+        boolean ran = scheduler.runCycle(new IPAWSPollScheduler.Cycle() {
+
+            @Override
+            public int run() {
+
+                throw new IllegalStateException("IPAWS down");
+            }
+        });
+
+        assertTrue("cycle skipped", ran);
+        assertFalse("still running", scheduler.isRunning());
+        assertEquals("interval wrong", 4000L, scheduler.getCurrentInterval());
+    }
+
+    @Test
+    public void testSkipsOverlappingCycle() throws InterruptedException {
+
+        final IPAWSPollScheduler scheduler = newScheduler();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+
+                scheduler.runCycle(new IPAWSPollScheduler.Cycle() {
+
+                    @Override
+                    public int run() {
+
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        return 0;
+                    }
+                });
+            }
+        });
+        thread.start();
+        assertTrue("cycle not started", started.await(5, TimeUnit.SECONDS));
+
+        assertFalse("overlapping cycle ran", scheduler.runCycle(cycleOf(0)));
+        assertEquals("skipped wrong", 1, scheduler.getSkippedCount());
+
+        release.countDown();
+        thread.join(5000);
+        assertEquals("cycles wrong", 1, scheduler.getCycleCount());
+        assertTrue("cycle not run", scheduler.runCycle(cycleOf(0)));
+    }
+
+    @Test
+    public void testStartRunsCycles() throws InterruptedException {
+
+        IPAWSPollScheduler scheduler = newScheduler();
+        scheduler.setMinInterval(10L);
+        scheduler.setInitialInterval(10L);
+        scheduler.setMaxInterval(10L);
+
+        final CountDownLatch first = new CountDownLatch(1);
+        final CountDownLatch cycles = new CountDownLatch(3);
+        scheduler.start(new Runnable() {
+
+            @Override
+            public void run() {
+
+                first.countDown();
+            }
+        }, new IPAWSPollScheduler.Cycle() {
+
+            @Override
+            public int run() {
+
+                cycles.countDown();
+                return 0;
+            }
+        });
+        try {
+            assertTrue("first cycle not run", first.await(5, TimeUnit.SECONDS));
+            assertTrue("cycles not run", cycles.await(5, TimeUnit.SECONDS));
+        } finally {
+            scheduler.stop();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * class IPAWSQueueFixture
+ * the string messages and the receiving end shared by the tests of
+ * IPAWSRetryQueue and IPAWSOutbox. The messages are taken only once accept
+ * is set, and never if their id is rejected.
+ */
+class IPAWSQueueFixture {
+
+    static final IPAWSRetryQueue.Codec<String> CODEC = new IPAWSRetryQueue.Codec<String>() {
+
+        @Override
+        public String encode(String message) {
+
+            return message;
+        }
+
+        @Override
+        public String decode(String text) {
+
+            return text;
+        }
+    };
+
+    // id=message of each message taken, in order
+    final List<String> received = new ArrayList<String>();
+    final Set<String> rejected = new HashSet<String>();
+    boolean accept = false;
+
+    boolean receive(String id, String message) {
+
+        if (!accept || rejected.contains(id)) {
+            return false;
+        }
+        received.add(id + "=" + message);
+        return true;
+    }
+
+    IPAWSRetryQueue.Handler<String> handler() {
+
+        return new IPAWSRetryQueue.Handler<String>() {
+
+            @Override
+            public boolean process(String id, String message) {
+
+                return receive(id, message);
+            }
+        };
+    }
+
+    IPAWSOutbox.Sender<String> sender() {
+
+        return new IPAWSOutbox.Sender<String>() {
+
+            @Override
+            public boolean send(String id, String message) {
+
+                return receive(id, message);
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.Test;
+
+public class IPAWSRateLimiterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    @Test
+    public void testReserve() {
+
+        IPAWSRateLimiter limiter = new IPAWSRateLimiter(1.0, 2.0, 1500L);
+        long now = 5 * SECOND;
+
+        // the burst goes through, the next call waits for its token
+        assertEquals("wait wrong", 0, limiter.reserve(now));
+        assertEquals("wait wrong", 0, limiter.reserve(now));
+        assertEquals("wait wrong", SECOND, limiter.reserve(now));
+        // the one after would wait two seconds, longer than maxWait
+        assertEquals("wait wrong", -1, limiter.reserve(now));
+
+        // three seconds later the reserved token is paid back and two are there
+        assertEquals("wait wrong", 0, limiter.reserve(now + 3 * SECOND));
+        assertEquals("wait wrong", 0, limiter.reserve(now + 3 * SECOND));
+    }
+
+    @Test
+    public void testAcquire() throws InterruptedException {
+
+        IPAWSRateLimiter limiter = new IPAWSRateLimiter(20.0, 1.0, 0L);
+
+        assertTrue("not acquired", limiter.acquire());
+        assertFalse("not throttled", limiter.acquire());
+        assertEquals("acquired wrong", 1, limiter.getAcquiredCount());
+        assertEquals("throttled wrong", 1, limiter.getThrottledCount());
+
+        limiter.setMaxWait(1000L);
+        assertTrue("not acquired", limiter.acquire());
+        assertEquals("queued wrong", 1, limiter.getQueuedCount());
+    }
+
+    @Test
+    public void testOperationClass() throws XmlException {
+
+        XmlObject ack = XmlObject.Factory.parse("<getRequestTypeDef><requestAPI>REQUEST1</requestAPI>" +
+                                                "<requestOperation>getACK</requestOperation></getRequestTypeDef>");
+        XmlObject query = XmlObject.Factory.parse("<getMessageTypeDef><requestAPI>CAP11</requestAPI>" +
+                                                  "<requestOperation>getMessage</requestOperation></getMessageTypeDef>");
+
+        assertEquals("class wrong", IPAWSSpringClient.ACK_OPERATIONS,
+            IPAWSSpringClient.getOperationClass(ack));
+        assertEquals("class wrong", IPAWSSpringClient.QUERY_OPERATIONS,
+            IPAWSSpringClient.getOperationClass(query));
+    }
+}
@@ -0,0 +1,72 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.Test;
+
+public class IPAWSRequestMetricsTest {
+
+    @Test
+    public void testBuckets() {
+
+        long previous = -1;
+        for (int i = 0; i < 200; i++) {
+            long upper = IPAWSLatencyHistogram.upperBoundOf(i);
+            assertTrue("bounds not increasing", upper > previous);
+            assertEquals("bucket wrong", i, IPAWSLatencyHistogram.bucketOf(upper));
+            assertEquals("bucket wrong", i, IPAWSLatencyHistogram.bucketOf(previous + 1));
+            previous = upper;
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+
+        IPAWSLatencyHistogram histogram = new IPAWSLatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals("count wrong", 1000, histogram.getCount());
+        assertEquals("max wrong", 1000000, histogram.getMax());
+        assertWithin("p50 wrong", 500000, histogram.getPercentile(50));
+        assertWithin("p99 wrong", 990000, histogram.getPercentile(99));
+        assertWithin("p999 wrong", 999000, histogram.getPercentile(99.9));
+    }
+
+    private static void assertWithin(String message, long expected, long actual) {
+
+        assertTrue(message + ": " + actual, actual >= expected && actual <= expected * 9 / 8);
+    }
+
+    @Test
+    public void testRegistry() throws XmlException {
+
+        XmlObject request = XmlObject.Factory.parse("<getMessageTypeDef><requestAPI>CAP11</requestAPI>" +
+                                                    "<requestOperation>getMessage</requestOperation></getMessageTypeDef>");
+        String key = IPAWSSpringClient.getMetricsKey(request);
+        assertEquals("key wrong", "CAP11.getMessage", key);
+
+        IPAWSRequestMetrics metrics = new IPAWSRequestMetrics();
+        metrics.requestStarted(key);
+        metrics.requestStarted(key);
+        assertEquals("inFlight wrong", 2, metrics.getStats(key).getInFlight());
+        metrics.requestCompleted(key, 1000000L, 300, 2000, IPAWSMetricsRegistry.Outcome.SUCCESS);
+        metrics.requestCompleted(key, 2000000L, 300, -1, IPAWSMetricsRegistry.Outcome.FAULT);
+
+        IPAWSRequestMetrics.Stats stats = metrics.getStats(key);
+        assertEquals("inFlight wrong", 0, stats.getInFlight());
+        assertEquals("count wrong", 2, stats.getCount());
+        assertEquals("faults wrong", 1, stats.getFaultCount());
+        assertEquals("errors wrong", 0, stats.getErrorCount());
+        assertEquals("sent wrong", 600, stats.getRequestBytes());
+        assertEquals("received wrong", 2000, stats.getResponseBytes());
+        assertEquals("operations wrong", Arrays.asList(key), metrics.getOperations());
+    }
+}
@@ -0,0 +1,122 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.xmlbeans.XmlCursor;
+import org.apache.xmlbeans.XmlException;
+import org.apache.xmlbeans.XmlObject;
+import org.junit.Test;
+
+public class IPAWSRequestTemplateTest {
+
+    private static final IPAWSRequestTemplate.Binder<XmlObject> BINDER = new IPAWSRequestTemplate.Binder<XmlObject>() {
+
+        @Override
+        public void bind(XmlObject request, String[] values) {
+
+            XmlCursor c = request.newCursor();
+            c.toFirstChild();
+            c.toFirstChild();
+            for (String value : values) {
+                c.setTextValue(value);
+                c.toNextSibling();
+            }
+            c.dispose();
+        }
+    };
+
+    private static String valueOf(XmlObject request, int index) {
+
+        XmlCursor c = request.newCursor();
+        c.toFirstChild();
+        c.toFirstChild();
+        for (int i = 0; i < index; i++) {
+            c.toNextSibling();
+        }
+        String value = c.getTextValue();
+        c.dispose();
+        return value;
+    }
+
+    @Test
+    public void testNewRequest() throws XmlException {
+
+        XmlObject prototype = XmlObject.Factory.parse("<request><sent></sent><cogid></cogid></request>");
+        IPAWSRequestTemplate<XmlObject> template = new IPAWSRequestTemplate<XmlObject>(prototype,
+            2,
+            BINDER);
+
+        XmlObject first = template.newRequest("2014-01-01T00:00:00+00:00", "120018");
+        XmlObject second = template.newRequest("2014-02-01T00:00:00+00:00", "120019");
+
+        assertNotSame("request shared", first, second);
+        assertEquals("sent wrong", "2014-01-01T00:00:00+00:00", valueOf(first, 0));
+        assertEquals("cogid wrong", "120018", valueOf(first, 1));
+        assertEquals("cogid wrong", "120019", valueOf(second, 1));
+        assertEquals("prototype changed", "", valueOf(prototype, 0));
+    }
+
+    @Test
+    public void testFixedRequest() throws XmlException {
+
+        XmlObject prototype = XmlObject.Factory.parse("<request><ping/></request>");
+        IPAWSRequestTemplate<XmlObject> template = new IPAWSRequestTemplate<XmlObject>(prototype);
+
+        assertSame("request not shared", prototype, template.newRequest());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongValueCount() throws XmlException {
+
+        XmlObject prototype = XmlObject.Factory.parse("<request><sent/></request>");
+        new IPAWSRequestTemplate<XmlObject>(prototype, 1, BINDER).newRequest();
+    }
+
+    @Test
+    public void testParameterTemplate() throws XmlException {
+
+        XmlObject document = XmlObject.Factory.parse("<getMessageTypeDef xmlns=\"urn:request\"/>");
+        IPAWSRequestTemplate<XmlObject> template = IPAWSRequestTemplate.newParameterTemplate(document,
+            "CAP11",
+            "getMessage",
+            "sent",
+            "greaterthan",
+            "cogid",
+            "equalto");
+        assertEquals("value count wrong", 2, template.getValueCount());
+
+        XmlObject request = template.newRequest("2014-01-01T00:00:00+00:00", "120018");
+        String text = request.xmlText();
+        assertTrue("api wrong: " + text, text.contains("<requestAPI>CAP11</requestAPI>"));
+        assertTrue("operation wrong: " + text,
+            text.contains("<requestOperation>getMessage</requestOperation>"));
+        assertTrue("first parameter wrong: " + text,
+            text.contains("<parameters><parameterName>sent</parameterName>" +
+                          "<comparisonOp>greaterthan</comparisonOp>" +
+                          "<parameterValue>2014-01-01T00:00:00+00:00</parameterValue></parameters>"));
+        assertTrue("second parameter wrong: " + text,
+            text.contains("<parameterName>cogid</parameterName><comparisonOp>equalto</comparisonOp>" +
+                          "<parameterValue>120018</parameterValue>"));
+        assertTrue("namespace wrong: " + text, text.contains("xmlns=\"urn:request\""));
+        assertTrue("prototype changed", !document.xmlText().contains("120018"));
+    }
+
+    @Test
+    public void testParameterTemplateWithoutValue() throws XmlException {
+
+        XmlObject document = XmlObject.Factory.parse("<getRequestTypeDef xmlns=\"urn:request\"/>");
+        IPAWSRequestTemplate<XmlObject> template = IPAWSRequestTemplate.newParameterTemplate(document,
+            "REQUEST1",
+            "getACK",
+            "ping",
+            null);
+
+        assertEquals("value count wrong", 0, template.getValueCount());
+        assertSame("request not shared", document, template.newRequest());
+        assertTrue("parameter wrong: " + document.xmlText(),
+            document.xmlText().contains("<parameters><parameterName>ping</parameterName></parameters>"));
+    }
+}
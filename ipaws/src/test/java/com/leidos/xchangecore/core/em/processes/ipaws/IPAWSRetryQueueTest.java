@@ -0,0 +1,71 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class IPAWSRetryQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final IPAWSQueueFixture fixture = new IPAWSQueueFixture();
+
+    private IPAWSRetryQueue<String> newQueue(File dir) {
+
+        IPAWSRetryQueue<String> queue = new IPAWSRetryQueue<String>();
+        queue.setQueueDirectory(dir.getAbsolutePath());
+        queue.setInitialDelay(0);
+        queue.setJitter(0);
+        queue.setMaxAttempts(2);
+        queue.setCodec(IPAWSQueueFixture.CODEC);
+        queue.setHandler(fixture.handler());
+        return queue;
+    }
+
+    @Test
+    public void testRetryAndDeadLetter() throws IOException {
+
+        File dir = folder.newFolder("retry");
+        IPAWSRetryQueue<String> queue = newQueue(dir);
+        queue.add("a:1", "<alert>\n</alert>");
+
+        assertEquals("processed wrong", 0, queue.retryDue());
+        assertEquals("size wrong", 1, queue.size());
+        assertEquals("processed wrong", 0, queue.retryDue());
+        assertEquals("size wrong", 0, queue.size());
+        assertEquals("dead wrong", Arrays.asList("a:1"), queue.getDeadLetters());
+
+        // a new queue on the same directory sees the dead letter and replays it
+        queue = newQueue(dir);
+        assertEquals("replay wrong", 1, queue.replayDeadLetters());
+        fixture.accept = true;
+        assertEquals("processed wrong", 1, queue.retryDue());
+        assertEquals("message wrong", Arrays.asList("a:1=<alert>\n</alert>"), fixture.received);
+        assertTrue("dead not empty", queue.getDeadLetters().isEmpty());
+        assertEquals("size wrong", 0, queue.size());
+        queue.stop();
+    }
+
+    @Test
+    public void testReload() throws IOException {
+
+        File dir = folder.newFolder("reload");
+        IPAWSRetryQueue<String> queue = newQueue(dir);
+        queue.add("b", "payload");
+        queue.stop();
+
+        queue = newQueue(dir);
+        assertTrue("entry lost", queue.contains("b"));
+        fixture.accept = true;
+        assertEquals("processed wrong", 1, queue.retryDue());
+        assertEquals("message wrong", Arrays.asList("b=payload"), fixture.received);
+    }
+}
@@ -0,0 +1,168 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.xmlbeans.XmlObject;
+import org.apache.xmlbeans.XmlString;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.ws.WebServiceMessage;
+import org.springframework.ws.WebServiceMessageFactory;
+import org.springframework.ws.client.WebServiceIOException;
+import org.springframework.ws.client.core.WebServiceTemplate;
+
+public class IPAWSSpringClientTest {
+
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    private final IPAWSSpringClient client = new IPAWSSpringClient() {
+
+        @Override
+        public XmlObject sendRequest(XmlObject request) {
+
+            if ("slow".equals(((XmlString) request).getStringValue())) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            }
+            return request;
+        }
+    };
+
+    @After
+    public void tearDown() {
+
+        client.shutdown();
+    }
+
+    private static XmlObject request(String value) {
+
+        XmlString request = XmlString.Factory.newInstance();
+        request.setStringValue(value);
+        return request;
+    }
+
+    @Test
+    public void testSendRequestAsync() throws Exception {
+
+        XmlObject request = request("fast");
+        assertSame("response wrong", request, client.sendRequestAsync(request).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+
+        client.setRequestTimeout(100);
+        CompletableFuture<XmlObject> future = client.sendRequestAsync(request("slow"));
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            assertTrue("no timeout", false);
+        } catch (ExecutionException e) {
+            assertEquals("cause wrong", TimeoutException.class, e.getCause().getClass());
+        }
+        assertTrue("request not interrupted", interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+
+        CompletableFuture<XmlObject> future = client.sendRequestAsync(request("slow"));
+        Thread.sleep(100);
+        assertTrue("not cancelled", future.cancel(true));
+        assertTrue("request not interrupted", interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    // a client whose template answers with the request, or fails it for "down"
+    private static IPAWSSpringClient newSender() {
+
+        IPAWSSpringClient sender = new IPAWSSpringClient();
+        sender.setWebServiceTemplate(new WebServiceTemplate(new WebServiceMessageFactory() {
+
+            @Override
+            public WebServiceMessage createWebServiceMessage() {
+
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public WebServiceMessage createWebServiceMessage(InputStream inputStream) {
+
+                throw new UnsupportedOperationException();
+            }
+        }) {
+
+            @Override
+            public Object marshalSendAndReceive(Object request) {
+
+                if ("down".equals(((XmlString) request).getStringValue())) {
+                    throw new WebServiceIOException("connection refused");
+                }
+                return request;
+            }
+        });
+        return sender;
+    }
+
+    @Test
+    public void testReportsToHealthCheck() {
+
+        IPAWSSpringClient sender = newSender();
+        IPAWSHealthCheck health = new IPAWSHealthCheck();
+        health.setFailureThreshold(2);
+        sender.setHealthCheck(health);
+
+        sender.sendRequest(request("up"));
+        assertEquals("failures wrong", 0, health.getConsecutiveFailures());
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                sender.sendRequest(request("down"));
+                assertTrue("no failure", false);
+            } catch (WebServiceIOException e) {
+                // expected
+            }
+        }
+        assertEquals("failures wrong", 2, health.getConsecutiveFailures());
+        assertTrue("not backing off", health.isBackingOff());
+
+        sender.sendRequest(request("up"));
+        assertFalse("still backing off", health.isBackingOff());
+    }
+
+    @Test
+    public void testThrottledRequestNotSent() {
+
+        IPAWSSpringClient sender = newSender();
+        Map<String, IPAWSRateLimiter> limiters = new HashMap<String, IPAWSRateLimiter>();
+        limiters.put(IPAWSSpringClient.QUERY_OPERATIONS, new IPAWSRateLimiter(0.001, 1.0, 0L));
+        sender.setRateLimiters(limiters);
+
+        assertEquals("response wrong",
+            "up",
+            ((XmlString) sender.sendRequest(request("up"))).getStringValue());
+        try {
+            sender.sendRequest(request("up"));
+            assertTrue("request not throttled", false);
+        } catch (IPAWSThrottledException e) {
+            assertEquals("operation class wrong",
+                IPAWSSpringClient.QUERY_OPERATIONS,
+                e.getOperationClass());
+        }
+        assertEquals("throttled wrong", 1, sender.getThrottledCount());
+    }
+}
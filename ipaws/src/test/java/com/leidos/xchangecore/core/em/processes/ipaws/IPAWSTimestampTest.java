@@ -0,0 +1,84 @@
+package com.leidos.xchangecore.core.em.processes.ipaws;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IPAWSTimestampTest {
+
+    private TimeZone defaultZone;
+
+    @Before
+    public void setUp() {
+
+        defaultZone = TimeZone.getDefault();
+    }
+
+    @After
+    public void tearDown() {
+
+        TimeZone.setDefault(defaultZone);
+    }
+
+    @Test
+    public void testFormat() {
+
+        Calendar cal = IPAWSTimestamp.parse("2014-03-05T17:04:09Z");
+
+        TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+        assertEquals("negative offset wrong", "2014-03-05T12:04:09-05:00", IPAWSTimestamp.format(cal));
+
+        TimeZone.setDefault(TimeZone.getTimeZone("Asia/Kolkata"));
+        assertEquals("positive offset wrong", "2014-03-05T22:34:09+05:30", IPAWSTimestamp.format(cal));
+
+        TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+        assertEquals("zero offset wrong", "2014-03-05T17:04:09+00:00", IPAWSTimestamp.format(cal));
+    }
+
+    @Test
+    public void testParse() {
+
+        Calendar cal = IPAWSTimestamp.parse("2014-03-05T12:04:09-05:00");
+        assertEquals("time wrong", IPAWSTimestamp.parse("2014-03-05T17:04:09+00:00").getTimeInMillis(),
+            cal.getTimeInMillis());
+        assertEquals("offset wrong", -5 * 3600000, cal.get(Calendar.ZONE_OFFSET));
+
+        try {
+            IPAWSTimestamp.parse("2014-03-05 12:04:09");
+            assertTrue("no offset accepted", false);
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseNull() {
+
+        // a digest without sent time
+        IPAWSTimestamp.parse(null);
+    }
+
+    @Test
+    public void testLatest() {
+
+        Calendar early = IPAWSTimestamp.parse("2014-03-05T11:00:00-05:00");
+        Calendar late = IPAWSTimestamp.parse("2014-03-05T18:00:00+01:00");
+        Calendar same = IPAWSTimestamp.parse("2014-03-05T17:00:00Z");
+
+        assertTrue("isAfter wrong", IPAWSTimestamp.isAfter(early, null));
+        assertFalse("isAfter wrong", IPAWSTimestamp.isAfter(null, early));
+        assertFalse("isAfter wrong", IPAWSTimestamp.isAfter(same, late));
+        assertSame("latest wrong", early, IPAWSTimestamp.latest(null, early));
+        assertSame("latest wrong", early, IPAWSTimestamp.latest(early, null));
+        assertSame("tie wrong", late, IPAWSTimestamp.latest(late, same));
+        assertSame("latest wrong", late, IPAWSTimestamp.latest(early, late));
+    }
+}